@@ -1,11 +1,11 @@
 package billboardControlPanel;
 
 import customExceptions.*;
+import helpers.ServerConnection;
 import org.xml.sax.SAXException;
 import javax.naming.NoPermissionException;
 import javax.swing.*;
 import java.io.*;
-import java.net.Socket;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -24,9 +24,11 @@ import static helpers.Constants.*;
  * GUI).
  */
 public class ControlPanelClient {
+    private static final int BILLBOARD_PAGE_SIZE = 20; //billboards requested per SHOW_BB_PAGE round trip
     //declare global variables
     private String host;
     private String port;
+    private ServerConnection connection;
     private String sessionToken;
     private User currentUser;
     private boolean userLoggedIn;
@@ -59,6 +61,7 @@ public class ControlPanelClient {
 
             host = props.getProperty("host");
             port = props.getProperty("port");
+            connection = ServerConnection.fromProperties(props);
 
         } catch (FileNotFoundException e) {
             System.out.println("Could not find network.props");
@@ -72,42 +75,47 @@ public class ControlPanelClient {
 
     /*
      * Sends the message to the server and returns the server's response as an object
-     * Opens a connection to the given host and port, outputs the given String[] message
+     * The connection to the given host and port is handled by ServerConnection, using
+     * the transport configured in network.props.
      * It then receives input of an Object (should only ever be String or String[] and in one case
      * a Map<String, String[]> but these classes are cast when appropriate in the request functions below
      */
     private Object sendReceive(String[] message) throws NoServerException {
-        Object response;
         try {
-            //Create new socket instance with host and port
-            Socket socket = new Socket(host, Integer.parseInt(port));
-
-            //Create output stream and output object stream to
-            //send request information to the server.
-            OutputStream stream_lgr = socket.getOutputStream();
-            ObjectOutputStream oos_lgr = new ObjectOutputStream(stream_lgr);
-
-            //Send an array of "LOGIN_REQUEST, username, password" -- describes
-            //to server what action must be taken.
-            oos_lgr.writeObject(message);
-
-            //Create input stream to receive session token from the server
-            InputStream inputStream = socket.getInputStream();
-            ObjectInputStream ois = new ObjectInputStream(inputStream);
+            //Send the request array -- describes to server what action must be
+            //taken -- and return the response
+            return connection.sendReceive(message);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new NoServerException();
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
 
-            //read sent data into object to return
-            response = ois.readObject();
+    /*
+     * Sends several requests to the server in a single BATCH round trip and returns the responses in the
+     * order of the requests. A request that failed on the server has a null response.
+     */
+    private Object[] sendBatch(String[]... messages) throws NoServerException {
+        Object[] batch = new Object[messages.length + 1];
+        batch[0] = BATCH;
+        System.arraycopy(messages, 0, batch, 1, messages.length);
 
-            //close the socket
-            oos_lgr.close();
-            socket.close();
-            return response;
+        Object response;
+        try {
+            response = connection.sendReceive(batch);
         } catch (IOException e) {
             e.printStackTrace();
             throw new NoServerException();
         } catch (ClassNotFoundException e) {
-            return null;
+            response = null;
         }
+        if (response instanceof Object[] && ((Object[]) response).length == messages.length) {
+            return (Object[]) response;
+        }
+        //a response that cannot be read fails every request in the batch
+        return new Object[messages.length];
     }
 
     /* The following functions are REQUESTS - called from the GUI, take parameters to be filled from GUI elements
@@ -133,13 +141,49 @@ public class ControlPanelClient {
      */
     public Map<String, Billboard> getAvailableBillboards(String sessionToken) throws SAXException, BadTokenException,
                                                         NoServerException {
-        //Send the message array to the server, and parse the response to return back to the GUI
-        String[] message = {SHOW_BB, sessionToken};
-        allAvailableBillboards = parseShowBBResponse((Map<String, String[]>)sendReceive(message));
+        //Request the billboards a page at a time, and parse each page to return back to the GUI
+        allAvailableBillboards = readBillboardPages(sessionToken, sendReceive(billboardPageRequest(sessionToken, 0)));
         //return the Map of available billboards
         return allAvailableBillboards;
     }
 
+    /*
+     * Builds the request for the page of billboards following the given billboard ID.
+     */
+    private String[] billboardPageRequest(String sessionToken, int afterID) {
+        return new String[]{SHOW_BB_PAGE, sessionToken, String.valueOf(afterID), String.valueOf(BILLBOARD_PAGE_SIZE)};
+    }
+
+    /*
+     * Parses the first page of billboards, then requests and parses the following pages until a page comes back
+     * short. Only one page of raw XML is held at a time.
+     */
+    private HashMap<String, Billboard> readBillboardPages(String sessionToken, Object firstPage)
+            throws SAXException, BadTokenException, NoServerException {
+        HashMap<String, Billboard> billboards = new HashMap<>();
+        Map<String, String[]> page = billboardPage(firstPage);
+        while (true) {
+            billboards.putAll(parseShowBBResponse(page));
+            if (page.size() < BILLBOARD_PAGE_SIZE) {
+                return billboards;
+            }
+            //the next page starts after the largest billboard ID of this one
+            int lastID = 0;
+            for (String id : page.keySet()) {
+                lastID = Math.max(lastID, Integer.parseInt(id));
+            }
+            page = billboardPage(sendReceive(billboardPageRequest(sessionToken, lastID)));
+        }
+    }
+
+    /*
+     * Casts the response to a paged request, which is always a map of billboard ID to billboard information.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, String[]> billboardPage(Object response) {
+        return (Map<String, String[]>) Objects.requireNonNull(response);
+    }
+
     /**
      * Request from gui to create or edit a billboard
      * @param session_token session token owned by the current user
@@ -192,6 +236,24 @@ public class ControlPanelClient {
         return parseStringArrayResponse((String[]) sendReceive(message));
     }
 
+    /**
+     * Gui request for everything the schedule screen shows, in one round trip: refreshes the map of available
+     * billboards and returns the current schedule. The schedule is returned as sent by the server, to be checked
+     * with parseStringArrayResponse once it is displayed.
+     * @param session_token session token owned by the current user
+     * @param username - username of user trying to access schedule (for permissions)
+     * @return the schedule response from the server
+     */
+    public String[] getBillboardsAndSchedule(String session_token, String username) throws SAXException,
+                                    BadTokenException, NoServerException {
+        //Send the first page of billboards and the schedule in one batch, then page through any remaining
+        //billboards to update the available billboards
+        Object[] responses = sendBatch(billboardPageRequest(session_token, 0),
+                new String[]{VIEW_SCHEDULE, session_token, username});
+        allAvailableBillboards = readBillboardPages(session_token, responses[0]);
+        return (String[]) responses[1];
+    }
+
     /**
      * Request to schedule a billboard
      * @param session_token session token owned by the current user
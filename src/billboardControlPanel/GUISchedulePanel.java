@@ -262,7 +262,8 @@ public class GUISchedulePanel extends JPanel implements ActionListener {
         final int TIME_COLUMN = 3;
         final int DAY_COLUMN = 4;
         try {
-            client.getAvailableBillboards(client.getToken());
+            //Fetch the billboards and the schedule together in one round trip
+            String[] schedule = client.getBillboardsAndSchedule(client.getToken(), client.getCurrentUserName());
 
             /*if permission is false then it will prompt a message saying incorrect permissions*/
             if (!client.getUser().isSchedule_billboards()) {
@@ -273,7 +274,7 @@ public class GUISchedulePanel extends JPanel implements ActionListener {
                 //Display the schedule in a table
                 String[] options = {"Remove from Schedule", "Preview", "Cancel"};
                 //choice is the button that is pressed
-                int choice = JOptionPane.showOptionDialog(null, createScheduleTableInScrollPane(),
+                int choice = JOptionPane.showOptionDialog(null, createScheduleTableInScrollPane(schedule),
                         "Select a billboard", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE,
                         null, options, 0);
                 int selectedScheduleIndex;
@@ -330,12 +331,12 @@ public class GUISchedulePanel extends JPanel implements ActionListener {
     }
 
     //Creates the tables to view the schedule
-    private JScrollPane  createScheduleTableInScrollPane() throws BadTokenException, NoServerException,
+    private JScrollPane  createScheduleTableInScrollPane(String[] schedule) throws BadTokenException,
             EmptyArrayException {
         JScrollPane sPane;
         //Row headings
         String[] headers = { "ID", "Name" , "Scheduled By", "Shown at", "On Day", "Duration", "Recurring"};
-        String[] list = client.viewSchedule(client.getToken(), client.getCurrentUserName());
+        String[] list = client.parseStringArrayResponse(schedule);
         /*
         schedule is returned as an array of all data sequentially, every 7 entries in the list makes up
         one schedule entry
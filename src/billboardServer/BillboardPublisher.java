@@ -0,0 +1,173 @@
+package billboardServer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the currently scheduled billboard to subscribed viewers. Instead of
+ * every viewer polling RECEIVE_BB, a subscribed viewer holds its connection
+ * open and is sent the billboard again only when it changes.
+ *
+ * The scheduled billboard is checked once a minute, just after the minute
+ * boundary since schedules start and end on whole minutes, and straight away
+ * whenever a billboard or the schedule is edited. A single check serves every
+ * subscriber, so the database sees one query however many viewers there are.
+ */
+public class BillboardPublisher {
+    //seconds after the minute boundary at which the scheduled billboard is checked
+    private static final int CHECK_OFFSET_SECONDS = 1;
+
+    private final Supplier<String[]> source;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final LongAdder pushes = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+    private volatile String[] current;
+    //read without the lock by billboardsChanged, which the cache calls while a check may be waiting on it
+    private volatile ScheduledExecutorService checker;
+    private Executor delivery = Runnable::run;
+
+    /**
+     * Receives the billboards pushed to one subscribed connection.
+     */
+    @FunctionalInterface
+    public interface Subscriber {
+
+        /**
+         * Send a billboard to the subscriber.
+         * @param billboard the RECEIVE_BB response of the new billboard
+         * @throws IOException if the connection is closed; the subscriber is then dropped
+         */
+        void push(String[] billboard) throws IOException;
+    }
+
+    /**
+     * Creates a publisher.
+     * @param source returns the currently scheduled billboard, as a RECEIVE_BB response
+     */
+    public BillboardPublisher(Supplier<String[]> source) {
+        this.source = source;
+    }
+
+    /**
+     * Start checking the scheduled billboard once a minute. Does nothing if
+     * checking has already started.
+     * @param delivery executor each push to a subscriber runs on, so a slow
+     *                 connection does not hold up the others
+     */
+    public synchronized void start(Executor delivery) {
+        if (checker != null) {
+            return;
+        }
+        this.delivery = delivery;
+        checker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "billboard-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long untilNextMinute = 60_000 - System.currentTimeMillis() % 60_000 + CHECK_OFFSET_SECONDS * 1000;
+        checker.scheduleAtFixedRate(this::check, untilNextMinute, 60_000, TimeUnit.MILLISECONDS);
+        ServerMetrics.register("publisher", this::toString);
+    }
+
+    /**
+     * Add a subscriber. It is sent nothing until the billboard changes, so the
+     * caller should first send it the returned billboard.
+     * @param subscriber subscriber to add
+     * @return the currently scheduled billboard
+     */
+    public synchronized String[] subscribe(Subscriber subscriber) {
+        String[] billboard = current;
+        if (billboard == null) {
+            billboard = source.get();
+            current = billboard;
+        }
+        subscribers.add(subscriber);
+        return billboard;
+    }
+
+    /**
+     * Remove a subscriber, such as one whose connection has closed.
+     * @param subscriber subscriber to remove
+     */
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Check the scheduled billboard soon, rather than waiting for the next
+     * minute. Called after a billboard or the schedule has been edited. Does
+     * not wait for a check in progress.
+     */
+    public void billboardsChanged() {
+        ScheduledExecutorService checks = checker;
+        if (checks != null) {
+            checks.execute(this::check);
+        }
+    }
+
+    /**
+     * Check the scheduled billboard now and push it to every subscriber if it
+     * has changed since the last check. Subscribing waits for a check in
+     * progress, so a new subscriber cannot miss a change.
+     * @return true if the billboard changed
+     */
+    public synchronized boolean check() {
+        String[] billboard = source.get();
+        String[] previous = current;
+        if (previous != null && Arrays.equals(previous, billboard)) {
+            return false;
+        }
+        current = billboard;
+        if (previous == null) {
+            //no subscriber has been sent a billboard yet
+            return false;
+        }
+        changes.increment();
+        for (Subscriber subscriber : subscribers) {
+            delivery.execute(() -> push(subscriber, billboard));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of subscribers.
+     * @return subscribed connections
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns a one line summary of the publisher counters.
+     * @return publisher metrics
+     */
+    @Override
+    public String toString() {
+        return "subscribers=" + subscribers.size() + " changes=" + changes.sum() + " pushes=" + pushes.sum();
+    }
+
+    /*
+     Push a billboard to one subscriber, dropping it if its connection has
+     closed. A push overtaken by a newer billboard is skipped.
+     */
+    private void push(Subscriber subscriber, String[] billboard) {
+        if (billboard != current) {
+            //a later change has already been pushed
+            return;
+        }
+        try {
+            subscriber.push(billboard);
+            pushes.increment();
+        } catch (IOException ex) {
+            unsubscribe(subscriber);
+        }
+    }
+}
@@ -2,10 +2,22 @@ package billboardServer;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import helpers.FrameCodec;
+import helpers.FrameCompressor;
+import helpers.Opcodes;
+import helpers.ScheduleEntry;
 import static helpers.Constants.*;
 /**
  * Entry point to the server. Reads network information from a network.props
@@ -16,16 +28,47 @@ import static helpers.Constants.*;
 public class BillboardServer {
     private static final String DEFAULT_HASH = "92668751"; //hash of "admin"
     private static final String DEFAULT_SALT = "196";      //default salt
+    private static final String MODE_SINGLE = "single";  //action one connection at a time
+    private static final String MODE_POOL = "pool";      //action connections on a bounded worker pool
+    private static final String MODE_VIRTUAL = "virtual"; //action each connection on its own virtual thread
+    private static final String TRANSPORT_BLOCKING = "blocking"; //one blocking socket per connection
+    private static final String TRANSPORT_NIO = "nio";           //single selector thread over non-blocking channels
+    private static final int MAX_PAGE_SIZE = 100;                //most billboards sent in one SHOW_BB_PAGE response
+    private static final long MIN_CHECK_AFTER = 1000;            //soonest a viewer is told to poll again, in milliseconds
+    private static final long ERROR_CHECK_AFTER = 15_000;        //when a viewer shown an error is told to poll again
     private static String port;
+    private static String serverMode = MODE_SINGLE;
+    private static int poolThreads = 8;
+    private static int poolQueue = 64;
+    private static int metricsInterval = 0;
+    private static String tracePinned = "";
+    private static int pinnedThreshold = 20;
+    private static String transport = TRANSPORT_BLOCKING;
+    private static int idleTimeout = 60;
+    private static boolean compression = true;
+    private static int compressionLevel = 6;
+    private static int compressionMinBytes = 1024;
+    private static String scheduler = DatabaseInterface.SCHEDULER_INDEX;
+    private static int viewerMaxStaleness = 120;
+    private static FrameCompressor compressor;
+    private final CommandRegistry commands = new CommandRegistry();
+    private final NowShowingCache nowShowing = new NowShowingCache(BillboardServer::getScheduledBb,
+            BillboardServer::nextScheduleChange, BillboardServer::getScheduledBbAt);
+    private final BillboardPublisher publisher = new BillboardPublisher(() -> nowShowing.get().getBillboard());
+    private final ScheduleSnapshots scheduleSnapshots = new ScheduleSnapshots(BillboardServer::getScheduleEntries,
+            BillboardServer::getScheduledBillboards);
     private boolean test;
 
     /**
      * Constructs a new BillboardServer object. Reads network information
      * from a network.props file to find an active port to send and receive
-     * information. The object is not set to a test class by default.
+     * information, and how connections should be served, and registers the
+     * handler of every request type. The object is not set to a test class
+     * by default.
      */
     public BillboardServer() {
         this.test = false;
+        registerCommands();
         //Attempt to read contents from a network.props file. Output
         //an error message if the properties file is not found.
         try {
@@ -33,6 +76,19 @@ public class BillboardServer {
             Properties props = new Properties();
             props.load(in);
             port = props.getProperty("port");
+            serverMode = props.getProperty("server.mode", MODE_SINGLE);
+            poolThreads = intProperty(props, "server.threads", poolThreads);
+            poolQueue = intProperty(props, "server.queue", poolQueue);
+            metricsInterval = intProperty(props, "server.metricsInterval", metricsInterval);
+            tracePinned = props.getProperty("server.tracePinned", tracePinned);
+            pinnedThreshold = intProperty(props, "server.pinnedThresholdMillis", pinnedThreshold);
+            transport = props.getProperty("server.transport", TRANSPORT_BLOCKING);
+            idleTimeout = intProperty(props, "server.idleTimeoutSeconds", idleTimeout);
+            compression = Boolean.parseBoolean(props.getProperty("server.compression", String.valueOf(compression)));
+            compressionLevel = intProperty(props, "server.compressionLevel", compressionLevel);
+            compressionMinBytes = intProperty(props, "server.compressionMinBytes", compressionMinBytes);
+            scheduler = props.getProperty("server.scheduler", scheduler);
+            viewerMaxStaleness = intProperty(props, "server.viewerMaxStalenessSeconds", viewerMaxStaleness);
             in.close();
         } catch (IOException ex) {
             System.out.println("Unable to read from network properties file");
@@ -80,8 +136,12 @@ public class BillboardServer {
      * Entry point to BillboardServer. On startup, checks and creates the tables
      * required by the backend, creates a default user and creates a default
      * billboard for the viewer. Uses an infinite loop to constantly check for
-     * requests sent by the Client and the Viewer, and calls helper methods
-     * to action these requests.
+     * requests sent by the Client and the Viewer. Depending on the configured
+     * server mode, each connection is either actioned on the accepting thread
+     * ("single"), handed to a bounded pool of worker threads ("pool") or run
+     * on its own virtual thread ("virtual"). With the "nio" transport a single
+     * selector thread reads every connection and hands complete requests to
+     * the worker pool.
      * @param args main method signature
      */
     public static void main(String[] args) {
@@ -89,171 +149,671 @@ public class BillboardServer {
         //Create a new BillboardServer object and perform
         //the initialising operations.
         BillboardServer server = new BillboardServer();
+        DatabaseInterface.setSchedulerMode(scheduler);
         initDatabase();
         createDefaultUser();
         createDefaultBillboard();
-        System.out.println("Running");
 
+        //The non-blocking transport reads requests on the selector thread
+        //and always actions them on the worker pool.
+        if (transport.equals(TRANSPORT_NIO)) {
+            serverMode = MODE_POOL;
+        }
+
+        //Start a virtual thread per connection if the server is configured to
+        //and the JDK supports it, otherwise fall back to the worker pool.
+        ExecutorService virtualThreads = null;
+        if (serverMode.equals(MODE_VIRTUAL)) {
+            virtualThreads = startVirtualThreads();
+            if (virtualThreads == null) {
+                System.out.println("Virtual threads are not supported by this JDK, using a worker pool");
+                serverMode = MODE_POOL;
+            }
+        }
+
+        //Create the worker pool if the server is configured to serve
+        //connections concurrently.
+        WorkerPool pool = null;
+        if (serverMode.equals(MODE_POOL)) {
+            pool = new WorkerPool(poolThreads, poolQueue);
+            ServerMetrics.register("workers", pool::toString);
+        }
+        server.commands.registerMetrics();
+        //Pushes to viewers subscribed over the blocking transport write to
+        //their socket, so each gets its own virtual thread; the non-blocking
+        //transport only queues the write.
+        server.publisher.start(virtualThreads != null ? virtualThreads : Runnable::run);
+        //Replaces the cached billboard as the schedule changes, pushing each new one to subscribers
+        server.nowShowing.start(server.publisher::billboardsChanged);
+        ServerMetrics.register("compression", server.getCompressor()::toString);
+        ServerMetrics.register("viewerSchedule", server.scheduleSnapshots::toString);
+        ServerMetrics.startReporting(metricsInterval);
+        System.out.println("Running (" + serverMode + " mode, " + transport + " transport, " + scheduler +
+                " scheduler)");
 
         try {
 
+            if (transport.equals(TRANSPORT_NIO)) {
+                new NioServer(server, Integer.parseInt(port), pool, idleTimeout).run();
+                return;
+            }
+
             //Create a new socket and listen from the configured port
             ServerSocket serverSocket = new ServerSocket(Integer.parseInt(port));
 
             for(;;) {
-
-
                 Socket socket = serverSocket.accept();
 
-                //Create the input-stream to read from the socket and
-                //serialise the data into an object. This is an array
-                //of string objects sent by the Client and Viewer.
-                InputStream input_stream = socket.getInputStream();
-                ObjectInputStream ois = new ObjectInputStream(input_stream);
-                Object[] client_data = (Object[]) ois.readObject();
-
-                //Create an output-stream to send data to the socket.
-                OutputStream output_stream = socket.getOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(output_stream);
-
-                //The following conditional branch is used to check the client
-                //request and action it appropriately by calling the required
-                //method.
-
-                //Client sends a login request.
-                if(client_data[0].equals(LOGIN_REQUEST)) {
-                    oos.writeObject(server.loginRequest((String) client_data[1], (String) client_data[2]));
-                    oos.flush();
-
-                //Client sends a show billboards request.
-                } else if (client_data[0].equals(SHOW_BB)) {
-                    oos.writeObject(server.showBillboards((String) client_data[1]));
-                    oos.flush();
-
-                //Client sends a request to create or edit a billboard.
-                } else if (client_data[0].equals(CREATE_EDIT)) {
-                    oos.writeObject(server.createEditBillboard((String)client_data[1], (String)client_data[2],
-                                (String)client_data[3], (String)client_data[4], (String)client_data[5],
-                                (String)client_data[6]));
-                    oos.flush();
+                if (virtualThreads != null) {
+                    //Each connection gets its own virtual thread, which parks
+                    //cheaply while blocked on the database or the socket.
+                    virtualThreads.execute(() -> server.handleConnection(socket));
+                } else if (pool == null) {
+                    //Action the request before accepting the next connection.
+                    server.handleConnection(socket);
+                } else if (!pool.submit(() -> server.handleConnection(socket))) {
+                    //The pool and its queue are full - drop the connection so
+                    //the client fails fast instead of waiting indefinitely.
+                    System.out.println("Server overloaded, rejected connection from " +
+                            socket.getRemoteSocketAddress());
+                    closeQuietly(socket);
                 }
+            }
 
-                //Client sends a request to get a billboards information.
-                else if (client_data[0].equals(GET_BB)) {
-                    oos.writeObject(server.getBillboardInformation((String) client_data[1], (String) client_data[2]));
-                    oos.flush();
-                }
+        } catch (IOException ex) {
+            // Catch and print errors with creating a socket.
+            ex.printStackTrace();
+            System.out.println("Unable to create connection.");
+        }
+    }
 
-                //Client sends a request to delete a billboard.
-                else if (client_data[0].equals(DELETE_BB)) {
-                    oos.writeObject(server.deleteBillboard((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3]));
-                    oos.flush();
-                }
+    /*
+     Creates the virtual thread executor and starts watching for virtual threads
+     pinned to their carrier by blocking JDBC calls, until the server stops.
+     Returns null if the JDK does not support virtual threads.
+     */
+    private static ExecutorService startVirtualThreads() {
+        //Pinned thread tracing must be requested before the first virtual
+        //thread is created.
+        if (!tracePinned.isEmpty()) {
+            VirtualThreads.tracePinnedThreads(tracePinned);
+        }
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor();
+        if (executor != null) {
+            PinnedThreadMonitor monitor = new PinnedThreadMonitor();
+            monitor.start(Duration.ofMillis(pinnedThreshold));
+            ServerMetrics.register("virtualThreads", monitor::toString);
+            //Close the flight recorder stream when the server is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(monitor::stop, "pinned-thread-monitor-stop"));
+        }
+        return executor;
+    }
 
-                //Client sends a request to view the currently scheduled billboards.
-                else if (client_data[0].equals(VIEW_SCHEDULE)) {
-                    oos.writeObject(server.viewSchedule((String)client_data[1], (String)client_data[2]));
-                    oos.flush();
-                }
+    /**
+     * Read a single request from a connected socket, action it and write the
+     * response back before closing the socket. Errors are contained to the
+     * connection so that one misbehaving client cannot stop the server.
+     * Both the legacy and the framed protocol are accepted, told apart by the
+     * first bytes sent by the client.
+     * @param socket socket accepted from a Client or Viewer
+     */
+    public void handleConnection(Socket socket) {
+        try {
+            //Peek at the start of the stream to find which protocol the
+            //client speaks, then rewind so the request can be read whole.
+            BufferedInputStream input_stream = new BufferedInputStream(socket.getInputStream());
+            DataInputStream data_stream = new DataInputStream(input_stream);
+            input_stream.mark(FrameCodec.PREFACE_LENGTH);
+            boolean framed = data_stream.readInt() == FrameCodec.MAGIC;
+            if (framed) {
+                handleFramedConnection(socket, data_stream);
+                return;
+            }
+            input_stream.reset();
+
+            //Serialise the data into an object. This is an array
+            //of string objects sent by the Client and Viewer.
+            ObjectInputStream ois = new ObjectInputStream(input_stream);
+            Object[] client_data = (Object[]) ois.readObject();
+
+            //Action the request.
+            Object response = dispatch(client_data);
+
+            //Send back the response, if any. The billboard showing now is
+            //written from its cached serialised form.
+            OutputStream output_stream = socket.getOutputStream();
+            NowShowingCache.Encoded cached = cachedResponse(response, (byte) 0);
+            if (cached != null) {
+                cached.writeTo(output_stream);
+                output_stream.flush();
+                return;
+            }
+            ObjectOutputStream oos = new ObjectOutputStream(output_stream);
+            if (response != null) {
+                oos.writeObject(response);
+                oos.flush();
+            }
 
-                //Client sends a request to schedule a new billboard.
-                else if (client_data[0].equals(SCHEDULE_BB)) {
-                    oos.writeObject(server.scheduleBillboard((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3], (String) client_data[4], (String) client_data[5],
-                                    (String) client_data[6], Boolean.parseBoolean((String) client_data[7]),
-                                    Boolean.parseBoolean((String) client_data[8]), (String) client_data[9],
-                                    (String) client_data[10]));
-                    oos.flush();
-                }
+        } catch (IOException ex) {
+            System.out.println("Connection error: " + ex.getMessage());
+        } catch (ClassNotFoundException ex) {
+            System.out.println("Cannot define receiving object.");
+        } finally {
+            closeQuietly(socket);
+        }
+    }
 
-                //Client sends a request to remove a billboard from the schedule.
-                else if (client_data[0].equals(REMOVE_BB)) {
-                    oos.writeObject(server.removeBillboard((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3], (String) client_data[4], (String) client_data[5]));
-                    oos.flush();
-                }
+    /*
+     Read the rest of the preface, then action request frames and reply with
+     a frame carrying the same request ID. Keep-alive is only honoured when
+     each connection has its own virtual thread: on a platform thread a kept
+     open socket would hold a worker for as long as the client is connected.
+     Otherwise the first response is flagged and the socket closed.
+     */
+    private void handleFramedConnection(Socket socket, DataInputStream in) throws IOException,
+            ClassNotFoundException {
+        byte options = FrameCodec.readPrefaceOptions(in);
+        boolean keepAlive = (options & FrameCodec.OPTION_KEEP_ALIVE) != 0 && serverMode.equals(MODE_VIRTUAL);
+        if (keepAlive && idleTimeout > 0) {
+            socket.setSoTimeout(idleTimeout * 1000);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        BillboardPublisher.Subscriber subscriber = null;
 
-                //Client sends a request to list currently registered users.
-                else if (client_data[0].equals(LIST_USERS)) {
-                    oos.writeObject(server.listUsers((String) client_data[1], (String) client_data[2]));
-                    oos.flush();
+        try {
+            do {
+                FrameCodec.Frame request;
+                try {
+                    request = FrameCodec.readFrame(in);
+                } catch (EOFException | SocketTimeoutException ex) {
+                    //the client closed the connection, or it was idle for too long
+                    return;
                 }
-
-                //Client sends a request to create a new user.
-                else if (client_data[0].equals(CREATE_USER)) {
-                    oos.writeObject(server.createUser((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3], (String) client_data[4],
-                                    Boolean.parseBoolean((String)client_data[5]),
-                                    Boolean.parseBoolean((String)client_data[6]),
-                                    Boolean.parseBoolean((String)client_data[7]),
-                                    Boolean.parseBoolean((String)client_data[8]),
-                                    Boolean.parseBoolean((String)client_data[9]),
-                                    Boolean.parseBoolean((String)client_data[10])));
-                    oos.flush();
+                Object[] client_data = decodeRequest(request, options);
+                byte flags = keepAlive ? 0 : FrameCodec.FLAG_CLOSE;
+
+                if (keepAlive && subscriber == null && SUBSCRIBE_BB.equals(client_data[0])) {
+                    //Pushed billboards reuse the request ID of the subscription.
+                    //The lock keeps a push from overtaking the first response.
+                    int subscriptionId = request.requestId;
+                    subscriber = billboard -> writeResponse(out, subscriptionId, (byte) 0, billboard, options);
+                    //a subscribed viewer sends nothing more, so only a dead peer ends the connection
+                    socket.setSoTimeout(0);
+                    socket.setKeepAlive(true);
+                    synchronized (out) {
+                        writeResponse(out, request.requestId, flags, publisher.subscribe(subscriber), options);
+                    }
+                } else {
+                    writeResponse(out, request.requestId, flags, dispatch(client_data), options);
                 }
+            } while (keepAlive);
+        } finally {
+            if (subscriber != null) {
+                publisher.unsubscribe(subscriber);
+            }
+        }
+    }
 
-                //Client sends a request to retrieve the permissions for a given user.
-                else if (client_data[0].equals(GET_USER_PERMISSIONS)) {
-                    oos.writeObject(server.getUserPermissions( (String) client_data[1], (String) client_data[2],
-                            (String) client_data[3])); //Converting hash-map to string
-                    oos.flush();
-                }
+    /*
+     Encode and write a response frame. Writes are locked on the stream as
+     billboards pushed to a subscribed connection come from another thread.
+     The billboard showing now is written from its cached encoding.
+     */
+    private void writeResponse(DataOutputStream out, int requestId, byte flags, Object response, byte options)
+            throws IOException {
+        NowShowingCache.Encoded cached = cachedResponse(response, options);
+        if (cached != null) {
+            synchronized (out) {
+                FrameCodec.writeHeader(out, cached.length(), requestId, (byte) (flags | cached.getFlags()));
+                cached.writeTo(out);
+                out.flush();
+            }
+            return;
+        }
+        FrameCodec.Frame frame = encodeResponse(requestId, flags, response, options);
+        synchronized (out) {
+            FrameCodec.writeFrame(out, frame);
+        }
+    }
 
-                //Client sends a request to edit and set permissions for a user.
-                else if (client_data[0].equals(SET_USER_PERMISSIONS)) {
-                    oos.writeObject(server.setUserPermissions((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3], Boolean.parseBoolean((String)client_data[4]),
-                                    Boolean.parseBoolean((String)client_data[5]),
-                                    Boolean.parseBoolean((String)client_data[6]),
-                                    Boolean.parseBoolean((String)client_data[7])));
-                    oos.flush();
-                }
+    /**
+     * Returns the publisher pushing the scheduled billboard to subscribed viewers.
+     * @return the publisher
+     */
+    public BillboardPublisher getPublisher() {
+        return publisher;
+    }
 
-                //Client sends a request to update a password.
-                else if (client_data[0].equals(SET_USER_PASSWORD)) {
-                    oos.writeObject(server.setPassword((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3],
-                                    (String) client_data[4]));
-                    //System.out.println(client_data[4] + "in server");
-                    oos.flush();
-                }
+    /**
+     * Returns the compressor shared by every framed connection, creating it
+     * from the compression settings in network.props on first use.
+     * @return the compressor
+     */
+    public synchronized FrameCompressor getCompressor() {
+        if (compressor == null) {
+            compressor = new FrameCompressor(compressionLevel, compressionMinBytes);
+        }
+        return compressor;
+    }
 
-                //Client sends a request to delete a user.
-                else if (client_data[0].equals(DELETE_USER)) {
-                    oos.writeObject(server.deleteUser((String) client_data[1], (String) client_data[2],
-                                    (String) client_data[3]));
-                    oos.flush();
-                }
+    /**
+     * Decode the request carried by a frame, inflating it if the client
+     * compressed it.
+     * @param frame request frame
+     * @param options option bits the client sent in its preface
+     * @return request array, the first element being the request type
+     * @throws IOException if the payload is malformed
+     * @throws ClassNotFoundException if a serialised request is of an unknown class
+     */
+    public Object[] decodeRequest(FrameCodec.Frame frame, byte options) throws IOException,
+            ClassNotFoundException {
+        return FrameCodec.decodeRequest(getCompressor().decompress(frame), options);
+    }
 
-                //Client sends a request to log out and end current session.
-                else if (client_data[0].equals(LOGOUT_REQUEST)) {
-                    oos.writeObject(server.loggedOut((String)client_data[1]));
-                    oos.flush();
-                }
+    /**
+     * Returns the cached encoding of a response if it is the billboard showing
+     * now, as returned by RECEIVE_BB, or an envelope holding it, as returned
+     * by RECEIVE_BB with a tag and by RECEIVE_BB_NEXT, so that it is not
+     * encoded again for every viewer. The billboard is encoded the first time
+     * it is asked for in each version, and each envelope at most once every
+     * NowShowingCache.ENVELOPE_MAX_AGE_MILLIS.
+     * @param response response to send
+     * @param options option bits the client sent in its preface, 0 for the legacy protocol
+     * @return the encoded payload, or null if the response does not hold the billboard showing now
+     * @throws IOException if the response cannot be encoded
+     */
+    NowShowingCache.Encoded cachedResponse(Object response, byte options) throws IOException {
+        NowShowingCache.Snapshot current = nowShowing.peek();
+        if (response == null || current == null) {
+            return null;
+        }
+        if (current.getBillboard() == response) {
+            return current.getEncoded(encodingOf(options), billboard -> encoded(billboard, options));
+        }
+        int envelope = envelopeOf(current, response);
+        if (envelope < 0) {
+            return null;
+        }
+        return current.getEnvelope(envelope, encodingOf(options), billboard -> encoded(response, options));
+    }
 
-                //Billboard Viewer sends the routine request for the next billboard.
-                else if (client_data[0].equals(RECEIVE_BB)) {
-                    oos.writeObject(getScheduledBb());
-                    oos.flush();
-                }
+    /*
+     Encode a response payload to be cached and shared by every request for it.
+     */
+    private NowShowingCache.Encoded encoded(Object response, byte options) throws IOException {
+        FrameCodec.Frame frame = encodeResponse(0, (byte) 0, response, options);
+        return new NowShowingCache.Encoded(frame.flags, frame.payload);
+    }
+
+    /*
+     Returns which of the NowShowingCache.ENVELOPES shapes a response is, or -1
+     if it is not an envelope of the billboard showing now. A RECEIVE_BB
+     envelope holds the billboard (0) or NOT_MODIFIED (1); a RECEIVE_BB_NEXT
+     envelope holds the billboard or its tag, then the next billboard or its
+     tag (2 to 5). The parts are matched by identity with the snapshot's.
+     */
+    private static int envelopeOf(NowShowingCache.Snapshot current, Object response) {
+        if (!(response instanceof Object[]) || response instanceof String[]) {
+            return -1;
+        }
+        Object[] parts = (Object[]) response;
+        if (parts.length == 2) {
+            if (parts[0] == current.getBillboard()) {
+                return 0;
+            }
+            return parts[0] == NOT_MODIFIED ? 1 : -1;
+        }
+        if (parts.length == 5 && Long.valueOf(current.getChangeAt()).equals(parts[2])) {
+            int showing = parts[0] == current.getBillboard() ? 0 : parts[0] == current.getTag() ? 1 : -1;
+            int upcoming = parts[1] == current.getUpcoming() ? 0 : parts[1] == current.getUpcomingTag() ? 1 : -1;
+            if (showing >= 0 && upcoming >= 0) {
+                return 2 + showing * 2 + upcoming;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     Returns which of the cached encodings a response to a connection with
+     the given options is sent in: binary or serialised, compressed or not.
+     */
+    private int encodingOf(byte options) {
+        int encoding = (options & FrameCodec.OPTION_BINARY) != 0 ? 1 : NowShowingCache.ENCODING_SERIALIZED;
+        if (compression && (options & FrameCodec.OPTION_DEFLATE) != 0) {
+            encoding |= 2;
+        }
+        return encoding;
+    }
 
-                //Catch an unknown command.
-                else {
-                    System.out.println("ACCESSED ELSE");
-                    System.out.println("Unknown command " + client_data[0]);
+    /**
+     * Encode a response frame. The payload is compressed if the client
+     * offered compression in its preface, compression is enabled on the
+     * server and the payload is large enough to be worth it.
+     * @param requestId request the response belongs to
+     * @param flags flag bits
+     * @param response response to send
+     * @param options option bits the client sent in its preface
+     * @return the response frame
+     * @throws IOException if the response cannot be encoded
+     */
+    public FrameCodec.Frame encodeResponse(int requestId, byte flags, Object response, byte options)
+            throws IOException {
+        byte[] payload = FrameCodec.encodeResponse(response, options);
+        if (compression && (options & FrameCodec.OPTION_DEFLATE) != 0) {
+            return getCompressor().compress(requestId, flags, payload);
+        }
+        return new FrameCodec.Frame(requestId, flags, payload);
+    }
+
+    /**
+     * Check the client request and action it appropriately by calling the
+     * handler registered for its request type.
+     * @param client_data request array sent by the Client or Viewer, the first
+     *                    element being the request type
+     * @return the response to send back, or null if the request is unknown
+     */
+    public Object dispatch(Object[] client_data) {
+        return commands.dispatch(client_data);
+    }
+
+    /**
+     * Returns the dispatch table of this server, so further request types
+     * can be registered and their statistics read.
+     * @return the command registry
+     */
+    public CommandRegistry getCommands() {
+        return commands;
+    }
+
+    /*
+     Register a handler for every request type, each calling the method
+     that actions it.
+     */
+    private void registerCommands() {
+        //Client sends a login request.
+        commands.register(Opcodes.LOGIN_REQUEST, client_data ->
+                loginRequest(str(client_data[1]), str(client_data[2])));
+
+        //Client sends a show billboards request.
+        commands.register(Opcodes.SHOW_BB, client_data ->
+                showBillboards(str(client_data[1])));
+
+        //Client sends a request for the next page of billboards.
+        commands.register(Opcodes.SHOW_BB_PAGE, client_data ->
+                showBillboardsPage(str(client_data[1]), num(client_data[2]), num(client_data[3])));
+
+        //Client sends a request to create or edit a billboard.
+        commands.register(Opcodes.CREATE_EDIT, client_data ->
+                createEditBillboard(str(client_data[1]), str(client_data[2]), str(client_data[3]),
+                        str(client_data[4]), str(client_data[5]), str(client_data[6])));
+
+        //Client sends a request to get a billboards information.
+        commands.register(Opcodes.GET_BB, client_data ->
+                getBillboardInformation(str(client_data[1]), str(client_data[2])));
+
+        //Client sends a request to delete a billboard.
+        commands.register(Opcodes.DELETE_BB, client_data ->
+                deleteBillboard(str(client_data[1]), str(client_data[2]), str(client_data[3])));
+
+        //Client sends a request to view the currently scheduled billboards.
+        commands.register(Opcodes.VIEW_SCHEDULE, client_data ->
+                viewSchedule(str(client_data[1]), str(client_data[2])));
+
+        //Client sends a request to schedule a new billboard.
+        commands.register(Opcodes.SCHEDULE_BB, client_data ->
+                scheduleBillboard(str(client_data[1]), str(client_data[2]), str(client_data[3]),
+                        str(client_data[4]), str(client_data[5]), str(client_data[6]), bool(client_data[7]),
+                        bool(client_data[8]), str(client_data[9]), str(client_data[10])));
+
+        //Client sends a request to remove a billboard from the schedule.
+        commands.register(Opcodes.REMOVE_BB, client_data ->
+                removeBillboard(str(client_data[1]), str(client_data[2]), str(client_data[3]),
+                        str(client_data[4]), str(client_data[5])));
+
+        //Client sends a request to list currently registered users.
+        commands.register(Opcodes.LIST_USERS, client_data ->
+                listUsers(str(client_data[1]), str(client_data[2])));
+
+        //Client sends a request to create a new user.
+        commands.register(Opcodes.CREATE_USER, client_data ->
+                createUser(str(client_data[1]), str(client_data[2]), str(client_data[3]), str(client_data[4]),
+                        bool(client_data[5]), bool(client_data[6]), bool(client_data[7]), bool(client_data[8]),
+                        bool(client_data[9]), bool(client_data[10])));
+
+        //Client sends a request to retrieve the permissions for a given user.
+        commands.register(Opcodes.GET_USER_PERMISSIONS, client_data ->
+                getUserPermissions(str(client_data[1]), str(client_data[2]), str(client_data[3])));
+
+        //Client sends a request to edit and set permissions for a user.
+        commands.register(Opcodes.SET_USER_PERMISSIONS, client_data ->
+                setUserPermissions(str(client_data[1]), str(client_data[2]), str(client_data[3]),
+                        bool(client_data[4]), bool(client_data[5]), bool(client_data[6]), bool(client_data[7])));
+
+        //Client sends a request to update a password.
+        commands.register(Opcodes.SET_USER_PASSWORD, client_data ->
+                setPassword(str(client_data[1]), str(client_data[2]), str(client_data[3]), str(client_data[4])));
+
+        //Client sends a request to delete a user.
+        commands.register(Opcodes.DELETE_USER, client_data ->
+                deleteUser(str(client_data[1]), str(client_data[2]), str(client_data[3])));
+
+        //Client sends a request to log out and end current session.
+        commands.register(Opcodes.LOGOUT_REQUEST, client_data ->
+                loggedOut(str(client_data[1])));
+
+        //Billboard Viewer sends the routine request for the next billboard.
+        commands.register(Opcodes.RECEIVE_BB, this::receiveBillboard);
+
+        //Billboard Viewer asks for the scheduled billboard, the one after it and when it starts.
+        commands.register(Opcodes.RECEIVE_BB_NEXT, this::receiveBillboardAhead);
+
+        //Billboard Viewer asks for the whole schedule, to work out the billboard showing itself.
+        commands.register(Opcodes.RECEIVE_SCHEDULE, this::receiveSchedule);
+
+        //Billboard Viewer subscribes to the scheduled billboard. The transports
+        //hold a kept-alive framed connection open for pushes; on any other
+        //connection this is answered like RECEIVE_BB.
+        commands.register(Opcodes.SUBSCRIBE_BB, client_data -> nowShowing.get().getBillboard());
+
+        //Client sends several requests in one envelope.
+        commands.register(Opcodes.BATCH, this::batch);
+    }
+
+    /**
+     * Action a batch of requests sent in one envelope and return their
+     * responses in the same order. Every request in the batch runs on a
+     * single database connection, opened once for the whole batch. A request
+     * that fails, is malformed or is itself a batch, gets a null response
+     * without stopping the rest of the batch.
+     * @param client_data BATCH followed by the request arrays to action
+     * @return array of responses, one per request
+     */
+    public Object[] batch(Object[] client_data) {
+        Object[] responses = new Object[client_data.length - 1];
+        if (!this.test) {
+            dbConnect.bind();
+        }
+        try {
+            for (int i = 1; i < client_data.length; i++) {
+                //A malformed request only fails its own slot
+                if (!(client_data[i] instanceof Object[]) || ((Object[]) client_data[i]).length == 0) {
+                    System.out.println("Malformed request " + i + " in batch rejected");
+                    continue;
                 }
+                Object[] request = (Object[]) client_data[i];
+                if (BATCH.equals(request[0])) {
+                    System.out.println("Nested batch rejected");
+                    continue;
+                }
+                try {
+                    responses[i - 1] = dispatch(request);
+                } catch (RuntimeException ex) {
+                    System.out.println("Unable to action " + request[0] + " in batch: " + ex);
+                }
+            }
+        } finally {
+            if (!this.test) {
+                dbConnect.unbind();
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Handles the viewer's request for the scheduled billboard. A viewer that
+     * sends the ContentTag of the billboard it is showing (null if none) is
+     * sent NOT_MODIFIED instead of the billboard if it is still the one
+     * scheduled, along with how long to wait before polling again. Viewers
+     * that send no tag are sent the billboard alone, as before.
+     * @param client_data RECEIVE_BB, optionally followed by a content tag
+     * @return the scheduled billboard (name, creator and XML) if no tag was
+     *         sent, otherwise an array of the billboard or NOT_MODIFIED and the
+     *         milliseconds to wait before polling again
+     */
+    public Object receiveBillboard(Object[] client_data) {
+        NowShowingCache.Snapshot current = nowShowing.get();
+        if (client_data.length < 2) {
+            return current.getBillboard();
+        }
+        String shown = str(client_data[1]);
+        Object billboard = shown != null && shown.equals(current.getTag()) ? NOT_MODIFIED : current.getBillboard();
+        return new Object[]{billboard, checkAfter(current)};
+    }
 
-                socket.close();
+    /**
+     * Handles the viewer's request for the scheduled billboard along with the
+     * billboard scheduled after it, so the viewer can prepare the next
+     * billboard and switch to it on time. The viewer sends the ContentTags of
+     * the billboards it holds; a billboard it already holds is sent as its
+     * tag instead of in full.
+     * @param client_data RECEIVE_BB_NEXT, followed by the tags of the billboards the viewer holds
+     * @return array of the billboard showing now, the billboard scheduled next
+     *         (null if the billboard is not known to change), the time of the
+     *         change and the server's current time, both in milliseconds since
+     *         the epoch (the time of the change is Long.MAX_VALUE if there is
+     *         none), and the milliseconds to wait before polling again
+     */
+    public Object[] receiveBillboardAhead(Object[] client_data) {
+        NowShowingCache.Snapshot current = nowShowing.get();
+        return new Object[]{
+                heldOrFull(current.getBillboard(), current.getTag(), client_data, 1),
+                heldOrFull(current.getUpcoming(), current.getUpcomingTag(), client_data, 1),
+                current.getChangeAt(),
+                System.currentTimeMillis(),
+                checkAfter(current)};
+    }
+
+    /**
+     * Handles the viewer's request for the weekly schedule and every billboard
+     * it shows, for viewers that work out the billboard showing themselves.
+     * A viewer holding a recent version of the schedule is sent only the
+     * entries added and removed since, and billboards it already holds are
+     * sent as their ContentTag.
+     * @param client_data RECEIVE_SCHEDULE, the version of the schedule the
+     *                    viewer holds (null if none) and the tags of the
+     *                    billboards it holds
+     * @return array of the version of the schedule; whether the entries that
+     *         follow are the whole schedule (true) or the changes since the
+     *         viewer's version (false); the entries added, each as
+     *         ScheduleEntry.toFields(); the scheduleIDs removed; every
+     *         billboard shown by the schedule by billboardID, as name, creator
+     *         and XML or as a one element array holding its tag; the ID of the
+     *         time zone the schedule is kept in; and the milliseconds to wait
+     *         before asking again. An error message if the schedule cannot be read.
+     */
+    public Object receiveSchedule(Object[] client_data) {
+        ScheduleSnapshots.Snapshot current = scheduleSnapshots.get();
+        if (current == null) {
+            return new String[]{"Database is not running, cannot read the schedule."};
+        }
+        String held = client_data.length > 1 ? str(client_data[1]) : null;
+        Map<Integer, ScheduleEntry> since = current.getVersion().equals(held) ? current.getEntries()
+                : scheduleSnapshots.entriesAt(held);
+
+        //Send the whole schedule, or the entries added and removed since the viewer's version
+        List<String[]> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (ScheduleEntry entry : current.getEntries().values()) {
+            ScheduleEntry before = since == null ? null : since.get(entry.getScheduleID());
+            if (before == null || !Arrays.equals(before.toFields(), entry.toFields())) {
+                added.add(entry.toFields());
             }
+        }
+        if (since != null) {
+            for (Integer scheduleID : since.keySet()) {
+                if (!current.getEntries().containsKey(scheduleID)) {
+                    removed.add(String.valueOf(scheduleID));
+                }
+            }
+        }
 
-        } catch (IOException ex) {
-            // Catch and print errors with creating a socket.
-            ex.printStackTrace();
-            System.out.println("Unable to create connection.");
-        } catch (ClassNotFoundException ex) {
-            System.out.println("Cannot define receiving object.");
+        //Send each billboard in full unless the viewer already holds it
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        for (Map.Entry<String, String[]> billboard : current.getBillboards().entrySet()) {
+            String tag = current.getTag(billboard.getKey());
+            Object sent = heldOrFull(billboard.getValue(), tag, client_data, 2);
+            billboards.put(billboard.getKey(), sent instanceof String ? new String[]{tag} : billboard.getValue());
+        }
+
+        return new Object[]{
+                current.getVersion(),
+                since == null,
+                added.toArray(new String[0][]),
+                removed.toArray(new String[0]),
+                billboards,
+                DatabaseInterface.getScheduleZone().getID(),
+                viewerMaxStaleness * 1000L};
+    }
+
+    /*
+     Returns how long a viewer should wait before polling again: until the
+     scheduled billboard next changes, but no longer than the configured
+     maximum staleness so edits to the billboard are picked up. A viewer
+     shown an error polls again at the old fixed interval.
+     */
+    private static long checkAfter(NowShowingCache.Snapshot current) {
+        if (current.getTag() == null) {
+            return ERROR_CHECK_AFTER;
+        }
+        long untilChange = current.getChangeAt() - System.currentTimeMillis();
+        return Math.max(MIN_CHECK_AFTER, Math.min(untilChange, viewerMaxStaleness * 1000L));
+    }
+
+    /*
+     Returns the tag of a billboard if it is one of the tags sent by the
+     viewer, from the given argument on, otherwise the billboard itself.
+     */
+    private static Object heldOrFull(String[] billboard, String tag, Object[] client_data, int first) {
+        for (int i = first; tag != null && i < client_data.length; i++) {
+            if (tag.equals(str(client_data[i]))) {
+                return tag;
+            }
         }
+        return billboard;
+    }
+
+    /*
+     Read a string argument. Binary clients send some arguments typed, so
+     numbers are converted back to the string form the request methods take.
+     */
+    private static String str(Object argument) {
+        return argument == null || argument instanceof String ? (String) argument : String.valueOf(argument);
+    }
+
+    /*
+     Read a boolean argument, sent as a Boolean by binary clients and as
+     "true" or "false" by legacy clients.
+     */
+    private static boolean bool(Object argument) {
+        return argument instanceof Boolean ? (Boolean) argument : Boolean.parseBoolean(str(argument));
+    }
+
+    /*
+     Read an integer argument, sent as an Integer by binary clients and as
+     a decimal string by legacy clients.
+     */
+    private static int num(Object argument) {
+        return argument instanceof Number ? ((Number) argument).intValue() : Integer.parseInt(str(argument));
     }
 
     /**
@@ -326,6 +886,44 @@ public class BillboardServer {
         return all_billboards;
     }
 
+    /**
+     * Function that handles a request for one page of billboards, so the
+     * client can list every billboard without the server or the client
+     * holding the whole table at once. Pages are in billboardID order and
+     * each starts after the last billboardID of the previous page. The page
+     * size is capped at MAX_PAGE_SIZE.
+     * Returns an ordered Map structured like showBillboards; a page with fewer
+     * entries than requested is the last one.
+     * @param session_token session token sent by the currently logged in user
+     * @param afterID billboardID of the last billboard received, 0 for the first page
+     * @param pageSize number of billboards wanted
+     * @return Map<String, String[]> of billboard objects, or null if the database is not available
+     */
+    public Map<String, String[]> showBillboardsPage(String session_token, int afterID, int pageSize) {
+        //Keep the page within bounds so a client cannot ask for the whole table.
+        pageSize = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+        Map<String, String[]> billboard_page = null;
+        DatabaseInterface database = new DatabaseInterface();
+
+        if (!this.test) {
+            //Proceed to communicate with the DatabaseInterface if this
+            //object is not a test object.
+            Connection connection = dbConnect.getInstance();
+            if (connection != null) {
+                billboard_page = database.showBillboardsPage(session_token, afterID, pageSize, connection);
+            } else {
+                System.out.println("Unable to retrieve billboards from server.");
+            }
+            dbConnect.closeConnection(connection);
+        } else {
+            //Proceed with calling the Mock server to perform a test case.
+            billboard_page = database.showBillboardsPage(session_token, afterID, pageSize);
+        }
+        //Return the response retrieved from the DatabaseInterface or
+        //Mock server.
+        return billboard_page;
+    }
+
     /**
      * Get the billboard information from the database with the
      * given billboard_ID and a session token.
@@ -395,6 +993,9 @@ public class BillboardServer {
             response = database.createEditBillboard(session_token, username, billboardXML, isNewBillboard,
                                                    billboard_ID, billboard_name);
         }
+        //Drop the cached billboard, so viewers and subscribers are sent any change.
+        nowShowing.invalidate();
+        scheduleSnapshots.invalidate();
         //Return the response retrieved from the DatabaseInterface or
         //Mock server.
         return response;
@@ -429,6 +1030,9 @@ public class BillboardServer {
             //Proceed with calling the Mock server to perform a test case.
             response = database.deleteBillboard(session_token, username, billboard_ID);
         }
+        //Drop the cached billboard, so viewers and subscribers are sent any change.
+        nowShowing.invalidate();
+        scheduleSnapshots.invalidate();
         //Return the response retrieved from the DatabaseInterface or
         //Mock server.
         return response;
@@ -513,6 +1117,9 @@ public class BillboardServer {
             response = database.scheduleBillboard(session_token, userName, billboardID, hour, min, day,
                     recDaily, recHourly, recMin, duration);
         }
+        //Drop the cached billboard, so viewers and subscribers are sent any change.
+        nowShowing.invalidate();
+        scheduleSnapshots.invalidate();
         //Return the response retrieved from the DatabaseInterface or
         //Mock server.
         return response;
@@ -550,6 +1157,9 @@ public class BillboardServer {
             //Proceed with calling the Mock server to perform a test case.
             response = database.removeBillboard(session_token, userName, billboard_ID, selected_time, day);
         }
+        //Drop the cached billboard, so viewers and subscribers are sent any change.
+        nowShowing.invalidate();
+        scheduleSnapshots.invalidate();
         //Return the response retrieved from the DatabaseInterface or
         //Mock server.
         return response;
@@ -867,6 +1477,10 @@ public class BillboardServer {
         dbConnect.closeConnection(connection);
     }
 
+    /*
+     Read the billboard showing now from the database. Requests are answered
+     from the NowShowingCache, which calls this when the billboard changes.
+     */
     private static String[] getScheduledBb() {
         Connection connection = dbConnect.getInstance();
         String[] result = new String[1];
@@ -881,6 +1495,67 @@ public class BillboardServer {
         return result;
     }
 
+    /*
+     Read every schedule entry from the database, or null if the database is
+     not running or the schedule cannot be read.
+     */
+    private static List<ScheduleEntry> getScheduleEntries() {
+        Connection connection = dbConnect.getInstance();
+        if (connection == null) {
+            return null;
+        }
+        try {
+            return new DatabaseInterface().listSchedule(connection);
+        } catch (SQLException ex) {
+            System.out.println("Unable to read the schedule: " + ex.getMessage());
+            return null;
+        } finally {
+            dbConnect.closeConnection(connection);
+        }
+    }
+
+    /*
+     Read the billboards shown by a schedule, and the default billboard, from
+     the database.
+     */
+    private static Map<String, String[]> getScheduledBillboards(List<ScheduleEntry> entries) {
+        Connection connection = dbConnect.getInstance();
+        if (connection == null) {
+            return new LinkedHashMap<>();
+        }
+        Map<String, String[]> billboards = new DatabaseInterface().getScheduledBillboards(entries, connection);
+        dbConnect.closeConnection(connection);
+        return billboards;
+    }
+
+    /*
+     Read the billboard scheduled at a time from the database, or null if
+     the database is not running.
+     */
+    private static String[] getScheduledBbAt(long time) {
+        Connection connection = dbConnect.getInstance();
+        if (connection == null) {
+            return null;
+        }
+        String[] result = new DatabaseInterface().scheduledAt(time, connection);
+        dbConnect.closeConnection(connection);
+        return result;
+    }
+
+    /*
+     Returns the time a different billboard is next scheduled, or
+     Long.MAX_VALUE if it is not known.
+     */
+    private static long nextScheduleChange() {
+        Connection connection = dbConnect.getInstance();
+        if (connection == null) {
+            return Long.MAX_VALUE;
+        }
+        long next = new DatabaseInterface().nextScheduleChange(connection);
+        dbConnect.closeConnection(connection);
+        return next;
+    }
+
 
     /*
      Private helper to set the database day.
@@ -912,4 +1587,29 @@ public class BillboardServer {
         return db_day;
     }
 
+    /*
+     Private helper to read an integer property, falling back to the default
+     if it is missing or malformed.
+     */
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        try {
+            return Integer.parseInt(props.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException ex) {
+            System.out.println("Invalid value for " + key + " in network properties, using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /*
+     Private helper to close a socket, ignoring errors from a connection
+     that has already gone away.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            //nothing more can be done with this connection
+        }
+    }
+
 }
@@ -0,0 +1,18 @@
+package billboardServer;
+
+/**
+ * Actions one type of request for the BillboardServer. Handlers are
+ * registered once with the CommandRegistry under the opcode of the request
+ * they action.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * Action a request.
+     * @param client_data request array sent by the Client or Viewer, the first
+     *                    element being the request type
+     * @return the response to send back
+     */
+    Object handle(Object[] client_data);
+}
@@ -0,0 +1,116 @@
+package billboardServer;
+
+import helpers.Opcodes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatch table of the BillboardServer. Each request type has a numeric
+ * opcode (see Opcodes) and its handler is stored at that index, so a request
+ * is dispatched with a single array lookup instead of comparing the request
+ * string against every known command. Legacy requests name their command as
+ * a string, which is mapped to its opcode with one hash lookup.
+ *
+ * Every handler keeps its own count of requests, failed requests and time
+ * spent, published through ServerMetrics.
+ */
+public class CommandRegistry {
+    private final Command[] commands = new Command[Opcodes.COUNT];
+
+    /*
+     A registered handler and its statistics.
+     */
+    private static class Command {
+        final String name;
+        final CommandHandler handler;
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        Command(String name, CommandHandler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        @Override
+        public String toString() {
+            long requests = count.sum();
+            double averageMillis = requests == 0 ? 0 : totalNanos.sum() / 1e6 / requests;
+            return String.format("count=%d errors=%d avg=%.2fms max=%.2fms", requests, errors.sum(),
+                    averageMillis, maxNanos.get() / 1e6);
+        }
+    }
+
+    /**
+     * Register (or replace) the handler of a request type.
+     * @param opcode opcode of the request
+     * @param handler handler actioning the request
+     * @throws IllegalArgumentException if the opcode is not defined in Opcodes
+     */
+    public void register(short opcode, CommandHandler handler) {
+        String name = Opcodes.command(opcode);
+        if (name == null) {
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+        commands[opcode] = new Command(name, handler);
+    }
+
+    /**
+     * Check whether a handler is registered for a request type.
+     * @param opcode opcode of the request
+     * @return true if the request can be dispatched
+     */
+    public boolean isRegistered(int opcode) {
+        return opcode > 0 && opcode < commands.length && commands[opcode] != null;
+    }
+
+    /**
+     * Action a request with the handler registered for its request type.
+     * Exceptions thrown by the handler are counted and passed on.
+     * @param client_data request array, the first element being the request type
+     * @return the response to send back, or null if the request type is unknown
+     */
+    public Object dispatch(Object[] client_data) {
+        short opcode = client_data[0] instanceof String ? Opcodes.forCommand((String) client_data[0]) : -1;
+        if (!isRegistered(opcode)) {
+            System.out.println("Unknown command " + client_data[0]);
+            return null;
+        }
+        Command command = commands[opcode];
+        long start = System.nanoTime();
+        try {
+            return command.handler.handle(client_data);
+        } catch (RuntimeException ex) {
+            command.errors.increment();
+            throw ex;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            command.count.increment();
+            command.totalNanos.add(elapsed);
+            command.maxNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Returns the statistics of a request type.
+     * @param opcode opcode of the request
+     * @return one line summary, or null if no handler is registered
+     */
+    public String getStats(int opcode) {
+        return isRegistered(opcode) ? commands[opcode].toString() : null;
+    }
+
+    /**
+     * Publish the statistics of every registered handler through
+     * ServerMetrics, one line per request type.
+     */
+    public void registerMetrics() {
+        for (Command command : commands) {
+            if (command != null) {
+                ServerMetrics.register("command." + command.name, command::toString);
+            }
+        }
+    }
+}
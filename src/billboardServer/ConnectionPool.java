@@ -0,0 +1,486 @@
+package billboardServer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of open connections to MariaDB, so requests reuse a connection
+ * instead of opening and closing one each.
+ *
+ * A connection is handed out wrapped in a proxy whose close() returns it to
+ * the pool, so code that closes its connection when it is done keeps
+ * working unchanged. At most maxSize connections are handed out at once;
+ * further callers wait up to the acquisition timeout. Connections that have
+ * been idle for a while are validated before being handed out, and those
+ * idle for longer than the idle timeout are closed, down to minSize.
+ *
+ * Each connection also keeps a cache of its prepared statements, keyed by
+ * their SQL. Closing a statement prepared with prepareStatement(sql) returns
+ * it to the cache, so the next request preparing the same SQL on that
+ * connection reuses the statement, and the plan the server prepared for it,
+ * instead of having it parsed again.
+ */
+public class ConnectionPool {
+    //idle connections are validated before use if unused for longer than this
+    private static final long VALIDATE_AFTER_MILLIS = 1000;
+    //how often idle connections are checked for eviction
+    private static final long EVICTION_INTERVAL_MILLIS = 30_000;
+    //driver options preparing statements on the server and caching them in the driver
+    private static final String DRIVER_OPTIONS = "?createDatabaseIfNotExist=true&useServerPrepStmts=true" +
+            "&cachePrepStmts=true";
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder statementsPrepared = new LongAdder();
+    private final LongAdder statementsReused = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private ScheduledExecutorService evictor;
+
+    /**
+     * Opens a new physical connection to the database.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+
+        /**
+         * Open a connection.
+         * @return the new connection
+         * @throws SQLException if the database cannot be reached
+         */
+        Connection open() throws SQLException;
+    }
+
+    /*
+     A physical connection, the time it was last returned to the pool and its
+     cached statements. The cache is only used by the thread holding the
+     connection. The least recently used statement is closed once the cache
+     is full.
+     */
+    private static class PooledConnection {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements;
+        long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Creates a pool. No connection is opened until start() or acquire() is called.
+     * @param factory opens the physical connections
+     * @param minSize connections kept open even when idle
+     * @param maxSize most connections handed out at once
+     * @param acquireTimeoutMillis longest acquire() waits for a connection
+     * @param idleTimeoutSeconds seconds after which an idle connection above minSize is closed
+     * @param validationTimeoutSeconds longest a validation query may take
+     * @param statementCacheSize prepared statements cached per connection, 0 to disable caching
+     * @throws IllegalArgumentException if the sizes are out of range
+     */
+    public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize, long acquireTimeoutMillis,
+                          int idleTimeoutSeconds, int validationTimeoutSeconds, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Pool sizes must satisfy 0 <= minSize <= maxSize and maxSize >= 1");
+        }
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000L;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Creates a pool configured from the db.props properties "jdbc.url",
+     * "jdbc.schema", "jdbc.username", "jdbc.password", "pool.minSize",
+     * "pool.maxSize", "pool.acquireTimeoutMillis", "pool.idleTimeoutSeconds",
+     * "pool.validationTimeoutSeconds" and "pool.statementCacheSize".
+     * @param props properties read from db.props
+     * @return the pool
+     */
+    public static ConnectionPool fromProperties(Properties props) {
+        String url = props.getProperty("jdbc.url") + "/" + props.getProperty("jdbc.schema") + DRIVER_OPTIONS;
+        String username = props.getProperty("jdbc.username");
+        String password = props.getProperty("jdbc.password");
+        return new ConnectionPool(() -> DriverManager.getConnection(url, username, password),
+                Integer.parseInt(props.getProperty("pool.minSize", "2")),
+                Integer.parseInt(props.getProperty("pool.maxSize", "10")),
+                Long.parseLong(props.getProperty("pool.acquireTimeoutMillis", "5000")),
+                Integer.parseInt(props.getProperty("pool.idleTimeoutSeconds", "300")),
+                Integer.parseInt(props.getProperty("pool.validationTimeoutSeconds", "2")),
+                Integer.parseInt(props.getProperty("pool.statementCacheSize", "32")));
+    }
+
+    /**
+     * Open minSize connections and start closing connections that stay idle
+     * for too long. Does nothing if the pool has already started.
+     */
+    public synchronized void start() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "billboard-db-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICTION_INTERVAL_MILLIS, EVICTION_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        ServerMetrics.register("dbPool", this::toString);
+        fillToMinimum();
+    }
+
+    /**
+     * Take a connection from the pool, opening a new one if none is idle.
+     * The connection is returned to the pool when it is closed.
+     * @return an open connection
+     * @throws SQLTimeoutException if no connection became available within the acquisition timeout
+     * @throws SQLException if a new connection cannot be opened
+     */
+    public Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("No database connection available after " + acquireTimeoutMillis +
+                        "ms");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(openConnection(), statementCacheSize);
+            }
+            long waited = System.nanoTime() - start;
+            acquired.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(pooled));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of connections currently handed out.
+     * @return connections in use
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of open connections waiting in the pool.
+     * @return idle connections
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns a one line summary of the pool counters.
+     * @return pool metrics
+     */
+    @Override
+    public String toString() {
+        long count = acquired.sum();
+        double averageMillis = count == 0 ? 0 : waitNanos.sum() / 1e6 / count;
+        return String.format("active=%d idle=%d open=%d created=%d closed=%d acquired=%d avgWait=%.2fms " +
+                        "maxWait=%.2fms timeouts=%d invalid=%d prepared=%d reused=%d", getActiveCount(),
+                getIdleCount(), open.get(), created.sum(), closed.sum(), count, averageMillis,
+                maxWaitNanos.get() / 1e6, timeouts.sum(), invalid.sum(), statementsPrepared.sum(),
+                statementsReused.sum());
+    }
+
+    /*
+     Take the most recently used idle connection, validating it first if it
+     has been idle for a while. Invalid connections are closed and skipped.
+     Returns null if no valid connection is idle.
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER_MILLIS || isValid(pooled)) {
+                return pooled;
+            }
+            invalid.increment();
+            closePhysical(pooled);
+        }
+        return null;
+    }
+
+    /*
+     Check that a connection still works.
+     */
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /*
+     Open a new physical connection.
+     */
+    private Connection openConnection() throws SQLException {
+        Connection connection = factory.open();
+        open.incrementAndGet();
+        created.increment();
+        return connection;
+    }
+
+    /*
+     Return a connection to the pool once its user has closed it. A
+     transaction left open is rolled back; a connection that can no longer
+     be used is closed instead.
+     */
+    private void release(PooledConnection pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                open.decrementAndGet();
+                closed.increment();
+                return;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException ex) {
+            closePhysical(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /*
+     Close connections idle for longer than the idle timeout, keeping at
+     least minSize open, then reopen any that are missing below minSize.
+     The oldest connections are at the end of the deque.
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> oldest = idle.descendingIterator();
+        while (oldest.hasNext() && open.get() > minSize) {
+            PooledConnection pooled = oldest.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.removeLastOccurrence(pooled)) {
+                closePhysical(pooled);
+            }
+        }
+        fillToMinimum();
+    }
+
+    /*
+     Open connections until minSize are open.
+     */
+    private void fillToMinimum() {
+        while (open.get() < minSize) {
+            try {
+                idle.offerLast(new PooledConnection(openConnection(), statementCacheSize));
+            } catch (SQLException ex) {
+                System.out.println("Could not connect to MariaDB or find the designated schema.");
+                return;
+            }
+        }
+    }
+
+    /*
+     Close a physical connection that is leaving the pool.
+     */
+    private void closePhysical(PooledConnection pooled) {
+        open.decrementAndGet();
+        closed.increment();
+        pooled.statements.clear();
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignored) {
+            //the connection is being discarded anyway
+        }
+    }
+
+    /*
+     The connection handed out for one acquire(). Closing it returns the
+     physical connection to the pool; it cannot be used after that.
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    if (returned) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.connection;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args.length == 1 && statementCacheSize > 0) {
+                return prepareCached((String) args[0]);
+            }
+            return forward(pooled.connection, method, args);
+        }
+
+        /*
+         Take the cached statement for this SQL, or prepare a new one. The
+         statement stays out of the cache until it is closed, so two open
+         statements never share one.
+         */
+        private PreparedStatement prepareCached(String sql) throws SQLException {
+            PreparedStatement statement = pooled.statements.remove(sql);
+            if (statement == null) {
+                statement = pooled.connection.prepareStatement(sql);
+                statementsPrepared.increment();
+            } else {
+                statementsReused.increment();
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new CachedStatement(pooled, sql, statement));
+        }
+    }
+
+    /*
+     A cached statement handed out by prepareStatement(sql). Closing it
+     clears its parameters and puts it back in the cache of its connection.
+     */
+    private static class CachedStatement implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean returned;
+
+        CachedStatement(PooledConnection pooled, String sql, PreparedStatement statement) {
+            this.pooled = pooled;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        statement.clearParameters();
+                        if (pooled.statements.putIfAbsent(sql, statement) != null) {
+                            //another statement for this SQL was returned first
+                            statement.close();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    if (returned) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Statement has already been closed");
+            }
+            return forward(statement, method, args);
+        }
+    }
+
+    /*
+     Call a method on the wrapped connection or statement, passing on the
+     exception it throws.
+     */
+    private static Object forward(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /*
+     Close a statement leaving the cache.
+     */
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            //the statement is being discarded anyway
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package billboardServer;
 
+import helpers.ScheduleEntry;
+import helpers.ScheduleIndex;
+import helpers.ScheduleLookup;
+import helpers.ScheduleSlotTable;
+
 import java.sql.*;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import static helpers.Constants.*;
 
@@ -17,25 +23,12 @@ public class DatabaseInterface {
     private static final int MAX_HOUR = 23;
     private static final int MAX_MINUTES = 59;
     private static final int MAX_DAYS = 7;
-
-    //SQL to create a table for user storage in the database
-    private static final String CREATE_USERS = "CREATE TABLE IF NOT EXISTS `billboardserver`.`USERS`" +
-            " (`userName` varchar(45) NOT NULL,`password` MEDIUMTEXT NOT NULL,`salt` varchar(45) NOT NULL," +
-            "`loginStatus` boolean NOT NULL,`createBillboardP` boolean NOT NULL,`editAllBillboardP` boolean NOT NULL," +
-            "`scheduleBillboardP` boolean NOT NULL,`editUsersP` boolean NOT NULL,`isAdmin` boolean NOT NULL," +
-            " PRIMARY KEY (`userName`));";
-    //SQL to create a table for billboard storage in the database
-    private static final String CREATE_BILLBOARDS = "CREATE TABLE IF NOT EXISTS `billboardserver`.`BILLBOARDS`" +
-            " (`billboardID` MEDIUMINT NOT NULL AUTO_INCREMENT,`billboardName` varchar(45) NOT NULL," +
-            "`userName` varchar(45) NOT NULL,`billboardXML` MEDIUMTEXT,PRIMARY KEY (`billboardID`));";
-    //SQL to create a table for schedule storage in the database
-    private static final String CREATE_SCHEDULE = "CREATE TABLE IF NOT EXISTS `billboardserver`.`SCHEDULE`" +
-            " (`billboardID` MEDIUMINT NOT NULL,`db_hour` varchar(45) NOT NULL,`db_minute` varchar(45)  NOT NULL," +
-            "`db_day` varchar(45) NOT NULL,`reoccurDaily`  boolean,`reoccurHourly` boolean,`reoccurMin` varchar(45)," +
-            "`duration` varchar(45) NOT NULL,`scheduler` varchar(45) NOT NULL,PRIMARY KEY (`billboardID`));";
+    private static final String[] DAY_NAMES = {"Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday",
+            "Saturday"};
 
     //Declare SQL Commands for users table
     public static final String SELECT_USERS = "SELECT * FROM USERS";
+    public static final String SELECT_USER = "SELECT * FROM USERS WHERE userName = ?";
     public static final String INSERT_USER = "INSERT INTO USERS VALUES (?,?,?,?,?,?,?,?,?)";
     public static final String UPDATE_PASSWORD = "UPDATE USERS SET password=? WHERE userName=?";
     public static final String DELETE_USER = "DELETE FROM USERS WHERE userName LIKE ?";
@@ -43,46 +36,62 @@ public class DatabaseInterface {
             "scheduleBillboardP=?, editUsersP=? WHERE userName LIKE ?";
 
     //SQL commands for billboard table
+    public static final String SELECT_BILLBOARDS = "SELECT * FROM billboards";
+    public static final String SELECT_BILLBOARD = "SELECT * FROM billboards WHERE billboardID = ?";
     public static final String INSERT_BB =  "INSERT INTO billboards (userName, billboardName, billboardXML)" +
             " VALUES (?,?,?)";
     public static final String DELETE_BILLBOARD = "DELETE FROM billboards WHERE billboardID LIKE ?";
     public static final String UPDATE_BB = "UPDATE billboards SET userName=?, billboardXML=?, billboardName=? " +
                                             "WHERE billboardID=?";
+    public static final String SHOW_BILLBOARDS_PAGE = "SELECT billboardID, userName, billboardXML, billboardName " +
+            "FROM billboards WHERE billboardID > ? ORDER BY billboardID LIMIT ?";
 
     //SQL commands for schedule table
+    public static final String SELECT_SCHEDULED_BB = "SELECT * FROM schedule WHERE billboardID = ?";
     public static final String REMOVE_SINGLE_BB_FROM_SCHEDULE = "DELETE FROM schedule WHERE billboardID LIKE ? ";
     public static final String REMOVE_BILLBOARD_SCHEDULE = "DELETE FROM schedule WHERE billboardID LIKE ? AND" +
             " db_hour=? AND db_minute=? AND db_day=?";
-    public static final String SCHEDULE_BILLBOARD = "INSERT INTO schedule VALUES (?,?,?,?,?,?,?,?,?)";
-
-    private static HashMap<String, Date> listOfTokens = new HashMap<>();
+    public static final String SCHEDULE_BILLBOARD = "INSERT INTO schedule (billboardID, db_hour, db_minute, " +
+            "db_day, reoccurDaily, reoccurHourly, reoccurMin, duration, scheduler) VALUES (?,?,?,?,?,?,?,?,?)";
+    //Lists the schedule with each billboard's name in one query, reading only the columns that are shown
+    public static final String SELECT_SCHEDULE_ENTRIES = "SELECT s.scheduleID, s.billboardID, b.billboardName, s.scheduler, " +
+            "s.db_hour, s.db_minute, s.db_day, s.duration, s.reoccurDaily, s.reoccurHourly, s.reoccurMin " +
+            "FROM schedule s JOIN billboards b ON b.billboardID = s.billboardID ORDER BY s.db_day, s.start_minute";
+    //Rows read from the server per round trip while listing the schedule
+    private static final int SCHEDULE_FETCH_SIZE = 500;
+
+    //Session tokens are shared by every worker thread actioning requests
+    private static Map<String, Date> listOfTokens = new ConcurrentHashMap<>();
     public final static long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
 
     private static final String DEFAULT_BB = "1";
     private static String scheduled_BB_ID = DEFAULT_BB;
 
+    //Lookup of the schedule shared by every worker thread, updated whenever this server changes the schedule.
+    //It is also updated once it is a minute old, to pick up changes made by other servers.
+    public static final String SCHEDULER_INDEX = "index";   //binary search over the segments of the week
+    public static final String SCHEDULER_SLOTS = "slots";   //a table of the billboard in every minute of the week
+    private static final long SCHEDULE_INDEX_MAX_AGE = 60 * 1000L;
+    private static volatile String schedulerMode = SCHEDULER_INDEX;
+    private static volatile ScheduleLookup scheduleLookup;
+    private static volatile long scheduleLookupBuilt;
+    private static final ScheduleSlotTable slotTable = new ScheduleSlotTable();
+    private static final TimeZone scheduleZone = TimeZone.getDefault();
+
     /**
      * Initialise connection to the database
-     * Uses the CREATE statements above to initialise the database with tables
-     * for users, billboards and the schedule. Prints messages to console indicating
-     * if this process was successful.
+     * Creates the tables for users, billboards and the schedule, or upgrades
+     * them in place if the database was created by an older server. Prints
+     * messages to console indicating if this process was successful.
      */
     public static void initialiseDatabase(Connection connection){
-        Statement statement;
         try {
-            //Create the statement object that executes the queries
-            //defined above.
-            statement = connection.createStatement();
-            statement.executeQuery(CREATE_USERS);
-            statement.executeQuery(CREATE_BILLBOARDS);
-            statement.executeQuery(CREATE_SCHEDULE);
-            statement.close();
-            //connection.close();
-            //statement.executeQuery(loadDatabase);
-            System.out.println("Successfully created tables in database billboardserver");
-            statement.close();
+            //Apply any schema migrations this database has not had yet
+            int applied = SchemaMigrations.migrate(connection);
+            System.out.println("Database billboardserver is at schema version " +
+                    SchemaMigrations.latestVersion() + " (" + applied + " migrations applied)");
         } catch (SQLException e) {
-            System.out.println("Error with SQL statement - please check syntax");
+            System.out.println("Error migrating the database schema - please check syntax");
             System.out.println(e.toString());
         }
     }
@@ -96,15 +105,11 @@ public class DatabaseInterface {
      */
     private String passwordEncryption(String username, String password, Connection connection) {
         String salt;
-        try {
-            Statement statement = connection.createStatement();
-            //Execute a query to find the salt for this user.
-            ResultSet query_result = statement.executeQuery("SELECT * from USERS WHERE userName = '" +
-                    username + "'");
+        //Execute a query to find the salt for this user.
+        try (PreparedStatement select = prepare(connection, SELECT_USER, username);
+             ResultSet query_result = select.executeQuery()) {
             query_result.next();
             salt = query_result.getString("salt");
-            query_result.close();
-            statement.close();
         }
         catch (SQLException ex) {
             ex.printStackTrace();
@@ -117,6 +122,26 @@ public class DatabaseInterface {
         return Integer.toString(password.hashCode());
     }
 
+    /*
+      Prepares one of the SQL statements declared above and sets its parameters,
+      in order, as strings. The statement comes from the connection's statement
+      cache, so it must be closed once its results have been read, which is done
+      by preparing it in a try-with-resources statement.
+     */
+    private static PreparedStatement prepare(Connection connection, String sql, String... parameters)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setString(i + 1, parameters[i]);
+            }
+        } catch (SQLException ex) {
+            statement.close();
+            throw ex;
+        }
+        return statement;
+    }
+
     /*
       Generates a random salt. Integer generated between 1000 and 9999, parsed to a
       String.
@@ -137,15 +162,12 @@ public class DatabaseInterface {
      */
     public String[] loginRequest(String username, String password, Connection connection) {
         String[] response = new String[6];
-        try {
-            //Connection connection = dbConnect.getInstance();
-            Statement statement = connection.createStatement();
-            //Add the salt for this user and hash the password again
-            password = passwordEncryption(username, password, connection);
-
-            //Execute an SQL query find this user
-            ResultSet user = statement.executeQuery("SELECT * FROM USERS WHERE username = '" + username + "'");
+        //Add the salt for this user and hash the password again
+        password = passwordEncryption(username, password, connection);
 
+        //Execute an SQL query find this user
+        try (PreparedStatement select = prepare(connection, SELECT_USER, username);
+             ResultSet user = select.executeQuery()) {
             //Iterate through the database until the user is found with the encrypted password
             if (user.next()) {
                 String db_password = user.getString("password");
@@ -176,9 +198,6 @@ public class DatabaseInterface {
                     response[0] = "Password is incorrect";
                 }
             }
-            user.close();
-            statement.close();
-
         } catch (SQLException ex) {
             System.out.println("SQL ERROR DBI");
             ex.printStackTrace();
@@ -223,9 +242,8 @@ public class DatabaseInterface {
             return billboardHashMap;
         }
 
-        try {
-            Statement statement = connection.createStatement();
-            ResultSet result = statement.executeQuery("SELECT * FROM billboards ");
+        try (PreparedStatement select = connection.prepareStatement(SELECT_BILLBOARDS);
+             ResultSet result = select.executeQuery()) {
             //Cycle through each row and add it to the billboardsList HashMap
             while(result.next()) {
                 billboardHashMap.put(result.getString("billboardID"),
@@ -233,7 +251,6 @@ public class DatabaseInterface {
                                 result.getString("billboardXML"),
                                 result.getString("billboardName")});
             }
-
         } catch (SQLException e) {
             e.printStackTrace();
             System.out.println("Issue with get permission.");
@@ -242,6 +259,63 @@ public class DatabaseInterface {
         return billboardHashMap;
     }
 
+    /**
+     * List one page of billboards, in billboardID order, starting after the given
+     * billboardID (keyset pagination). Only the rows of the page are read, and
+     * the driver fetches them as the ResultSet is read rather than all at once.
+     * @param session_token session token passed over the network
+     * @param afterID billboardID of the last billboard already received, 0 for the first page
+     * @param pageSize largest number of billboards to return
+     * @param connection Connection session created by BillboardServer
+     * @return ordered map of KEY: id, Value: [username, xml, name]; fewer than
+     *         pageSize entries means this is the last page
+     */
+    public Map<String, String[]> showBillboardsPage(String session_token, int afterID, int pageSize,
+                                                    Connection connection) {
+        //Declare an ordered map so the page keeps billboardID order
+        Map<String, String[]> billboardPage = new LinkedHashMap<>();
+
+        //Validate the session token
+        if (!session_validation(session_token)) {
+            billboardPage.put(BAD_TOKEN_RESPONSE, new String[] {BAD_TOKEN_RESPONSE});
+            return billboardPage;
+        }
+
+        try (PreparedStatement select = connection.prepareStatement(SHOW_BILLBOARDS_PAGE)) {
+            select.setInt(1, afterID);
+            select.setInt(2, pageSize);
+            select.setFetchSize(pageSize);
+            try (ResultSet result = select.executeQuery()) {
+                //Add each row of the page to the map as it is read
+                while (result.next()) {
+                    billboardPage.put(result.getString("billboardID"),
+                            new String[] {result.getString("userName"),
+                                    result.getString("billboardXML"),
+                                    result.getString("billboardName")});
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            System.out.println("Issue with showing billboards.");
+        }
+        //return the page of billboards
+        return billboardPage;
+    }
+
+    /**
+     * showBillboardsPage function used for testing purposes - no JDBC dependencies
+     * are required to run.
+     * @param session_token the test session token "TestSessionToken"
+     * @param afterID billboardID of the last billboard already received
+     * @param pageSize largest number of billboards to return
+     * @return ordered map of mock billboard objects
+     */
+    public Map<String, String[]> showBillboardsPage(String session_token, int afterID, int pageSize) {
+        //Call the Mock database to simulate showing a page of billboards
+        MockDatabase mock = new MockDatabase();
+        return mock.showBillboardsPage(session_token, afterID, pageSize);
+    }
+
     /**
      * showBillboards function used for testing purposes - no JDBC dependencies
      * are required to run. Sends test session token to the MockDatabaseInterface
@@ -275,15 +349,11 @@ public class DatabaseInterface {
         }
 
         //Retrieve billboard xml content and created by from the database
-        try {
-            Statement statement = connection.createStatement();
-            ResultSet result = statement.executeQuery("SELECT * FROM billboards WHERE billboardID = '" +
-                                                      billboard_ID + "'");
+        try (PreparedStatement select = prepare(connection, SELECT_BILLBOARD, billboard_ID);
+             ResultSet result = select.executeQuery()) {
             result.next();
             billboard_info[0] = result.getString("billboardXML");
             billboard_info[1] = result.getString("userName");
-            result.close();
-            statement.close();
         } catch (SQLException e) {
             e.printStackTrace();
             // The exception does not laod the response array - instead
@@ -332,15 +402,14 @@ public class DatabaseInterface {
         if (!session_validation(session_token)) {
             response = BAD_TOKEN_RESPONSE;
         } else {
-            try {
-                Statement statement = connection.createStatement();
-                //Checking for permission to edit all billboards or that the editor is the owner of the billboard
-                ResultSet bb = statement.executeQuery("SELECT * FROM billboards WHERE billboardID = '" +
-                                                        billboard_ID + "'");
-                ResultSet user = statement.executeQuery("Select * FROM users WHERE userName = '"+userName+"'");
-                //Gets all the rows in schedule table that has the billboardID
-                ResultSet scheduled = statement.executeQuery("SELECT * FROM schedule WHERE billboardID = '"+
-                                                        billboard_ID+"'");
+            //Checking for permission to edit all billboards or that the editor is the owner of the billboard,
+            //and getting all the rows in schedule table that has the billboardID
+            try (PreparedStatement selectBillboard = prepare(connection, SELECT_BILLBOARD, billboard_ID);
+                 PreparedStatement selectUser = prepare(connection, SELECT_USER, userName);
+                 PreparedStatement selectScheduled = prepare(connection, SELECT_SCHEDULED_BB, billboard_ID);
+                 ResultSet bb = selectBillboard.executeQuery();
+                 ResultSet user = selectUser.executeQuery();
+                 ResultSet scheduled = selectScheduled.executeQuery()) {
                 bb.next();
                 user.next();
                 boolean createBB = user.getBoolean("createBillboardP");
@@ -354,13 +423,13 @@ public class DatabaseInterface {
                         response = NO_PERMISSION_RESPONSE;
                     } else {
                         //Proceed with creating a new billboard with the given attributes
-                        PreparedStatement insert = connection.prepareStatement(INSERT_BB);
-                        insert.setString(1, userName);
-                        insert.setString(2, billboardName);
-                        insert.setString(3, billboardXML);
-                        insert.executeUpdate();
+                        try (PreparedStatement insert = connection.prepareStatement(INSERT_BB)) {
+                            insert.setString(1, userName);
+                            insert.setString(2, billboardName);
+                            insert.setString(3, billboardXML);
+                            insert.executeUpdate();
+                        }
                         response = "Billboard Successfully Created";
-                        insert.close();
                     }
                 } else {
                     //Proceed with updating an existing billboard.
@@ -377,30 +446,30 @@ public class DatabaseInterface {
                         response = DENIED_RESPONSE;
                     }else if (editBB){
                         //Proceed with the edit request
-                        PreparedStatement update = connection.prepareStatement(UPDATE_BB);
-                        update.setString(1, userName);
-                        update.setString(2, billboardXML);
-                        // The condition is handled in the SQL
-                        update.setString(3, billboardName);
-                        update.setString(4, billboard_ID);
-                        update.executeUpdate();
+                        try (PreparedStatement update = connection.prepareStatement(UPDATE_BB)) {
+                            update.setString(1, userName);
+                            update.setString(2, billboardXML);
+                            // The condition is handled in the SQL
+                            update.setString(3, billboardName);
+                            update.setString(4, billboard_ID);
+                            update.executeUpdate();
+                        }
                         response = "Successfully Updated Billboard";
-                        update.close();
                     } else if (userName.equals(creator_name)){
                         //Proceed with the request if the user is creating their own
                         //billboard.
 
                         if (!scheduled.next()) {
                             //Proceed to edit a billboard if it is not currently scheduled
-                            PreparedStatement update = connection.prepareStatement(UPDATE_BB);
-                            update.setString(1, userName);
-                            update.setString(2, billboardXML);
-                            // The condition is handled in the SQL
-                            update.setString(3, billboardName);
-                            update.setString(4, billboard_ID);
-                            update.executeUpdate();
+                            try (PreparedStatement update = connection.prepareStatement(UPDATE_BB)) {
+                                update.setString(1, userName);
+                                update.setString(2, billboardXML);
+                                // The condition is handled in the SQL
+                                update.setString(3, billboardName);
+                                update.setString(4, billboard_ID);
+                                update.executeUpdate();
+                            }
                             response = "Successfully Updated Billboard";
-                            update.close();
                         } else {
                             response = "Cannot edit billboard that is currently scheduled";
                         }
@@ -408,8 +477,6 @@ public class DatabaseInterface {
                         response = NO_PERMISSION_RESPONSE;
                     }
                 }
-                user.close();
-                statement.close();
             } catch (SQLException e) {
                 response = "SQL ERROR: CREATE/EDIT BB";
                 e.printStackTrace();
@@ -460,38 +527,29 @@ public class DatabaseInterface {
             return BAD_TOKEN_RESPONSE;
         }
 
-        try {
-            //Load the predefined SQL statements
-            Statement statement = connection.createStatement();
-            PreparedStatement delete_billboard = connection.prepareStatement(DELETE_BILLBOARD);
-            PreparedStatement removeSchedule = connection.prepareStatement(REMOVE_SINGLE_BB_FROM_SCHEDULE);
-
-            //Retrieve the billboard that must be deleted, the current user requesting the deletion and
-            //any scheduled viewings of the billboard
-            ResultSet billboard = statement.executeQuery("SELECT * FROM billboards WHERE billboardID= '" +
-                                                    billboardID + "'");
-
-            ResultSet user = statement.executeQuery("Select * FROM users WHERE userName = '" +
-                                                    userName + "'");
-
-            ResultSet scheduled = statement.executeQuery("SELECT * FROM schedule WHERE billboardID = '" +
-                                                    billboardID + "'");
+        //Load the predefined SQL statements, and retrieve the billboard that must be deleted, the
+        //current user requesting the deletion and any scheduled viewings of the billboard
+        try (PreparedStatement delete_billboard = connection.prepareStatement(DELETE_BILLBOARD);
+             PreparedStatement removeSchedule = connection.prepareStatement(REMOVE_SINGLE_BB_FROM_SCHEDULE);
+             PreparedStatement selectBillboard = prepare(connection, SELECT_BILLBOARD, billboardID);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, userName);
+             PreparedStatement selectScheduled = prepare(connection, SELECT_SCHEDULED_BB, billboardID);
+             ResultSet billboard = selectBillboard.executeQuery();
+             ResultSet user = selectUser.executeQuery();
+             ResultSet scheduled = selectScheduled.executeQuery()) {
 
             //Take index to first row
-            billboard.next();
+            boolean exists = billboard.next();
             user.next();
 
             // retrieve the billboard information, and the permissions of the user currently
             // requesting the deletion
-            String createBy = billboard.getString("userName");
+            String createBy = exists ? billboard.getString("userName") : null;
             boolean createBb = user.getBoolean("createBillboardP");
             boolean editB = user.getBoolean("editAllBillboardP");
 
-            //take index back to before first row
-            billboard.beforeFirst();
-
             //Check if the billboard exists
-            if (!billboard.next()){
+            if (!exists){
                 response = "No billboard under that ID";
             } else {
                 if ((!editB) && (!createBb)) {
@@ -508,6 +566,7 @@ public class DatabaseInterface {
                     //Removing all schedules which use the billboard ID
                     removeSchedule.setString(1, billboardID);
                     removeSchedule.executeUpdate();
+                    scheduleChanged(connection);
 
                     response = "Successfully Deleted & Removed Billboard from Schedule";
                 } else if (userName.equals(createBy)){
@@ -526,13 +585,6 @@ public class DatabaseInterface {
                     response = NO_PERMISSION_RESPONSE;
                 }
             }
-            // close prepared statements and connections
-            delete_billboard.close();
-            removeSchedule.close();
-            billboard.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
             response = "ERROR! SQLException when deleting billboard";
@@ -565,7 +617,7 @@ public class DatabaseInterface {
      * @return String array of current billboards scheduled for display
      */
     public String[] viewSchedule(String session_token, String username, Connection connection) {
-        //Instantiate an ArrayList to efficiently store the current billboard IDs
+        //Instantiate an ArrayList to efficiently store the schedule, seven columns per entry
         ArrayList<String> schedule_list = new ArrayList<>();
 
         //Instantiate a new string array to hold the billboard schedule
@@ -578,69 +630,28 @@ public class DatabaseInterface {
         }
 
         try {
-            Statement statement = connection.createStatement();
-
-            //Retrieve the currently scheduled billboards and the user requesting the schedule.
-            ResultSet schedule = statement.executeQuery("SELECT * FROM schedule");
-
-            ResultSet user = statement.executeQuery("SELECT * FROM USERS WHERE userName = '" + username + "'");
-            user.next();
+            //Retrieve the user requesting the schedule
+            boolean canSchedule;
+            try (PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+                 ResultSet user = selectUser.executeQuery()) {
+                user.next();
+                canSchedule = user.getBoolean("scheduleBillboardP");
+            }
 
             //Check if user has valid permission to view the scheduled billboards
-            if (!user.getBoolean("scheduleBillboardP")) {
+            if (!canSchedule) {
                 System.out.println("Do not have permission to view schedule");
                 schedule_list.add("You do not have the required permissions for this request.");
             }
 
-            //Retrieve all scheduled billboards from the Schedule table
+            //Add each scheduled billboard's ID (critical for removing an entry from the schedule later),
+            //name, scheduler, time, day, duration and recurrence to the list
             else {
-                while (schedule.next()) {
-                    String id = schedule.getString("billboardID");
-                    //add billboard id to list (critical for removing an entry from the schedule later)
-                    schedule_list.add(id);
-
-                    //add billboard name and creator to list
-                    ResultSet billboard= statement.executeQuery("SELECT  * FROM billboards WHERE billboardID = '" +
-                                                                id + "'");
-                    billboard.next();
-                    schedule_list.add(billboard.getString("billboardName"));
-                    schedule_list.add(schedule.getString("scheduler"));
-
-                    //add time scheduled to list (formatted as an HH:MM string)
-                    //format as hh:mm with leading 0
-                    int hour = schedule.getInt("db_hour");
-                    int min = schedule.getInt("db_minute");
-                    String hhmm = String.format("%02d", hour) + ":" + String.format("%02d", min);
-                    schedule_list.add(hhmm);
-
-                    //add day scheduled to list
-                    schedule_list.add(schedule.getString("db_day"));
-
-                    //add duration to list
-                    schedule_list.add(schedule.getString("duration") + " min");
-
-                    //add recurring how often to list (one of daily, hourly, x mins, N/A)
-                    boolean daily = schedule.getBoolean("reoccurDaily");
-                    boolean hourly = schedule.getBoolean("reoccurHourly");
-                    String mins = schedule.getString("reoccurMin");
-                    //Following conditional adds the recurrence attributes to the ArrayList if
-                    //they exist
-                    if (daily){
-                        schedule_list.add("Daily");
-                    } else if (hourly){
-                        schedule_list.add("Hourly");
-                    } else if (!mins.equals("")){
-                        schedule_list.add("Every " + mins + " mins");
-                    } else {
-                        schedule_list.add("N/A");
-                    }
+                for (ScheduleEntry entry : listSchedule(connection)) {
+                    Collections.addAll(schedule_list, entry.toRow());
                 }
             }
 
-            schedule.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -650,6 +661,38 @@ public class DatabaseInterface {
         return schedule_list.toArray(billboard_schedule);
     }
 
+    /**
+     * List every entry in the schedule along with the name of its billboard.
+     * The billboard names are joined in by the database, so the whole schedule
+     * is read in one query however many entries it has.
+     * @param connection Connection session created by the BillboardServer
+     * @return the schedule entries, in order of the day and time they start
+     * @throws SQLException if the schedule cannot be read
+     */
+    public List<ScheduleEntry> listSchedule(Connection connection) throws SQLException {
+        List<ScheduleEntry> entries = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement(SELECT_SCHEDULE_ENTRIES)) {
+            select.setFetchSize(SCHEDULE_FETCH_SIZE);
+            try (ResultSet result = select.executeQuery()) {
+                //Build a typed entry from each row as it is read
+                while (result.next()) {
+                    entries.add(new ScheduleEntry(result.getInt("scheduleID"),
+                            result.getInt("billboardID"),
+                            result.getString("billboardName"),
+                            result.getString("scheduler"),
+                            result.getInt("db_hour"),
+                            result.getInt("db_minute"),
+                            result.getInt("db_day"),
+                            result.getInt("duration"),
+                            result.getBoolean("reoccurDaily"),
+                            result.getBoolean("reoccurHourly"),
+                            result.getInt("reoccurMin")));
+                }
+            }
+        }
+        return entries;
+    }
+
     /**
      * Overloaded viewSchedule for testing purposes - no external JDBC dependencies
      * are required.
@@ -693,15 +736,15 @@ public class DatabaseInterface {
             return response;
         }
 
-        try {
-            //Prepare the SQL insert statement to schedule a billboard and
-            //retrieve the current user attributes to validate permissions
-            Statement statement = connection.createStatement();
-            PreparedStatement insert = connection.prepareStatement(SCHEDULE_BILLBOARD);
-            ResultSet user = statement.executeQuery("Select * FROM users WHERE userName = '" + userName + "'");
+        //Prepare the SQL insert statement to schedule a billboard and
+        //retrieve the current user attributes to validate permissions
+        try (PreparedStatement insert = connection.prepareStatement(SCHEDULE_BILLBOARD);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, userName);
+             ResultSet user = selectUser.executeQuery()) {
             user.next();
+            boolean canSchedule = user.getBoolean("scheduleBillboardP");
 
-            if (!user.getBoolean("scheduleBillboardP")) {
+            if (!canSchedule) {
                 //Deny request if user does not have valid permissions
                 response = " You do not have the required permissions for this action";
                 return response;
@@ -714,18 +757,13 @@ public class DatabaseInterface {
                 insert.setInt(4, db_day);
                 insert.setBoolean(5, recDaily);
                 insert.setBoolean(6, recHourly);
-                insert.setString(7, recMin);
+                insert.setInt(7, ScheduleEntry.parseEveryMinutes(recMin));
                 insert.setInt(8, Integer.parseInt(duration));
                 insert.setString(9, userName);
                 insert.executeUpdate();
-                insert.close();
+                scheduleChanged(connection);
             }
-            user.close();
-            statement.close();
             response = "Schedule successfully created.";
-        } catch (SQLIntegrityConstraintViolationException e){
-            response = "Failed to scheduled billboard: This billboard is already scheduled."
-                    + "\n If you'd like to make changes please remove this billboard from the schedule and try again.";
         } catch (SQLException e) {
             e.printStackTrace();
             response = "Create schedule failed due to SQL Error, please contact system administration.";
@@ -778,10 +816,8 @@ public class DatabaseInterface {
         //remove any leading zeros by converting to an integer and
         //back to a string.
         String[] given_time = selected_time.split(":");
-        String hour = given_time[0];
-        String minute = given_time[1];
-        hour = String.valueOf(Integer.parseInt(hour));
-        minute = String.valueOf(Integer.parseInt(minute));
+        int hour = Integer.parseInt(given_time[0]);
+        int minute = Integer.parseInt(given_time[1]);
 
         //Validate the session token
         if (!session_validation(session_token)){
@@ -789,12 +825,11 @@ public class DatabaseInterface {
             return response;
         }
 
-        try {
-            //Prepare the SQL statement to remove a scheduled billboard and retrieve
-            //the current user attributes
-            Statement statement = connection.createStatement();
-            PreparedStatement removeSchedule = connection.prepareStatement(REMOVE_BILLBOARD_SCHEDULE);
-            ResultSet user = statement.executeQuery("Select * FROM users WHERE userName = '" + userName + "'");
+        //Prepare the SQL statement to remove a scheduled billboard and retrieve
+        //the current user attributes
+        try (PreparedStatement removeSchedule = connection.prepareStatement(REMOVE_BILLBOARD_SCHEDULE);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, userName);
+             ResultSet user = selectUser.executeQuery()) {
             user.next();
 
             //Check if user has the required permissions
@@ -806,17 +841,16 @@ public class DatabaseInterface {
             else {
                 //Delete billboard from schedule
                 removeSchedule.setString(1, billboardID);
-                removeSchedule.setString(2, hour);
-                removeSchedule.setString(3, minute);
-                removeSchedule.setString(4, day);
+                removeSchedule.setInt(2, hour);
+                removeSchedule.setInt(3, minute);
+                removeSchedule.setInt(4, dayNumber(day));
                 removeSchedule.executeUpdate();
                 //reset the scheduled billboard to the default billboard
                 //once deleted.
                 scheduled_BB_ID = DEFAULT_BB;
+                scheduleChanged(connection);
                 response = "Successfully Removed Billboard from Schedule";
             }
-            user.close();
-            statement.close();
         } catch (SQLException e) {
             e.printStackTrace();
             response = "Error in removing billboard";
@@ -865,12 +899,12 @@ public class DatabaseInterface {
             return users_list;
         }
 
-        try {
-            //Retrieve the row for the give user and
-            //retrieve all users in the database
-            Statement statement = connection.createStatement();
-            ResultSet allUsers = statement.executeQuery("SELECT * FROM users");
-            ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '"+ username + "'");
+        //Retrieve the row for the give user and
+        //retrieve all users in the database
+        try (PreparedStatement selectUsers = connection.prepareStatement(SELECT_USERS);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+             ResultSet allUsers = selectUsers.executeQuery();
+             ResultSet user = selectUser.executeQuery()) {
 
             user.next();
             boolean canEdit = user.getBoolean("editUsersP");
@@ -889,11 +923,6 @@ public class DatabaseInterface {
                 }
 
             }
-
-            allUsers.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -948,14 +977,10 @@ public class DatabaseInterface {
             response = BAD_TOKEN_RESPONSE;
             return response;
         } else {
-            try {
-                //Create SQL connections
-                PreparedStatement insert = connection.prepareStatement(INSERT_USER);
-
-                //Retrieve the current user's attributes to validate permissions
-                Statement statement = connection.createStatement();
-                ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '"
-                                                        + current_user + "'");
+            //Create SQL connections, and retrieve the current user's attributes to validate permissions
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_USER);
+                 PreparedStatement selectUser = prepare(connection, SELECT_USER, current_user);
+                 ResultSet user = selectUser.executeQuery()) {
                 user.next();
                 boolean canEdit = user.getBoolean("editUsersP");
 
@@ -975,11 +1000,8 @@ public class DatabaseInterface {
                     insert.setBoolean(8, edit_user);
                     insert.setBoolean(9, is_admin);
                     insert.executeUpdate();
-                    insert.close();
                     response = "User successfully created";
                 }
-                user.close();
-                statement.close();
             } catch (SQLIntegrityConstraintViolationException e) {
                 //Catch and send a response if the username is already in use
                 response = DUPLICATE_USER_RESPONSE;
@@ -1040,14 +1062,12 @@ public class DatabaseInterface {
             return user_permissions;
         }
 
-        try {
-            Statement statement = connection.createStatement();
+        //Retrieve the row for the given user and retrieve the attributes for the current user
+        try (PreparedStatement selectCurrentUser = prepare(connection, SELECT_USER, current_username);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+             ResultSet currentUser = selectCurrentUser.executeQuery();
+             ResultSet user = selectUser.executeQuery()) {
             System.out.println("Connected to Database");
-
-            //Retrieve the row for the given user and retrieve the attributes for the current user
-            ResultSet currentUser = statement.executeQuery("Select * From USERS WHERE userName = '" +
-                                                            current_username + "'");
-            ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '" + username +"'");
             currentUser.next();
             user.next();
 
@@ -1069,9 +1089,6 @@ public class DatabaseInterface {
                 //set the first index to the error message, which the client will check
                 user_permissions[0] = "User does not have access to view permissions";
             }
-            currentUser.close();
-            user.close();
-            statement.close();
         } catch (SQLException e) {
             e.printStackTrace();
             //set the first index to the error message, which the client will check
@@ -1122,16 +1139,14 @@ public class DatabaseInterface {
             return  response;
         }
 
-        try {
-            //Prepare the SQL query to update the permissions
-            PreparedStatement updatePermissions = connection.prepareStatement(UPDATE_PERMISSIONS);
-            Statement statement = connection.createStatement();
+        //Prepare the SQL query to update the permissions, and retrieve the row for the given user
+        //and the current user
+        try (PreparedStatement updatePermissions = connection.prepareStatement(UPDATE_PERMISSIONS);
+             PreparedStatement selectCurrentUser = prepare(connection, SELECT_USER, current_username);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+             ResultSet currentUser = selectCurrentUser.executeQuery();
+             ResultSet user = selectUser.executeQuery()) {
             System.out.println("Connected to Database");
-
-            //Retrieve the row for the given user and the current user
-            ResultSet currentUser = statement.executeQuery("Select * From USERS WHERE userName = '" +
-                                                            current_username + "'");
-            ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '" + username +"'");
             currentUser.next();
             user.next();
 
@@ -1149,11 +1164,6 @@ public class DatabaseInterface {
                 updatePermissions.executeUpdate();
                 response = "Successfully updated permissions";
             }
-
-            currentUser.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
             response  =("SQL error updating permissions");
@@ -1206,17 +1216,15 @@ public class DatabaseInterface {
             return  response;
         }
 
-        try {
-            PreparedStatement updatePassword = connection.prepareStatement(UPDATE_PASSWORD);
-            Statement statement = connection.createStatement();
+        //Salt and hash the new password
+        String hashedPassword = passwordEncryption(username, new_password, connection);
 
-            //Salt and hash the new password
-            String hashedPassword = passwordEncryption(username, new_password, connection);
-
-            //Retrieve the row for the given user and the current_user
-            ResultSet currentUser = statement.executeQuery("Select * From USERS WHERE userName = '" +
-                                                            current_username + "'");
-            ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '" + username +"'");
+        //Retrieve the row for the given user and the current_user
+        try (PreparedStatement updatePassword = connection.prepareStatement(UPDATE_PASSWORD);
+             PreparedStatement selectCurrentUser = prepare(connection, SELECT_USER, current_username);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+             ResultSet currentUser = selectCurrentUser.executeQuery();
+             ResultSet user = selectUser.executeQuery()) {
             currentUser.next();
             user.next();
 
@@ -1232,11 +1240,6 @@ public class DatabaseInterface {
                 //Decline the request if permissions are not valid
                 response = ("Could not update password due to permissions");
             }
-
-            currentUser.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
             response = "Error Updating Password";
@@ -1284,15 +1287,13 @@ public class DatabaseInterface {
             return  response;
         }
 
-        try {
-
-            PreparedStatement deleteUser = connection.prepareStatement(DELETE_USER);
-            Statement statement = connection.createStatement();
+        //Retrieve the row for the given user
+        try (PreparedStatement deleteUser = connection.prepareStatement(DELETE_USER);
+             PreparedStatement selectCurrentUser = prepare(connection, SELECT_USER, current_username);
+             PreparedStatement selectUser = prepare(connection, SELECT_USER, username);
+             ResultSet currentUser = selectCurrentUser.executeQuery();
+             ResultSet user = selectUser.executeQuery()) {
             System.out.println("Connected to Database");
-
-            //Retrieve the row for the given user
-            ResultSet currentUser = statement.executeQuery("Select * From USERS WHERE userName = '" + current_username + "'");
-            ResultSet user = statement.executeQuery("SELECT * FROM users WHERE userName = '" + username +"'");
             currentUser.next();
             user.next();
 
@@ -1306,11 +1307,6 @@ public class DatabaseInterface {
                 deleteUser.executeUpdate();
                 response = " successfully deleted";
             }
-
-            currentUser.close();
-            user.close();
-            statement.close();
-
         } catch (SQLException e) {
             e.printStackTrace();
             response = ERROR_DELETING_USER;
@@ -1378,19 +1374,19 @@ public class DatabaseInterface {
 
         try {
             //Retrieve the billboard to be updated from the database
-            Statement statement = connection.createStatement();
-            ResultSet scheduled_billboard = statement.executeQuery("SELECT * from schedule WHERE billboardID =" +
-                    billboardID);
-            scheduled_billboard.next();
-
-            db_day = scheduled_billboard.getInt("db_day");
-            db_hour = scheduled_billboard.getInt("db_hour");
-            db_minute = scheduled_billboard.getInt("db_minute");
-            reoccur_hourly = scheduled_billboard.getBoolean("reoccurDaily");
-            reoccur_daily = scheduled_billboard.getBoolean("reoccurHourly");
-            reoccur_min = scheduled_billboard.getInt("reoccurMin");
-            duration = scheduled_billboard.getInt("duration");
-            scheduler = scheduled_billboard.getString("scheduler");
+            try (PreparedStatement select = prepare(connection, SELECT_SCHEDULED_BB, billboardID);
+                 ResultSet scheduled_billboard = select.executeQuery()) {
+                scheduled_billboard.next();
+
+                db_day = scheduled_billboard.getInt("db_day");
+                db_hour = scheduled_billboard.getInt("db_hour");
+                db_minute = scheduled_billboard.getInt("db_minute");
+                reoccur_hourly = scheduled_billboard.getBoolean("reoccurDaily");
+                reoccur_daily = scheduled_billboard.getBoolean("reoccurHourly");
+                reoccur_min = scheduled_billboard.getInt("reoccurMin");
+                duration = scheduled_billboard.getInt("duration");
+                scheduler = scheduled_billboard.getString("scheduler");
+            }
 
             //Check if the billboard reoccurs every hour. if it does, increment the
             //hour by 1 (1 (1pm) -> 2 (2pm)). If the hour overflows, then reset to 0
@@ -1430,188 +1426,198 @@ public class DatabaseInterface {
             }
 
             //insert the updated schedule into the schedule table
-            PreparedStatement insert = connection.prepareStatement(SCHEDULE_BILLBOARD);
-            insert.setString(1, billboardID);
-            insert.setInt(2, db_hour);
-            insert.setInt(3, db_minute);
-            insert.setInt(4, db_day);
-            insert.setBoolean(5, reoccur_hourly);
-            insert.setBoolean(6, reoccur_daily);
-            insert.setString(7, String.valueOf(reoccur_min));
-            insert.setInt(8, Integer.parseInt(String.valueOf(duration)));
-            insert.setString(9, scheduler);
-            insert.executeUpdate();
-            insert.close();
-            statement.close();
-
+            try (PreparedStatement insert = connection.prepareStatement(SCHEDULE_BILLBOARD)) {
+                insert.setString(1, billboardID);
+                insert.setInt(2, db_hour);
+                insert.setInt(3, db_minute);
+                insert.setInt(4, db_day);
+                insert.setBoolean(5, reoccur_hourly);
+                insert.setBoolean(6, reoccur_daily);
+                insert.setInt(7, reoccur_min);
+                insert.setInt(8, duration);
+                insert.setString(9, scheduler);
+                insert.executeUpdate();
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     /*
-        Calculates a billboards end time using the billboardID
-        Returns an array of the hour and min that the BB is scheduled to end (endTime[hour,min])
-        Params: - billboardID the ID of the billboard that is currently scheduled
-                - Connection session created by the BillboardServer
+        Converts a day as shown in the schedule table (e.g. "Sunday") or as stored
+        in the schedule table (1 for Sunday to 7 for Saturday) to the stored number.
      */
-
-    private int[] setDurationEnd(String billboardID, Connection connection) {
-        //Declare variables that correspond to the schedule table
-        int db_hour;
-        int db_minute;
-        int end_hour;
-        int end_minute;
-        int db_duration;
-
-        //declare an integer array that stores the end time
-        int[] endTime = new int[2];
-
-        try {
-            //Connects to the DB and retrieves the billboard's start time
-            Statement statement = connection.createStatement();
-            ResultSet billboard = statement.executeQuery("SELECT * from schedule WHERE billboardID =" +
-                    billboardID);
-            billboard.next();
-            db_hour = billboard.getInt("db_hour");
-            db_minute = billboard.getInt("db_minute");
-            db_duration = billboard.getInt("duration");
-
-            //Calculates the end hour and end minute
-            end_minute = db_minute + db_duration;
-            int add_hours = 0;
-            while (end_minute > MAX_MINUTES){
-                //if the end minute overlows past the maximum
-                //then increment the hour and adjust the minutes
-                end_minute = end_minute - MAX_MINUTES;
-                add_hours++;
+    private static int dayNumber(String day) {
+        for (int i = 0; i < DAY_NAMES.length; i++) {
+            if (DAY_NAMES[i].equalsIgnoreCase(day.trim())) {
+                return i + 1;
             }
-
-            //set the end time
-            end_hour = db_hour + add_hours;
-            endTime[0] = end_hour;
-            endTime[1] = end_minute;
-            billboard.close();
-            statement.close();
-
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        //return the end time
-        return endTime;
+        return Integer.parseInt(day.trim());
     }
 
     /**
-     * Returns the currently scheduled billboard.
+     * Returns the currently scheduled billboard. The billboard showing now is
+     * found in the in-memory schedule lookup, so only the billboard itself is
+     * read from the database.
      * @param connection Connection session created by the BillboardServer
      * @return a String array with the current billboard to be shown
      */
     public String[] currentlyScheduled(Connection connection) {
+        return scheduledAt(System.currentTimeMillis(), connection);
+    }
+
+    /**
+     * Returns the billboard scheduled at a time, found in the in-memory
+     * schedule lookup. Used to read the billboard that follows the one
+     * showing now.
+     * @param time the time, in milliseconds since the epoch
+     * @param connection Connection session created by the BillboardServer
+     * @return a String array with the billboard scheduled at that time
+     */
+    public String[] scheduledAt(long time, Connection connection) {
         String ID = DEFAULT_BB;
         String[] billboardInfo = {"0"};
-        int[] endTime = new int[2];
-        Calendar cal = Calendar.getInstance();
-        int currHour = cal.get(Calendar.HOUR_OF_DAY);
-        int currMin = cal.get(Calendar.MINUTE);
-        int currDay = cal.get(Calendar.DAY_OF_WEEK);
 
         try {
-            //Connect to database
-            Statement statement = connection.createStatement();
-            ResultSet schedule = statement.executeQuery("SELECT * FROM schedule ");
-            while (schedule.next()) {
-                String  thisBbID    = schedule.getString("billboardID"),
-                        thisBbHour  = schedule.getString("db_hour"),
-                        thisBbMinute= schedule.getString("db_minute"),
-                        thisBbDay   = schedule.getString("db_day");
-                boolean thisBbRecursHourly = schedule.getBoolean("reoccurHourly"),
-                        thisBbRecursDaily = schedule.getBoolean("reoccurDaily"),
-                        thisBbRecursXMinutes = !schedule.getString("reoccurMin").equals(""),
-                        nowShowing;
-                if ((!thisBbID.equals("")) && (Integer.parseInt(thisBbID) > 1)) {
-                    endTime = setDurationEnd(thisBbID, connection);
-                }
-                int startTimeInMinutes = (Integer.parseInt(thisBbHour) * 60) +
-                        Integer.parseInt(thisBbMinute);
-                //endTime[0] is the hour in 24hr time and endTime[1] is the minutes
-                int endTimeInMinutes = (endTime[0] * 60) + endTime[1];
-                int currentTimeInMinutes = (currHour * 60) + currMin;
-                /*
-                 sets nowShowing to true if the billboard recurs daily and the current time is with the range
-                 of the start display time of the billboard and the end display time, ignoring what day it was 
-                 scheduled for.
-                */
-                if(thisBbRecursDaily){
-                    nowShowing = currentTimeInMinutes >= startTimeInMinutes &&
-                            currentTimeInMinutes < endTimeInMinutes;
-                }
-                /*
-                 sets nowShowing to true if the billboard is set to recur hourly and the current minute of the hour is
-                 between the minute of the hour the billboard starts showing and the minute of the hour the billboard
-                 stops showing. ignores day and the hour.
-                 */
-                else if (thisBbRecursHourly) {
-                    nowShowing = currMin >= Integer.parseInt(thisBbMinute) && currMin < endTime[1];
-                }
-                /*
-                 sets nowShowing to true if the billboard is to recur in intervals of a preset number of minutes.
-                 works by modular arithmetic. The remainder the minutes of the hour the billboard was scheduled modulo
-                 the interval of minutes is taken away from the current time (in minutes, counting from 12:00am
-                 for just that day) modulo the interval of minutes. If this value is between 0 and the duration in
-                 minutes the billboard is to be shown for, nowShowing is set to true.
-                 */
-                else if (thisBbRecursXMinutes) {
-                    int startMinuteOffset = Integer.parseInt(thisBbMinute);
-                    int durationInMinutes = endTimeInMinutes - startTimeInMinutes;
-                    int repeatEveryThisManyMinutes = Integer.parseInt(schedule.getString("reoccurMin"));
-                    /*
-                    check if the remainder from the time in minutes (since the start of the day) modulo the number of
-                     minutes to repeat the billboard by minus the minute that the billboard was scheduled to start on
-                     modulo that same value is zero,
-                     if so its once again the right interval of minutes to start showing the billboard again
-                    */
-                    int currentTimeModuloRepeatInterval = (currentTimeInMinutes%repeatEveryThisManyMinutes);
-                    // the current time modulo the interval - offset will be 0 whenever its the next minute to repeat
-                    int remainderOffset = (startMinuteOffset%repeatEveryThisManyMinutes);
-                    int timeModIntervalMinusOffset = currentTimeModuloRepeatInterval - remainderOffset;
-                    nowShowing = timeModIntervalMinusOffset >= 0 && timeModIntervalMinusOffset < durationInMinutes;
-                } else {
-                    nowShowing = currentTimeInMinutes >= startTimeInMinutes &&
-                            currentTimeInMinutes < endTimeInMinutes && Integer.parseInt(thisBbDay) == currDay;
-                }
-                if (nowShowing)
-                {
-                    ID = thisBbID;
-                }
-            }
-            if ((ID.equals(DEFAULT_BB))) {
+            //Look up the billboard showing at the time, defaulting to the default billboard
+            int showing = scheduleLookup(connection).billboardAt(ScheduleLookup.minuteOfWeek(time, scheduleZone));
+            if (showing != ScheduleLookup.NOTHING_SCHEDULED) {
+                ID = String.valueOf(showing);
+            } else {
                 System.out.println("No Billboard Scheduled");
             }
-            statement.close();
             billboardInfo = getBillboard(ID, connection);
-            connection.close();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return billboardInfo;
     }
 
+    /**
+     * Returns the time at which a different billboard is next scheduled, from
+     * the in-memory schedule lookup.
+     * @param connection Connection session created by the BillboardServer, used
+     *                   only if the lookup needs updating
+     * @return the time of the next change in milliseconds since the epoch, or
+     *         Long.MAX_VALUE if the scheduled billboard never changes
+     */
+    public long nextScheduleChange(Connection connection) {
+        long now = System.currentTimeMillis();
+        try {
+            int minutes = scheduleLookup(connection).minutesUntilChange(
+                    ScheduleLookup.minuteOfWeek(now, scheduleZone));
+            if (minutes < ScheduleLookup.MINUTES_PER_WEEK) {
+                //changes happen at the start of a minute
+                return now - now % 60_000 + minutes * 60_000L;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /*
+        Returns the schedule lookup, updating it from the schedule table
+        if the schedule has changed or the index is older than SCHEDULE_INDEX_MAX_AGE.
+        Params: - Connection session created by the BillboardServer
+     */
+    private static ScheduleLookup scheduleLookup(Connection connection) throws SQLException {
+        ScheduleLookup index = scheduleLookup;
+        if (index == null || System.currentTimeMillis() - scheduleLookupBuilt > SCHEDULE_INDEX_MAX_AGE) {
+            index = reloadSchedule(connection);
+        }
+        return index;
+    }
+
+    /*
+        Rebuilds the index of the schedule from the schedule table, or in slots
+        mode updates the minutes of the slot table that have changed. Called after
+        every change to the schedule so the next lookup sees it.
+        Params: - Connection session created by the BillboardServer
+     */
+    private static ScheduleLookup reloadSchedule(Connection connection) throws SQLException {
+        long built = System.currentTimeMillis();
+        List<ScheduleEntry> entries = new DatabaseInterface().listSchedule(connection);
+        ScheduleLookup index;
+        if (schedulerMode.equals(SCHEDULER_SLOTS)) {
+            slotTable.update(entries);
+            index = slotTable;
+        } else {
+            index = new ScheduleIndex(entries);
+        }
+        scheduleLookup = index;
+        scheduleLookupBuilt = built;
+        System.out.println("Rebuilt schedule index: " + index);
+        return index;
+    }
+
+    /**
+     * Sets how the billboard showing now is found: SCHEDULER_INDEX searches an
+     * index of the schedule, SCHEDULER_SLOTS reads a table holding the billboard
+     * for every minute of the week. Unknown modes use the index.
+     * @param mode the scheduler mode
+     */
+    public static void setSchedulerMode(String mode) {
+        schedulerMode = SCHEDULER_SLOTS.equals(mode) ? SCHEDULER_SLOTS : SCHEDULER_INDEX;
+        scheduleLookup = null;
+    }
+
+    /*
+        Rebuilds the index of the schedule after a change to the schedule table,
+        or drops it to be rebuilt by the next lookup if the schedule cannot be read.
+        Params: - Connection session created by the BillboardServer
+     */
+    private static void scheduleChanged(Connection connection) {
+        try {
+            reloadSchedule(connection);
+        } catch (SQLException e) {
+            scheduleLookup = null;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns every billboard shown by a schedule, and the default billboard
+     * shown when nothing is scheduled, for viewers that work out the billboard
+     * showing now themselves.
+     * @param entries schedule entries
+     * @param connection Connection session created by the BillboardServer
+     * @return billboards by billboardID, each as name, creator and XML
+     */
+    public Map<String, String[]> getScheduledBillboards(List<ScheduleEntry> entries, Connection connection) {
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put(DEFAULT_BB, getBillboard(DEFAULT_BB, connection));
+        for (ScheduleEntry entry : entries) {
+            String ID = String.valueOf(entry.getBillboardID());
+            if (!billboards.containsKey(ID)) {
+                billboards.put(ID, getBillboard(ID, connection));
+            }
+        }
+        return billboards;
+    }
+
+    /**
+     * Returns the time zone the schedule is kept in, which viewers working out
+     * the billboard showing now must use too.
+     * @return the time zone
+     */
+    public static TimeZone getScheduleZone() {
+        return scheduleZone;
+    }
+
     /*
         Retrieves the current
      */
     private String[] getBillboard(String billboardID, Connection connection){
         String[] scheduled_billboard_info = new String[3];
-        try {
-            Statement statement = connection.createStatement();
-            //Retrieves the currently scheduled BB information
-            ResultSet result = statement.executeQuery("SELECT * FROM billboards WHERE billboardID = '" +
-                    billboardID + "'");
+        //Retrieves the currently scheduled BB information
+        try (PreparedStatement select = prepare(connection, SELECT_BILLBOARD, billboardID);
+             ResultSet result = select.executeQuery()) {
             result.next();
             scheduled_billboard_info[0] = result.getString("billboardName");
             scheduled_billboard_info[1] = result.getString("userName");
             scheduled_billboard_info[2] = result.getString("billboardXML");
-            result.close();
-            statement.close();
         } catch (SQLException e){
             e.printStackTrace();
         }
@@ -1635,7 +1641,6 @@ public class DatabaseInterface {
      * @param connection Connection session created by the BillboardServer
      */
     public void createDefaultBillboard(Connection connection){
-        PreparedStatement insert;
         //set the username that creates the new billboard and the xml content
         //for the default billboard
         String  userName = "admin",
@@ -1647,19 +1652,22 @@ public class DatabaseInterface {
                                 "</billboard>";
         try {
             //prepare the
-            Statement statement = connection.createStatement();
-            ResultSet result = statement.executeQuery("SELECT * FROM billboards");
-            if (result.next()){
+            boolean exists;
+            try (PreparedStatement select = connection.prepareStatement(SELECT_BILLBOARDS);
+                 ResultSet result = select.executeQuery()) {
+                exists = result.next();
+            }
+            if (exists){
                 System.out.println("Default Billboard already exists");
             }else {
                 //if the default billboard does not exist, insert into the
                 //database.
-                insert = connection.prepareStatement(INSERT_BB);
-                insert.setString(1, userName);
-                insert.setString(2, billboardName);
-                insert.setString(3, billboardXML);
-                insert.executeUpdate();
-                insert.close();
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_BB)) {
+                    insert.setString(1, userName);
+                    insert.setString(2, billboardName);
+                    insert.setString(3, billboardXML);
+                    insert.executeUpdate();
+                }
                 System.out.println("Default Billboard Successfully Created");
             }
 
@@ -1679,12 +1687,8 @@ public class DatabaseInterface {
      * @param connection Connection session created by the BillboardServer
      */
     public void createDefaultUser(String new_salt, String encrypted_password, Connection connection) {
-        PreparedStatement insert;
-        try {
-            //Create SQL connections
-            insert = connection.prepareStatement(INSERT_USER);
-            PreparedStatement select_users = connection.prepareStatement(SELECT_USERS);
-
+        //Create SQL connections
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_USER)) {
             //Add parameters into DB
             insert.setString(1, "admin");
             insert.setString(2, encrypted_password);
@@ -1697,8 +1701,6 @@ public class DatabaseInterface {
             insert.setBoolean(9, true);
 
             insert.executeUpdate();
-            insert.close();
-            //connection.close();//
 
             System.out.println("Default user created");
         } catch (SQLIntegrityConstraintViolationException ex) {
@@ -1719,10 +1721,13 @@ public class DatabaseInterface {
         //Set the default response to false
         boolean response = false;
 
-        if (!listOfTokens.isEmpty()) {
+        //Look the token up once, as another worker may log the session out
+        //between two separate look-ups
+        Date issued = session_token == null ? null : listOfTokens.get(session_token);
+        if (issued != null) {
             // Check whether or not the session token is greater than 24 hours old
-            boolean moreThanDay = Math.abs(date2.getTime() - listOfTokens.get(session_token).getTime()) > MILLIS_PER_DAY;
-            if (listOfTokens.containsKey(session_token) && !moreThanDay) {
+            boolean moreThanDay = Math.abs(date2.getTime() - issued.getTime()) > MILLIS_PER_DAY;
+            if (!moreThanDay) {
                 // If the token exists and the token is less than 24 hours old then the
                 // token is valid.
                 response = true;
@@ -1735,7 +1740,7 @@ public class DatabaseInterface {
      * Return a hash-map of current session tokens and timestamps
      * @return current hash-map of session tokens
      */
-    public HashMap<String, Date> getListOfToken(){
+    public Map<String, Date> getListOfToken(){
         return listOfTokens;
     }
 
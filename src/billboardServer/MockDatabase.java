@@ -2,7 +2,9 @@ package billboardServer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
@@ -194,6 +196,38 @@ public class MockDatabase {
         return billboardHashMap;
     }
 
+    /**
+     * Simulate the showBillboardsPage function
+     * @param session_token test session token
+     * @param afterID billboardID of the last billboard already received
+     * @param pageSize largest number of billboards to return
+     * @return an ordered map of mock billboard objects
+     */
+    public Map<String, String[]> showBillboardsPage(String session_token, int afterID, int pageSize) {
+        Map<String, String[]> billboardPage = new LinkedHashMap<>();
+
+        //simulate session token validation
+        if (!session_token.equals(sessionToken)) {
+            billboardPage.put("-1", new String[] {BAD_SESSION_TOKEN});
+            return billboardPage;
+        }
+
+        //Simulate "WHERE billboardID > afterID ORDER BY billboardID LIMIT pageSize"
+        TreeMap<Integer, String> ids = new TreeMap<>();
+        for (String key : billboards.keySet()) {
+            ids.put(Integer.parseInt(key), key);
+        }
+        for (String key : ids.tailMap(afterID, false).values()) {
+            if (billboardPage.size() == pageSize) {
+                break;
+            }
+            billboardPage.put(key, billboards.get(key));
+        }
+
+        //return the response
+        return billboardPage;
+    }
+
     /**
      * Simulate the getBillboardInformation function.
      * @param session_token test session token
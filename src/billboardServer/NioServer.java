@@ -0,0 +1,517 @@
+package billboardServer;
+
+import helpers.Constants;
+import helpers.FrameCodec;
+import helpers.SerializedObjectScanner;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking transport for the BillboardServer. A single selector thread
+ * accepts connections and reads requests from every SocketChannel, so idle
+ * connections (such as viewers between polls) do not hold a thread each.
+ * Once a complete request has arrived it is handed to the worker pool, which
+ * runs the DatabaseInterface call and queues the response for the selector
+ * thread to write.
+ *
+ * Both wire formats are understood: framed connections (see FrameCodec) and
+ * legacy connections that send a bare serialised request. The format is
+ * detected from the first bytes a client sends. A legacy request carries no
+ * length, so the selector thread finds its end with a SerializedObjectScanner,
+ * which carries on from where it stopped as more bytes arrive, and only then
+ * hands the request to a worker. Framed connections that ask
+ * for keep-alive stay open for further requests. Pipelined requests are read
+ * ahead while an earlier one is actioned, but the requests of one connection
+ * are actioned one at a time so their responses leave in request order.
+ *
+ * A kept-alive connection that sends SUBSCRIBE_BB is registered with the
+ * BillboardPublisher: each pushed billboard is queued for the selector thread
+ * like a response, and the connection is no longer closed when idle.
+ */
+public class NioServer {
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    private static final long SELECT_TIMEOUT = 1000;
+    //requests read ahead on one connection before reading is paused
+    private static final int MAX_PIPELINED = 32;
+
+    private final BillboardServer server;
+    private final WorkerPool workers;
+    private final int port;
+    private final long idleTimeoutMillis;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private Selector selector;
+    private long lastIdleCheck;
+
+    /*
+     Wire format of a connection, detected from its first bytes.
+     */
+    private enum Mode { UNKNOWN, FRAMED, LEGACY }
+
+    /*
+     State kept for every open connection.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final Queue<FrameCodec.Frame> requests = new ArrayDeque<>();
+        //each response is one or more buffers, written with a single gathering write
+        final Queue<ByteBuffer[]> pendingWrites = new ArrayDeque<>();
+        ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+        Mode mode = Mode.UNKNOWN;
+        byte options;
+        boolean keepAlive;
+        boolean readDone;
+        boolean busy;
+        boolean closeAfterWrite;
+        BillboardPublisher.Subscriber subscriber;
+        //finds the end of a legacy request as its bytes arrive
+        SerializedObjectScanner legacy;
+        long lastActive = System.currentTimeMillis();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Creates a non-blocking transport.
+     * @param server server used to action requests
+     * @param port port to listen on
+     * @param workers pool running the requests once they have been read
+     * @param idleTimeoutSeconds seconds after which an idle connection is closed
+     */
+    public NioServer(BillboardServer server, int port, WorkerPool workers, int idleTimeoutSeconds) {
+        this.server = server;
+        this.port = port;
+        this.workers = workers;
+        this.idleTimeoutMillis = idleTimeoutSeconds * 1000L;
+    }
+
+    /**
+     * Listen on the configured port and serve connections until the thread
+     * is interrupted.
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException {
+        selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        ServerMetrics.register("nio", this::toString);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            selector.select(SELECT_TIMEOUT);
+
+            //Apply the changes queued by the worker threads
+            Runnable task;
+            while ((task = selectorTasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isAcceptable()) {
+                        accept(serverChannel);
+                    } else {
+                        if (key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key);
+                        }
+                    }
+                } catch (IOException ex) {
+                    close(key);
+                }
+            }
+            closeIdleConnections();
+        }
+    }
+
+    /**
+     * Returns a one line summary of the transport counters.
+     * @return transport metrics
+     */
+    @Override
+    public String toString() {
+        return "open=" + openConnections.get() + " accepted=" + acceptedConnections.get();
+    }
+
+    /*
+     Accept every pending connection and register it for reading.
+     */
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+            openConnections.incrementAndGet();
+            acceptedConnections.incrementAndGet();
+        }
+    }
+
+    /*
+     Read whatever has arrived and action any request that is now complete.
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (!connection.in.hasRemaining()) {
+            growBuffer(connection);
+        }
+        if (connection.channel.read(connection.in) < 0) {
+            close(key);
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+
+        if (connection.mode == Mode.UNKNOWN) {
+            detectMode(connection);
+        }
+        if (connection.mode == Mode.FRAMED) {
+            readFrames(connection);
+        } else if (connection.mode == Mode.LEGACY) {
+            readLegacy(key, connection);
+        }
+        actionNext(key, connection);
+        updateInterest(key, connection);
+    }
+
+    /*
+     Decide from the first bytes whether the client speaks the framed or the
+     legacy protocol. Leaves the mode unknown until enough bytes have arrived.
+     */
+    private void detectMode(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (in.position() >= 2 && in.getShort(0) == FrameCodec.STREAM_MAGIC) {
+            connection.mode = Mode.LEGACY;
+        } else if (in.position() >= FrameCodec.PREFACE_LENGTH) {
+            if (in.getInt(0) != FrameCodec.MAGIC) {
+                throw new IOException("Unknown protocol");
+            }
+            FrameCodec.checkVersion(in.get(4));
+            connection.options = in.get(5);
+            connection.keepAlive = (connection.options & FrameCodec.OPTION_KEEP_ALIVE) != 0;
+            //Drop the preface, leaving any frame bytes that followed it
+            in.flip();
+            in.position(FrameCodec.PREFACE_LENGTH);
+            in.compact();
+            connection.mode = Mode.FRAMED;
+        }
+    }
+
+    /*
+     Queue every request frame whose header and payload have fully arrived.
+     Without keep-alive only the first request is read.
+     */
+    private void readFrames(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        while (!connection.readDone && in.position() >= FrameCodec.HEADER_LENGTH) {
+            int length = FrameCodec.checkLength(in.getInt(0));
+            if (in.position() < FrameCodec.HEADER_LENGTH + length) {
+                return;
+            }
+            int requestId = in.getInt(4);
+            byte flags = in.get(8);
+            byte[] payload = new byte[length];
+            in.flip();
+            in.position(FrameCodec.HEADER_LENGTH);
+            in.get(payload);
+            in.compact();
+            connection.requests.add(new FrameCodec.Frame(requestId, flags, payload));
+            connection.readDone = !connection.keepAlive;
+        }
+    }
+
+    /*
+     Hand a legacy request to a worker once all of it has arrived. A legacy
+     request carries no length, so its end is found by scanning the bytes
+     rather than decoding them, carrying on from where the last read stopped.
+     A worker is only given a request that is complete, so clients that send
+     slowly, or stop part way, hold no worker while they do.
+     */
+    private void readLegacy(SelectionKey key, Connection connection) throws IOException {
+        if (connection.legacy == null) {
+            connection.legacy = new SerializedObjectScanner();
+        }
+        int length = connection.legacy.scan(connection.in);
+        if (length < 0) {
+            return;
+        }
+        //One request per connection: anything after it is not read
+        connection.readDone = true;
+        byte[] request = new byte[length];
+        connection.in.flip();
+        connection.in.get(request);
+        connection.in.clear();
+        actionLegacy(key, connection, request);
+    }
+
+    /*
+     Hand a complete legacy request to the worker pool, which decodes it,
+     actions it and queues the response, after which the connection is closed.
+     */
+    private void actionLegacy(SelectionKey key, Connection connection, byte[] request) {
+        connection.busy = true;
+        boolean accepted = workers.submit(() -> {
+            ByteBuffer[] response = null;
+            try {
+                Object[] client_data = (Object[]) FrameCodec.deserialize(request);
+                response = encodeResponse(connection, 0, server.dispatch(client_data), true);
+            } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+                System.out.println("Unable to action request: " + ex);
+            }
+            queueWrite(key, response, true);
+        });
+        if (!accepted) {
+            System.out.println("Server overloaded, rejected connection from " +
+                    connection.channel.socket().getRemoteSocketAddress());
+            close(key);
+        }
+    }
+
+    /*
+     Hand the next queued request of the connection to the worker pool, unless
+     one is already being actioned. The response is queued back to the
+     selector thread to be written.
+     */
+    private void actionNext(SelectionKey key, Connection connection) {
+        if (connection.busy || connection.requests.isEmpty()) {
+            return;
+        }
+        FrameCodec.Frame request = connection.requests.poll();
+        //the last response of a connection that is not kept alive closes it
+        boolean last = connection.readDone && connection.requests.isEmpty();
+        connection.busy = true;
+
+        boolean accepted = workers.submit(() -> {
+            ByteBuffer[] response = null;
+            try {
+                Object[] client_data = server.decodeRequest(request, connection.options);
+                if (connection.keepAlive && connection.subscriber == null
+                        && Constants.SUBSCRIBE_BB.equals(client_data[0])) {
+                    subscribe(key, connection, request.requestId);
+                    return;
+                }
+                response = encodeResponse(connection, request.requestId, server.dispatch(client_data), last);
+            } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+                System.out.println("Unable to action request: " + ex);
+            }
+            queueWrite(key, response, last);
+        });
+        if (!accepted) {
+            System.out.println("Server overloaded, rejected connection from " +
+                    connection.channel.socket().getRemoteSocketAddress());
+            close(key);
+        }
+    }
+
+    /*
+     Called from a worker thread: register the connection with the publisher
+     and queue the current billboard as the response. Pushed billboards reuse
+     the request ID of the subscription. Queueing under the connection lock
+     keeps a push from overtaking the first response.
+     */
+    private void subscribe(SelectionKey key, Connection connection, int requestId) throws IOException {
+        BillboardPublisher.Subscriber subscriber = billboard -> {
+            ByteBuffer[] pushed = encodeResponse(connection, requestId, billboard, false);
+            synchronized (connection) {
+                if (!key.isValid()) {
+                    throw new IOException("Connection closed");
+                }
+                queuePush(key, pushed);
+            }
+        };
+        synchronized (connection) {
+            connection.subscriber = subscriber;
+            ByteBuffer[] response = encodeResponse(connection, requestId,
+                    server.getPublisher().subscribe(subscriber), false);
+            connection.channel.socket().setKeepAlive(true);
+            queueWrite(key, response, false);
+        }
+    }
+
+    /*
+     Called from the publisher: pass a pushed billboard to the selector
+     thread, which owns the channel.
+     */
+    private void queuePush(SelectionKey key, ByteBuffer[] pushed) {
+        selectorTasks.add(() -> {
+            if (key.isValid()) {
+                Connection connection = (Connection) key.attachment();
+                connection.pendingWrites.add(pushed);
+                updateInterest(key, connection);
+            }
+        });
+        selector.wakeup();
+    }
+
+    /*
+     Read from the connection while more requests are expected and the
+     pipeline has room, and write while responses are pending.
+     */
+    private void updateInterest(SelectionKey key, Connection connection) {
+        if (!key.isValid()) {
+            return;
+        }
+        int ops = 0;
+        if (!connection.readDone && connection.requests.size() < MAX_PIPELINED) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!connection.pendingWrites.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /*
+     Encode a response in the wire format used by the connection. Returns null
+     if there is nothing to send. The billboard showing now is sent from its
+     cached encoding, shared read-only by every connection, behind a header
+     of its own.
+     */
+    private ByteBuffer[] encodeResponse(Connection connection, int requestId, Object response, boolean last)
+            throws IOException {
+        if (connection.mode == Mode.FRAMED) {
+            byte flags = last ? FrameCodec.FLAG_CLOSE : 0;
+            NowShowingCache.Encoded cached = server.cachedResponse(response, connection.options);
+            if (cached != null) {
+                return new ByteBuffer[]{
+                        FrameCodec.encodeHeader(cached.length(), requestId, (byte) (flags | cached.getFlags())),
+                        cached.getBuffer()};
+            }
+            return new ByteBuffer[]{
+                    FrameCodec.encodeFrame(server.encodeResponse(requestId, flags, response, connection.options))};
+        }
+        if (response == null) {
+            return null;
+        }
+        NowShowingCache.Encoded cached = server.cachedResponse(response, (byte) 0);
+        if (cached != null) {
+            return new ByteBuffer[]{cached.getBuffer()};
+        }
+        return new ByteBuffer[]{ByteBuffer.wrap(FrameCodec.serialize(response))};
+    }
+
+    /*
+     Called from a worker thread: pass the encoded response to the selector
+     thread, which owns the channel.
+     */
+    private void queueWrite(SelectionKey key, ByteBuffer[] response, boolean last) {
+        selectorTasks.add(() -> {
+            Connection connection = (Connection) key.attachment();
+            connection.busy = false;
+            if (response == null) {
+                close(key);
+                return;
+            }
+            if (key.isValid()) {
+                connection.pendingWrites.add(response);
+                connection.closeAfterWrite = last;
+                actionNext(key, connection);
+                updateInterest(key, connection);
+            }
+        });
+        selector.wakeup();
+    }
+
+    /*
+     Write as much of the pending responses as the socket accepts.
+     */
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer[] head;
+        while ((head = connection.pendingWrites.peek()) != null) {
+            connection.channel.write(head);
+            if (head[head.length - 1].hasRemaining()) {
+                //socket buffer is full, wait until it drains
+                return;
+            }
+            connection.pendingWrites.poll();
+        }
+        connection.lastActive = System.currentTimeMillis();
+        if (connection.closeAfterWrite) {
+            close(key);
+        } else {
+            updateInterest(key, connection);
+        }
+    }
+
+    /*
+     Double the read buffer of a connection, up to the largest frame allowed.
+     */
+    private void growBuffer(Connection connection) throws IOException {
+        int capacity = connection.in.capacity();
+        if (capacity >= FrameCodec.MAX_PAYLOAD + FrameCodec.HEADER_LENGTH) {
+            throw new IOException("Request too large");
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(capacity * 2,
+                FrameCodec.MAX_PAYLOAD + FrameCodec.HEADER_LENGTH));
+        connection.in.flip();
+        larger.put(connection.in);
+        connection.in = larger;
+    }
+
+    /*
+     Close connections that have not sent anything for longer than the idle
+     timeout. Checked at most once a second.
+     */
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (idleTimeoutMillis <= 0 || now - lastIdleCheck < SELECT_TIMEOUT) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                boolean idle = connection.subscriber == null && !connection.busy && connection.requests.isEmpty()
+                        && connection.pendingWrites.isEmpty();
+                if (idle && now - connection.lastActive > idleTimeoutMillis) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    /*
+     Cancel the key and close its channel. Closing a connection that is
+     already closed does nothing, so it is only counted once.
+     */
+    private void close(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Connection) {
+            Connection connection = (Connection) key.attachment();
+            if (!connection.channel.isOpen()) {
+                return;
+            }
+            if (connection.subscriber != null) {
+                server.getPublisher().unsubscribe(connection.subscriber);
+            }
+            try {
+                connection.channel.close();
+            } catch (IOException ignored) {
+                //nothing more can be done with this connection
+            } finally {
+                openConnections.decrementAndGet();
+            }
+        }
+    }
+}
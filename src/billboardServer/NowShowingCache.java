@@ -0,0 +1,459 @@
+package billboardServer;
+
+import helpers.ContentTag;
+import helpers.FrameCodec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caches the billboard showing now, so that every viewer request between
+ * two schedule changes is answered from memory instead of the database.
+ *
+ * The cached billboard is replaced exactly when the schedule says the next
+ * billboard starts, and straight away when a billboard or the schedule is
+ * edited. It is also replaced once it is a minute old, to pick up edits
+ * made through other servers. Each cached billboard is given a version,
+ * which changes only when the billboard does, and the ContentTag viewers
+ * send to ask for it only if it has changed. The billboard scheduled to
+ * follow it, and when, is kept with it so viewers can fetch it in advance.
+ *
+ * The RECEIVE_BB response for the cached billboard is encoded once per
+ * version for each wire encoding a viewer asks for (serialised or binary,
+ * compressed or not), and the same bytes are then written to every viewer
+ * instead of encoding the billboard again for each request. Viewers that
+ * send a ContentTag are answered with the billboard inside an envelope that
+ * also carries times, such as when to poll again. Each shape of envelope is
+ * encoded at most once per ENVELOPE_MAX_AGE_MILLIS in each encoding and the
+ * same bytes are written to every viewer in that time, so the times sent
+ * are at most that old.
+ */
+public class NowShowingCache {
+    //longest a billboard is served from the cache, to pick up edits made through other servers
+    private static final long MAX_AGE_MILLIS = 60_000;
+    //how soon to try again when the billboard cannot be read
+    private static final long RETRY_MILLIS = 5_000;
+    //wire encodings a response can be cached in, see BillboardServer.encodingOf
+    public static final int ENCODINGS = 4;
+    //serialised and uncompressed, which is also the legacy protocol's response
+    public static final int ENCODING_SERIALIZED = 0;
+    //shapes of envelope a response can be cached in, see BillboardServer.envelopeOf
+    public static final int ENVELOPES = 6;
+    //longest an encoded envelope is reused, which is how stale the times in it can be
+    public static final long ENVELOPE_MAX_AGE_MILLIS = 100;
+
+    private final Supplier<String[]> source;
+    private final LongSupplier nextChange;
+    private final LongFunction<String[]> scheduledAt;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder encodes = new LongAdder();
+    private volatile Snapshot snapshot;
+    //the last billboard read, kept when the cache is invalidated to tell if the billboard changed
+    private Snapshot last;
+    private long version;
+    private ScheduledExecutorService refresher;
+    private ScheduledFuture<?> nextRefresh;
+    private volatile Runnable onChange = () -> { };
+
+    /**
+     * Encodes a billboard as a response payload, for an encoding not yet cached.
+     */
+    @FunctionalInterface
+    public interface Encoder {
+        /**
+         * Encode a billboard.
+         * @param billboard the billboard to encode
+         * @return the encoded response
+         * @throws IOException if the billboard cannot be encoded
+         */
+        Encoded encode(String[] billboard) throws IOException;
+    }
+
+    /**
+     * A response payload encoded once and shared by every request for it.
+     */
+    public static final class Encoded {
+        private final byte flags;
+        private final byte[] payload;
+        private final ByteBuffer buffer;
+        private final long encodedAt = System.currentTimeMillis();
+
+        /**
+         * Creates an encoded response. The payload must not be changed afterwards.
+         * @param flags frame flags describing the payload, such as FLAG_DEFLATED
+         * @param payload encoded response
+         */
+        public Encoded(byte flags, byte[] payload) {
+            this.flags = flags;
+            this.payload = payload;
+            this.buffer = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+
+        /**
+         * Returns the frame flags describing the payload.
+         * @return flag bits
+         */
+        public byte getFlags() {
+            return flags;
+        }
+
+        /**
+         * Returns the length of the payload.
+         * @return length in bytes
+         */
+        public int length() {
+            return payload.length;
+        }
+
+        /**
+         * Returns the payload as a read-only buffer of its own position, to be
+         * written to a channel. The bytes are shared, not copied.
+         * @return buffer positioned at the start of the payload
+         */
+        public ByteBuffer getBuffer() {
+            return buffer.duplicate();
+        }
+
+        /**
+         * Write the payload to a stream.
+         * @param out stream to write to
+         * @throws IOException if the stream cannot be written
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(payload);
+        }
+    }
+
+    /**
+     * The billboard showing now, as cached.
+     */
+    public final class Snapshot {
+        private final String[] billboard;
+        private final long version;
+        private final String tag;
+        private final AtomicReferenceArray<Encoded> encoded;
+        //envelopes hold the next billboard and its time, so are never shared between snapshots
+        private final AtomicReferenceArray<Encoded> envelopes = new AtomicReferenceArray<>(ENVELOPES * ENCODINGS);
+        private final long expiresAt;
+        private final long changeAt;
+        private final String[] upcoming;
+        private final String upcomingTag;
+
+        private Snapshot(String[] billboard, long version, String tag, AtomicReferenceArray<Encoded> encoded,
+                         long expiresAt, long changeAt, String[] upcoming) {
+            this.billboard = billboard;
+            this.version = version;
+            this.tag = tag;
+            this.encoded = encoded;
+            this.expiresAt = expiresAt;
+            this.changeAt = changeAt;
+            this.upcoming = upcoming;
+            this.upcomingTag = ContentTag.of(upcoming);
+        }
+
+        /**
+         * Returns the billboard. The array is shared by every request and must not be changed.
+         * @return the RECEIVE_BB response: name, creator and XML
+         */
+        public String[] getBillboard() {
+            return billboard;
+        }
+
+        /**
+         * Returns the version of the billboard, which changes whenever the billboard does.
+         * @return version number
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the content tag of the billboard.
+         * @return the ContentTag, or null if the billboard could not be read
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * Returns the billboard serialised as a RECEIVE_BB response, which is
+         * also the whole response of the legacy protocol.
+         * @return serialised response
+         * @throws IOException if the billboard cannot be serialised
+         */
+        public Encoded getSerialized() throws IOException {
+            return getEncoded(ENCODING_SERIALIZED,
+                    billboard -> new Encoded((byte) 0, FrameCodec.encodeResponse(billboard, (byte) 0)));
+        }
+
+        /**
+         * Returns the billboard encoded as a RECEIVE_BB response, encoding it
+         * only the first time the encoding is asked for in this version.
+         * @param encoding which of the ENCODINGS the encoder produces
+         * @param encoder encodes the billboard if it has not been already
+         * @return encoded response
+         * @throws IOException if the billboard cannot be encoded
+         */
+        public Encoded getEncoded(int encoding, Encoder encoder) throws IOException {
+            Encoded cached = encoded.get(encoding);
+            if (cached == null) {
+                //Two requests may encode at once; either result will do
+                encodes.increment();
+                cached = encoder.encode(billboard);
+                if (!encoded.compareAndSet(encoding, null, cached)) {
+                    cached = encoded.get(encoding);
+                }
+            }
+            return cached;
+        }
+
+        /**
+         * Returns an envelope response holding the billboard, or its tag or
+         * NOT_MODIFIED, encoded only if it has not been in this encoding in the
+         * last ENVELOPE_MAX_AGE_MILLIS. The times in the envelope are those of
+         * the request it was encoded for.
+         * @param envelope which of the ENVELOPES shapes the response is
+         * @param encoding which of the ENCODINGS the encoder produces
+         * @param encoder encodes the response if it has not been recently
+         * @return encoded response
+         * @throws IOException if the response cannot be encoded
+         */
+        public Encoded getEnvelope(int envelope, int encoding, Encoder encoder) throws IOException {
+            int slot = envelope * ENCODINGS + encoding;
+            Encoded cached = envelopes.get(slot);
+            if (cached == null || System.currentTimeMillis() - cached.encodedAt >= ENVELOPE_MAX_AGE_MILLIS) {
+                //Two requests may encode at once; the last one is kept
+                encodes.increment();
+                cached = encoder.encode(billboard);
+                envelopes.set(slot, cached);
+            }
+            return cached;
+        }
+
+        /**
+         * Returns the time at which a different billboard is next scheduled.
+         * @return time in milliseconds since the epoch, or Long.MAX_VALUE if
+         *         the billboard is not known to change
+         */
+        public long getChangeAt() {
+            return changeAt;
+        }
+
+        /**
+         * Returns the billboard scheduled to follow this one at getChangeAt().
+         * The array is shared by every request and must not be changed.
+         * @return the RECEIVE_BB response of the next billboard, or null if
+         *         the billboard is not known to change
+         */
+        public String[] getUpcoming() {
+            return upcoming;
+        }
+
+        /**
+         * Returns the content tag of the billboard scheduled next.
+         * @return the ContentTag, or null if there is no next billboard
+         */
+        public String getUpcomingTag() {
+            return upcomingTag;
+        }
+
+        /**
+         * Returns the time at which the cached billboard must be replaced.
+         * @return time in milliseconds since the epoch
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    /**
+     * Creates a cache that does not look ahead to the next billboard.
+     * @param source returns the billboard showing now, as a RECEIVE_BB response
+     * @param nextChange returns the time a different billboard is next
+     *                   scheduled, in milliseconds since the epoch
+     */
+    public NowShowingCache(Supplier<String[]> source, LongSupplier nextChange) {
+        this(source, nextChange, time -> null);
+    }
+
+    /**
+     * Creates a cache.
+     * @param source returns the billboard showing now, as a RECEIVE_BB response
+     * @param nextChange returns the time a different billboard is next
+     *                   scheduled, in milliseconds since the epoch
+     * @param scheduledAt returns the billboard scheduled at a time, as a
+     *                    RECEIVE_BB response, used to read the next billboard
+     */
+    public NowShowingCache(Supplier<String[]> source, LongSupplier nextChange, LongFunction<String[]> scheduledAt) {
+        this.source = source;
+        this.nextChange = nextChange;
+        this.scheduledAt = scheduledAt;
+    }
+
+    /**
+     * Start replacing the cached billboard at each schedule change, rather
+     * than when it is next requested. Does nothing if already started.
+     * @param onChange run after the cached billboard is replaced with a different one
+     */
+    public synchronized void start(Runnable onChange) {
+        if (refresher != null) {
+            return;
+        }
+        this.onChange = onChange;
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "now-showing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.execute(this::refresh);
+        ServerMetrics.register("nowShowing", this::toString);
+    }
+
+    /**
+     * Returns the billboard showing now, reading it from the database only if
+     * the cached billboard has expired.
+     * @return the cached billboard
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() < current.expiresAt) {
+            hits.increment();
+            return current;
+        }
+        return refreshIfExpired();
+    }
+
+    /**
+     * Returns the cached billboard without reading it again, even if it has expired.
+     * @return the cached billboard, or null if there is none
+     */
+    public Snapshot peek() {
+        return snapshot;
+    }
+
+    /**
+     * Drop the cached billboard and read it again straight away. Called after
+     * a billboard or the schedule has been edited.
+     */
+    public void invalidate() {
+        snapshot = null;
+        synchronized (this) {
+            if (refresher != null) {
+                refresher.execute(this::refresh);
+            }
+        }
+    }
+
+    /**
+     * Returns a one line summary of the cache counters.
+     * @return cache metrics
+     */
+    @Override
+    public String toString() {
+        Snapshot current = snapshot;
+        return "version=" + (current == null ? "-" : current.version) + " hits=" + hits.sum() +
+                " refreshes=" + refreshes.sum() + " encodes=" + encodes.sum();
+    }
+
+    /*
+     Read the billboard again unless another thread has just done so.
+     */
+    private Snapshot refreshIfExpired() {
+        Snapshot previous;
+        Snapshot next;
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (current != null && System.currentTimeMillis() < current.expiresAt) {
+                return current;
+            }
+            previous = last;
+            next = read();
+        }
+        notifyIfChanged(previous, next);
+        return next;
+    }
+
+    /*
+     Read the billboard showing now, as is done at each schedule change.
+     */
+    private void refresh() {
+        Snapshot previous;
+        Snapshot next;
+        synchronized (this) {
+            previous = last;
+            next = read();
+        }
+        notifyIfChanged(previous, next);
+    }
+
+    /*
+     Run onChange if a billboard read replaced a different one. This is run
+     after the cache is unlocked, as onChange may wait on a thread that is
+     itself waiting for the cache, such as the publisher checking it.
+     */
+    private void notifyIfChanged(Snapshot previous, Snapshot next) {
+        if (previous != null && previous.version != next.version) {
+            onChange.run();
+        }
+    }
+
+    /*
+     Read the billboard showing now and when it changes, replace the cached
+     billboard and schedule the next refresh for when it changes. Only called
+     while holding the cache's lock.
+     */
+    private Snapshot read() {
+        refreshes.increment();
+        long now = System.currentTimeMillis();
+        String[] billboard = source.get();
+        Snapshot previous = last;
+
+        //Errors are not a billboard (name, creator and XML), so are read again soon
+        long expiresAt;
+        long changeAt = Long.MAX_VALUE;
+        String[] upcoming = null;
+        if (billboard == null || billboard.length < 3) {
+            expiresAt = now + RETRY_MILLIS;
+        } else {
+            changeAt = nextChange.getAsLong();
+            expiresAt = Math.min(changeAt, now + MAX_AGE_MILLIS);
+            if (changeAt != Long.MAX_VALUE) {
+                upcoming = scheduledAt.apply(changeAt);
+            }
+        }
+
+        boolean changed = previous == null || !Arrays.equals(previous.billboard, billboard);
+        Snapshot next;
+        if (changed) {
+            version++;
+            next = new Snapshot(billboard, version, ContentTag.of(billboard), new AtomicReferenceArray<>(ENCODINGS),
+                    expiresAt, changeAt, upcoming);
+        } else {
+            next = new Snapshot(previous.billboard, previous.version, previous.tag, previous.encoded, expiresAt,
+                    changeAt, upcoming);
+        }
+        last = next;
+        snapshot = next;
+
+        //Refresh again exactly when the schedule changes
+        if (refresher != null) {
+            if (nextRefresh != null) {
+                nextRefresh.cancel(false);
+            }
+            nextRefresh = refresher.schedule(this::refresh, Math.max(0, expiresAt - now), TimeUnit.MILLISECONDS);
+        }
+        return next;
+    }
+}
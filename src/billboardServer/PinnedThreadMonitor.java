@@ -0,0 +1,91 @@
+package billboardServer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches for virtual threads that block while pinned to their carrier thread.
+ * A pinned virtual thread holds on to one of the few carrier threads, so a
+ * JDBC driver that blocks inside a synchronized block can quietly cap the
+ * number of requests the server actions at once. The monitor listens to the
+ * JDK Flight Recorder "jdk.VirtualThreadPinned" event and counts how many of
+ * the pinned blocks happened inside the database layer.
+ */
+public class PinnedThreadMonitor {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final AtomicLong pinned = new AtomicLong();
+    private final AtomicLong pinnedInJdbc = new AtomicLong();
+    private RecordingStream stream;
+
+    /**
+     * Start listening for pinned virtual threads.
+     * @param threshold only report threads pinned for at least this long
+     */
+    public void start(Duration threshold) {
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::recordPinned);
+        stream.startAsync();
+    }
+
+    /**
+     * Stop listening for pinned virtual threads.
+     */
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the number of pinned blocks seen.
+     * @return pinned block count
+     */
+    public long getPinnedCount() {
+        return pinned.get();
+    }
+
+    /**
+     * Returns the number of pinned blocks seen during a JDBC call.
+     * @return pinned JDBC block count
+     */
+    public long getPinnedInJdbcCount() {
+        return pinnedInJdbc.get();
+    }
+
+    /**
+     * Returns a one line summary of the pinned thread counters.
+     * @return pinned thread metrics
+     */
+    @Override
+    public String toString() {
+        return "pinned=" + getPinnedCount() + " pinnedInJdbc=" + getPinnedInJdbcCount();
+    }
+
+    /*
+     Count a pinned event, and log where it happened if it was a JDBC call.
+     */
+    private void recordPinned(RecordedEvent event) {
+        pinned.incrementAndGet();
+        RecordedStackTrace trace = event.getStackTrace();
+        if (trace == null) {
+            return;
+        }
+        for (RecordedFrame frame : trace.getFrames()) {
+            String className = frame.getMethod().getType().getName();
+            if (className.startsWith("java.sql.") || className.startsWith("org.mariadb.")
+                    || className.startsWith("com.mysql.") || className.equals(DatabaseInterface.class.getName())) {
+                pinnedInJdbc.incrementAndGet();
+                System.out.println("Virtual thread pinned for " + event.getDuration().toMillis() + "ms in " +
+                        className + "." + frame.getMethod().getName());
+                return;
+            }
+        }
+    }
+}
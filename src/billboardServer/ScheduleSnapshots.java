@@ -0,0 +1,200 @@
+package billboardServer;
+
+import helpers.ContentTag;
+import helpers.ScheduleEntry;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the whole weekly schedule, and every billboard it shows, for viewers
+ * that work out the billboard showing now themselves (RECEIVE_SCHEDULE).
+ *
+ * Each schedule read is versioned by its ContentTag, so every server gives
+ * the same schedule the same version. The last few versions are kept, so a
+ * viewer holding one of them can be sent only the entries added and removed
+ * since, rather than the whole schedule.
+ *
+ * The schedule is read again when it is edited through this server and once
+ * it is a minute old, to pick up edits made through other servers.
+ */
+public class ScheduleSnapshots {
+    //longest a schedule is served before it is read again
+    private static final long MAX_AGE_MILLIS = 60_000;
+    //how soon to try again when the schedule cannot be read
+    private static final long RETRY_MILLIS = 5_000;
+    //versions kept to send viewers the changes since
+    private static final int HISTORY = 16;
+
+    private final Supplier<List<ScheduleEntry>> schedule;
+    private final Function<List<ScheduleEntry>, Map<String, String[]>> billboards;
+    private final LongAdder reads = new LongAdder();
+    //entries of recent versions by scheduleID, oldest first
+    private final LinkedHashMap<String, Map<Integer, ScheduleEntry>> history =
+            new LinkedHashMap<String, Map<Integer, ScheduleEntry>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, ScheduleEntry>> eldest) {
+                    return size() > HISTORY;
+                }
+            };
+    //counts invalidations, so an edit made while the schedule is being read is not lost
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+    private volatile long expiresAt;
+    //generation when the current snapshot was read, or last failed to be read
+    private volatile long readGeneration = -1;
+
+    /**
+     * A version of the schedule with the billboards it shows.
+     */
+    public static final class Snapshot {
+        private final String version;
+        private final Map<Integer, ScheduleEntry> entries;
+        private final Map<String, String[]> billboards;
+        private final Map<String, String> tags;
+
+        private Snapshot(String version, Map<Integer, ScheduleEntry> entries, Map<String, String[]> billboards) {
+            this.version = version;
+            this.entries = entries;
+            this.billboards = billboards;
+            this.tags = new HashMap<>();
+            for (Map.Entry<String, String[]> billboard : billboards.entrySet()) {
+                tags.put(billboard.getKey(), ContentTag.of(billboard.getValue()));
+            }
+        }
+
+        /**
+         * Returns the version of the schedule, its ContentTag.
+         * @return the version
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns every entry of the schedule by scheduleID. The map is shared and must not be changed.
+         * @return the schedule entries
+         */
+        public Map<Integer, ScheduleEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Returns every billboard the schedule shows, and the default billboard,
+         * by billboardID. The map is shared and must not be changed.
+         * @return billboards as RECEIVE_BB responses: name, creator and XML
+         */
+        public Map<String, String[]> getBillboards() {
+            return billboards;
+        }
+
+        /**
+         * Returns the content tag of one of the billboards.
+         * @param billboardID ID of the billboard
+         * @return the ContentTag, or null if the billboard is not in the snapshot
+         */
+        public String getTag(String billboardID) {
+            return tags.get(billboardID);
+        }
+    }
+
+    /**
+     * Creates an empty store of schedule versions.
+     * @param schedule reads every schedule entry, returning null if the
+     *                 schedule cannot be read
+     * @param billboards reads the billboards shown by the given entries, and
+     *                   the default billboard, by billboardID
+     */
+    public ScheduleSnapshots(Supplier<List<ScheduleEntry>> schedule,
+                             Function<List<ScheduleEntry>, Map<String, String[]>> billboards) {
+        this.schedule = schedule;
+        this.billboards = billboards;
+    }
+
+    /**
+     * Returns the current version of the schedule, reading it again if it is
+     * older than a minute or has been edited.
+     * @return the schedule, or null if it has never been read
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null && fresh(System.currentTimeMillis())) {
+            return current;
+        }
+        return refreshIfExpired();
+    }
+
+    /**
+     * Returns the entries of an earlier version of the schedule, if it is one
+     * of the versions kept.
+     * @param version version held by a viewer
+     * @return the entries by scheduleID, or null if the version is not known
+     */
+    public synchronized Map<Integer, ScheduleEntry> entriesAt(String version) {
+        return version == null ? null : history.get(version);
+    }
+
+    /**
+     * Read the schedule again when it is next asked for. Called after a
+     * billboard or the schedule has been edited.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Returns a one line summary of the store.
+     * @return schedule metrics
+     */
+    @Override
+    public synchronized String toString() {
+        Snapshot current = snapshot;
+        return "entries=" + (current == null ? "-" : current.entries.size()) + " versions=" + history.size() +
+                " reads=" + reads.sum();
+    }
+
+    /*
+     Returns true if the last read has not expired and nothing has been
+     invalidated since it started.
+     */
+    private boolean fresh(long now) {
+        return now < expiresAt && readGeneration == generation.get();
+    }
+
+    /*
+     Read the schedule and its billboards again unless another thread has just
+     done so. If the schedule cannot be read the last version is kept. The
+     generation is taken before reading, so if the schedule is invalidated
+     while it is read the version read is served only until the next request,
+     which reads it again.
+     */
+    private synchronized Snapshot refreshIfExpired() {
+        long now = System.currentTimeMillis();
+        if (snapshot != null && fresh(now)) {
+            return snapshot;
+        }
+        long readingGeneration = generation.get();
+        reads.increment();
+        List<ScheduleEntry> entries = schedule.get();
+        if (entries == null) {
+            expiresAt = now + RETRY_MILLIS;
+            readGeneration = readingGeneration;
+            return snapshot;
+        }
+        Map<Integer, ScheduleEntry> byID = new HashMap<>();
+        for (ScheduleEntry entry : entries) {
+            byID.put(entry.getScheduleID(), entry);
+        }
+        String version = ContentTag.ofSchedule(entries);
+        snapshot = new Snapshot(version, Collections.unmodifiableMap(byID),
+                Collections.unmodifiableMap(billboards.apply(entries)));
+        history.remove(version);
+        history.put(version, snapshot.entries);
+        expiresAt = now + MAX_AGE_MILLIS;
+        readGeneration = readingGeneration;
+        return snapshot;
+    }
+}
@@ -0,0 +1,171 @@
+package billboardServer;
+
+import java.sql.*;
+
+/**
+ * SchemaMigrations brings the billboardserver database up to the schema this
+ * version of the server expects. Each migration is a numbered list of SQL
+ * statements, and the number of every migration applied is recorded in the
+ * schema_version table, so an existing database is upgraded in place by
+ * running only the migrations it has not had yet.
+ *
+ * Migrations are only ever added to the end of the list. A migration that
+ * has been released must not be changed, as databases that already applied
+ * it will not run it again.
+ */
+public class SchemaMigrations {
+    //Records which migrations have been applied to this database
+    private static final String CREATE_SCHEMA_VERSION = "CREATE TABLE IF NOT EXISTS `schema_version`" +
+            " (`version` INT NOT NULL,`description` varchar(100) NOT NULL," +
+            "`appliedOn` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (`version`));";
+    private static final String SELECT_VERSION = "SELECT MAX(version) FROM schema_version";
+    private static final String INSERT_VERSION = "INSERT INTO schema_version (version, description) VALUES (?,?)";
+
+    //Stops two servers starting at once from migrating the same database together
+    private static final String LOCK_NAME = "billboardserver.schema";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    /*
+     One numbered step of the schema.
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+
+        private Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+
+    //Every migration, in the order they are applied
+    private static final Migration[] MIGRATIONS = {
+            new Migration(1, "Create users, billboards and schedule tables",
+                    "CREATE TABLE IF NOT EXISTS `billboardserver`.`USERS`" +
+                    " (`userName` varchar(45) NOT NULL,`password` MEDIUMTEXT NOT NULL,`salt` varchar(45) NOT NULL," +
+                    "`loginStatus` boolean NOT NULL,`createBillboardP` boolean NOT NULL," +
+                    "`editAllBillboardP` boolean NOT NULL,`scheduleBillboardP` boolean NOT NULL," +
+                    "`editUsersP` boolean NOT NULL,`isAdmin` boolean NOT NULL, PRIMARY KEY (`userName`));",
+                    "CREATE TABLE IF NOT EXISTS `billboardserver`.`BILLBOARDS`" +
+                    " (`billboardID` MEDIUMINT NOT NULL AUTO_INCREMENT,`billboardName` varchar(45) NOT NULL," +
+                    "`userName` varchar(45) NOT NULL,`billboardXML` MEDIUMTEXT,PRIMARY KEY (`billboardID`));",
+                    "CREATE TABLE IF NOT EXISTS `billboardserver`.`SCHEDULE`" +
+                    " (`billboardID` MEDIUMINT NOT NULL,`db_hour` varchar(45) NOT NULL," +
+                    "`db_minute` varchar(45)  NOT NULL,`db_day` varchar(45) NOT NULL,`reoccurDaily`  boolean," +
+                    "`reoccurHourly` boolean,`reoccurMin` varchar(45),`duration` varchar(45) NOT NULL," +
+                    "`scheduler` varchar(45) NOT NULL,PRIMARY KEY (`billboardID`));"),
+            //The schedule is rebuilt as a copy and swapped in with one atomic RENAME. Schedule edits made
+            //while the copy runs are not carried over, so no server may be editing the schedule meanwhile.
+            //Tables left by a failed attempt are dropped first, so the migration can be run again.
+            new Migration(2, "Integer schedule columns, many slots per billboard, index on day and start",
+                    "DROP TABLE IF EXISTS `billboardserver`.`SCHEDULE_OLD`",
+                    "DROP TABLE IF EXISTS `billboardserver`.`SCHEDULE_NEW`",
+                    "CREATE TABLE `billboardserver`.`SCHEDULE_NEW`" +
+                    " (`scheduleID` INT NOT NULL AUTO_INCREMENT,`billboardID` MEDIUMINT NOT NULL," +
+                    "`db_hour` TINYINT NOT NULL,`db_minute` TINYINT NOT NULL,`db_day` TINYINT NOT NULL," +
+                    "`start_minute` SMALLINT GENERATED ALWAYS AS (`db_hour` * 60 + `db_minute`) STORED," +
+                    "`reoccurDaily` boolean NOT NULL DEFAULT 0,`reoccurHourly` boolean NOT NULL DEFAULT 0," +
+                    "`reoccurMin` SMALLINT NOT NULL DEFAULT 0,`duration` SMALLINT NOT NULL," +
+                    "`scheduler` varchar(45) NOT NULL, PRIMARY KEY (`scheduleID`)," +
+                    " INDEX `schedule_day_start` (`db_day`, `start_minute`)," +
+                    " INDEX `schedule_billboard` (`billboardID`));",
+                    "INSERT INTO `billboardserver`.`SCHEDULE_NEW` (billboardID, db_hour, db_minute, db_day," +
+                    " reoccurDaily, reoccurHourly, reoccurMin, duration, scheduler)" +
+                    " SELECT billboardID, CAST(db_hour AS UNSIGNED), CAST(db_minute AS UNSIGNED)," +
+                    " CAST(db_day AS UNSIGNED), COALESCE(reoccurDaily, 0), COALESCE(reoccurHourly, 0)," +
+                    " CAST(COALESCE(NULLIF(TRIM(reoccurMin), ''), '0') AS UNSIGNED)," +
+                    " CAST(duration AS UNSIGNED), scheduler FROM `billboardserver`.`SCHEDULE`",
+                    "RENAME TABLE `billboardserver`.`SCHEDULE` TO `billboardserver`.`SCHEDULE_OLD`," +
+                    " `billboardserver`.`SCHEDULE_NEW` TO `billboardserver`.`SCHEDULE`",
+                    "DROP TABLE `billboardserver`.`SCHEDULE_OLD`")
+    };
+
+    /**
+     * The schema version this server expects.
+     * @return the version of the last migration
+     */
+    public static int latestVersion() {
+        return MIGRATIONS[MIGRATIONS.length - 1].version;
+    }
+
+    /**
+     * Apply every migration the database has not had yet, in order, recording
+     * each one in schema_version as it completes. The migrations run under a
+     * named lock so that servers starting together do not run them twice.
+     * @param connection Connection to the billboardserver database
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails; the migrations before it stay applied
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        int applied = 0;
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(CREATE_SCHEMA_VERSION);
+            lock(connection);
+            try {
+                int version = currentVersion(statement);
+                for (Migration migration : MIGRATIONS) {
+                    //Skip the migrations this database already has
+                    if (migration.version <= version) {
+                        continue;
+                    }
+                    System.out.println("Migrating schema to version " + migration.version + ": " +
+                            migration.description);
+                    for (String sql : migration.statements) {
+                        statement.execute(sql);
+                    }
+                    //Record the migration so it is not applied again
+                    PreparedStatement insert = connection.prepareStatement(INSERT_VERSION);
+                    insert.setInt(1, migration.version);
+                    insert.setString(2, migration.description);
+                    insert.executeUpdate();
+                    insert.close();
+                    applied++;
+                }
+            } finally {
+                unlock(connection);
+            }
+        } finally {
+            statement.close();
+        }
+        return applied;
+    }
+
+    /*
+     Returns the version of the last migration applied, or 0 for a new database.
+     */
+    private static int currentVersion(Statement statement) throws SQLException {
+        ResultSet result = statement.executeQuery(SELECT_VERSION);
+        int version = result.next() ? result.getInt(1) : 0;
+        result.close();
+        return version;
+    }
+
+    /*
+     Takes the migration lock, waiting for another server's migrations to finish.
+     */
+    private static void lock(Connection connection) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("SELECT GET_LOCK(?, ?)");
+        select.setString(1, LOCK_NAME);
+        select.setInt(2, LOCK_TIMEOUT_SECONDS);
+        ResultSet result = select.executeQuery();
+        boolean locked = result.next() && result.getInt(1) == 1;
+        result.close();
+        select.close();
+        if (!locked) {
+            throw new SQLTimeoutException("Timed out waiting for another server to migrate the schema");
+        }
+    }
+
+    /*
+     Releases the migration lock.
+     */
+    private static void unlock(Connection connection) throws SQLException {
+        PreparedStatement select = connection.prepareStatement("SELECT RELEASE_LOCK(?)");
+        select.setString(1, LOCK_NAME);
+        select.executeQuery().close();
+        select.close();
+    }
+}
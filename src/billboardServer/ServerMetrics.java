@@ -0,0 +1,66 @@
+package billboardServer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects the metrics published by the different parts of the BillboardServer
+ * (worker pool, command handlers and so on) and periodically prints them to
+ * the console. Each source registers a name and a supplier that returns a
+ * one line summary when a report is taken.
+ */
+public class ServerMetrics {
+    private static final Map<String, Supplier<String>> sources = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter;
+
+    /**
+     * Register (or replace) a source of metrics.
+     * @param name name printed in front of the metrics
+     * @param source supplier returning a one line summary
+     */
+    public static void register(String name, Supplier<String> source) {
+        sources.put(name, source);
+    }
+
+    /**
+     * Remove a source of metrics.
+     * @param name name the source was registered under
+     */
+    public static void unregister(String name) {
+        sources.remove(name);
+    }
+
+    /**
+     * Take a report of all registered sources, one source per line.
+     * @return the current metrics
+     */
+    public static String snapshot() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Supplier<String>> source : sources.entrySet()) {
+            report.append(source.getKey()).append(": ").append(source.getValue().get()).append('\n');
+        }
+        return report.toString();
+    }
+
+    /**
+     * Start printing a report every interval. Does nothing if the
+     * interval is not positive or reporting has already started.
+     * @param intervalSeconds seconds between reports
+     */
+    public static synchronized void startReporting(int intervalSeconds) {
+        if (intervalSeconds <= 0 || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "billboard-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.print(snapshot()), intervalSeconds, intervalSeconds,
+                TimeUnit.SECONDS);
+    }
+}
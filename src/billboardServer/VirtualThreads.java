@@ -0,0 +1,43 @@
+package billboardServer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads for the BillboardServer. Virtual threads were
+ * finalised in Java 21, while the server is still built for earlier JDKs, so
+ * the executor is looked up reflectively. On a JDK without virtual threads
+ * the lookup fails and the caller falls back to a platform thread pool.
+ */
+public class VirtualThreads {
+
+    /**
+     * Create an executor that starts a new virtual thread for every task.
+     * @return the executor, or null if virtual threads are not available
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            //Running on a JDK older than 19
+            return null;
+        } catch (InvocationTargetException ex) {
+            //Java 19 and 20 only offer virtual threads as a preview feature
+            System.out.println("Virtual threads unavailable: " + ex.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Ask the JDK to print a stack trace whenever a virtual thread blocks while
+     * pinned to its carrier thread. Must be called before the first virtual
+     * thread is created, as the JDK reads the setting once.
+     * @param mode "short" for the frames holding monitors, or "full"
+     */
+    public static void tracePinnedThreads(String mode) {
+        System.setProperty("jdk.tracePinnedThreads", mode);
+    }
+}
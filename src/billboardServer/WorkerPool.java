@@ -0,0 +1,120 @@
+package billboardServer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of worker threads used by the BillboardServer to action
+ * requests from the Control Panel and the Viewer concurrently. Accepted
+ * connections are queued until a worker is free. Once both the workers and
+ * the queue are full, further connections are rejected rather than queued
+ * indefinitely, so an overloaded server sheds load instead of running out
+ * of memory. The pool keeps counters that are reported through ServerMetrics.
+ */
+public class WorkerPool {
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates a new pool with a fixed number of workers and a bounded queue.
+     * @param threads number of worker threads
+     * @param queueCapacity number of connections that may wait for a worker
+     */
+    public WorkerPool(int threads, int queueCapacity) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Worker pool needs at least one thread and one queue slot");
+        }
+        this.queueCapacity = queueCapacity;
+        //AbortPolicy makes execute() throw when saturated, which submit() counts
+        //as a rejection.
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue a task to be run by the next free worker.
+     * @param task the task to run
+     * @return true if the task was accepted, false if the pool is saturated
+     */
+    public boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting for a worker.
+     * @return current queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of workers currently actioning a request.
+     * @return active worker count
+     */
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of tasks rejected because the pool was saturated.
+     * @return rejected task count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Returns the number of tasks that have finished running.
+     * @return completed task count
+     */
+    public long getCompletedCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Stop accepting tasks and let queued tasks finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns a one line summary of the pool counters.
+     * @return pool metrics
+     */
+    @Override
+    public String toString() {
+        return "active=" + getActiveWorkers() + "/" + executor.getMaximumPoolSize() +
+                " queued=" + getQueueDepth() + "/" + queueCapacity +
+                " rejected=" + getRejectedCount() +
+                " completed=" + getCompletedCount();
+    }
+
+    /*
+     Names worker threads so they can be told apart in thread dumps.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "billboard-worker-" + count.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
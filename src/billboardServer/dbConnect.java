@@ -2,76 +2,79 @@ package billboardServer;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
 /**
- * dbConnect reads a db.props file and creates a Connection
- * object to the SQL database. Every function in the BillboardServer
- * opens and closes a Connection object to the database, handled by
- * dbConnect.
+ * dbConnect hands out Connection objects to the SQL database. Every
+ * function in the BillboardServer takes a Connection from dbConnect and
+ * closes it when done. Connections come from a ConnectionPool configured
+ * once from the db.props file, and closing one returns it to the pool.
+ *
+ * A connection can also be bound to the current thread, so that a batch
+ * of requests shares it: while bound, getInstance() returns it and
+ * closeConnection() leaves it open until it is unbound.
  */
 public class dbConnect {
 
-    private Connection instance = null;
+    private static final ThreadLocal<Connection> bound = new ThreadLocal<>();
+    private static ConnectionPool pool;
 
     /**
-     * Reads the db.props file and creates a
-     * Connection session with the database schema specified
-     * in db.props
+     * Returns the connection pool, creating and starting it from the db.props
+     * file on first use. db.props is only read once.
+     * @return the connection pool, or null if db.props cannot be read
      */
-    public dbConnect() {
-        Properties props = new Properties();
-        FileInputStream in;
-
-        try {
-            //Read from db.props file and load contents
-            //into props object - will allow attribute
-            //assignment so a url can be generated.
-            in = new FileInputStream("./db.props");
-            props.load(in);
-            in.close();
-
-            //Assign attributes
-            String url = props.getProperty("jdbc.url");
-            String username = props.getProperty("jdbc.username");
-            String password = props.getProperty("jdbc.password");
-            String schema = props.getProperty("jdbc.schema");
-
-            //Use the JDBC drivers to establish a connect with MariaDB
-            instance = DriverManager.getConnection(url + "/" + schema + "?createDatabaseIfNotExist=true",
-                                                    username, password);
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            try {
+                //Read from db.props file and load contents
+                //into props object - will allow attribute
+                //assignment so a url can be generated.
+                Properties props = new Properties();
+                FileInputStream in = new FileInputStream("./db.props");
+                props.load(in);
+                in.close();
 
-        } catch (SQLException ex) {
-            System.out.println("Could not connect to MariaDB or find the designated schema.");
-        } catch (IOException ex) {
-            System.out.println(ex.toString());
+                pool = ConnectionPool.fromProperties(props);
+                pool.start();
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println(ex.toString());
+            }
         }
+        return pool;
     }
 
     /**
-     * Creates an instance of database connection.
-     * Static so only one connection to the database
-     * is present at a given time (singleton pattern).
-     * @return dbConnect object
+     * Takes a connection to the database from the pool.
+     * @return an open Connection, or null if MariaDB cannot be reached
      */
     public static Connection getInstance()  {
-        dbConnect db = new dbConnect();
-        if (db.instance == null) {
-            //create a new connection instance if it does not exist
-            new dbConnect();
+        //reuse the connection bound to this thread, if any
+        Connection connection = bound.get();
+        if (connection != null) {
+            return connection;
+        }
+        ConnectionPool connections = getPool();
+        if (connections == null) {
+            return null;
+        }
+        try {
+            //return the connection object
+            return connections.acquire();
+        } catch (SQLException ex) {
+            System.out.println("Could not connect to MariaDB or find the designated schema.");
+            return null;
         }
-        //return the connection object
-        return db.instance;
     }
 
     /**
-     * Close a provided connection instance
+     * Close a provided connection instance, returning it to the pool
      * @param instance the connection object used by the BillboardServer
      */
     public static void closeConnection(Connection instance) {
-        if (instance != null) {
+        //a bound connection stays open until it is unbound
+        if (instance != null && instance != bound.get()) {
             try {
                 //close the connection
                 instance.close();
@@ -80,4 +83,26 @@ public class dbConnect {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Open a connection and bind it to the current thread, so every request
+     * actioned on this thread uses it until unbind() is called.
+     * @return the bound connection, or null if the database cannot be reached
+     */
+    public static Connection bind() {
+        Connection connection = getInstance();
+        if (connection != null) {
+            bound.set(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Unbind the connection bound to the current thread and close it.
+     */
+    public static void unbind() {
+        Connection connection = bound.get();
+        bound.remove();
+        closeConnection(connection);
+    }
+}
@@ -0,0 +1,344 @@
+package billboardViewer;
+
+import helpers.BinaryCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of the content a viewer shows, so that it can start and
+ * keep running without the server and only download what has changed.
+ * Billboards are kept by ContentTag, which changes with every version of a
+ * billboard, alongside a few small entries such as the billboard last shown.
+ *
+ * Everything is kept in one file of records appended one after another:
+ * [magic][key length][value length][CRC32][key][value], with values in the
+ * BinaryCodec encoding and an end marker after the last record. The records
+ * are scanned once when the file is opened, stopping at the first one that
+ * is incomplete or does not match its checksum, and afterwards are read
+ * through a read-only memory mapping of the file.
+ *
+ * Replacing an entry appends a new record. Once the file would grow past its
+ * size budget the least recently used entries are evicted and the remaining
+ * records are moved down over the gaps, and the same is done without
+ * evicting once more of the file is replaced records than live ones. The file
+ * is never shortened, as a mapped file cannot be on every platform; the end
+ * marker says where the records stop.
+ */
+public class ContentCache implements AutoCloseable {
+    private static final int FILE_MAGIC = 0x42424331;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 5;
+    private static final int RECORD_MAGIC = 0x52454331;
+    //magic, key length, value length and CRC32
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final int END_MARKER = 0;
+
+    private final FileChannel channel;
+    private final long maxBytes;
+    //offset of each entry's record and its length, least recently used first
+    private final LinkedHashMap<String, long[]> index = new LinkedHashMap<>(16, 0.75f, true);
+    private MappedByteBuffer mapped;
+    //where the next record is written, and where the end marker is
+    private long end;
+    //bytes of the records still in the index
+    private long live;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long compactions;
+
+    /**
+     * Opens a cache file, creating it if it does not exist, and reads the
+     * index of the entries in it. A file that is not a cache is started again.
+     * @param file path of the cache file
+     * @param maxBytes size budget of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public ContentCache(Path file, long maxBytes) throws IOException {
+        this.maxBytes = Math.min(maxBytes, Integer.MAX_VALUE);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            load();
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Find an entry, marking it as recently used.
+     * @param key key of the entry
+     * @return the value stored, or null if there is none
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized String[] get(String key) throws IOException {
+        long[] record = index.get(key);
+        if (record == null) {
+            misses++;
+            return null;
+        }
+        try {
+            Object value = BinaryCodec.decode(valueBytes(record));
+            hits++;
+            return (String[]) value;
+        } catch (IOException | ClassCastException ex) {
+            //should not happen once the checksum has matched, but the entry is no use
+            remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether there is an entry for a key, without marking it as used.
+     * @param key key of the entry
+     * @return true if the key has an entry
+     */
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Store an entry, replacing any entry with the same key. Storing the same
+     * value again only marks the entry as recently used. A value too large
+     * for the size budget is not stored.
+     * @param key key of the entry
+     * @param value value to store
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void put(String key, String[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = BinaryCodec.encode(value);
+        long[] existing = index.get(key);
+        if (existing != null && Arrays.equals(valueBytes(existing), valueBytes)) {
+            return;
+        }
+        int length = RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length;
+        if (HEADER_BYTES + length + 4 > maxBytes) {
+            return;
+        }
+        if (existing != null) {
+            remove(key);
+        }
+
+        //Make room for the record, evicting down to three quarters of the budget
+        if (end + length + 4 > maxBytes) {
+            compact(maxBytes * 3 / 4 - length);
+        }
+
+        //Write the record followed by the end marker, which the next record overwrites
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        ByteBuffer record = ByteBuffer.allocate(length + 4);
+        record.putInt(RECORD_MAGIC).putInt(keyBytes.length).putInt(valueBytes.length).putInt((int) crc.getValue());
+        record.put(keyBytes).put(valueBytes).putInt(END_MARKER);
+        record.flip();
+        writeFully(record, end);
+        channel.force(false);
+        index.put(key, new long[]{end, length});
+        end += length;
+        live += length;
+
+        //Move the live records together once most of the file is replaced records
+        if (end - HEADER_BYTES - live > live) {
+            compact(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Close the cache file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /**
+     * Returns a one line summary of the cache.
+     * @return cache metrics
+     */
+    @Override
+    public synchronized String toString() {
+        return "entries=" + index.size() + " bytes=" + end + " live=" + live + " hits=" + hits +
+                " misses=" + misses + " evictions=" + evictions + " compactions=" + compactions;
+    }
+
+    /*
+     Read the index of the file's records, stopping at the first record that is
+     incomplete or damaged. A new or unrecognised file is started again.
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (size < HEADER_BYTES || channel.read(header, 0) < HEADER_BYTES ||
+                header.getInt(0) != FILE_MAGIC || header.get(4) != FORMAT_VERSION) {
+            header.clear();
+            header.putInt(FILE_MAGIC).put(FORMAT_VERSION).flip();
+            writeFully(header, 0);
+            end = HEADER_BYTES;
+            writeEndMarker();
+            return;
+        }
+
+        ByteBuffer file = map(size);
+        long position = HEADER_BYTES;
+        while (position + RECORD_HEADER_BYTES <= size) {
+            int at = (int) position;
+            if (file.getInt(at) != RECORD_MAGIC) {
+                break;
+            }
+            int keyLength = file.getInt(at + 4);
+            int valueLength = file.getInt(at + 8);
+            long length = (long) RECORD_HEADER_BYTES + keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || position + length > size) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            byte[] value = new byte[valueLength];
+            ByteBuffer body = file.duplicate();
+            body.position(at + RECORD_HEADER_BYTES);
+            body.get(key).get(value);
+            CRC32 crc = new CRC32();
+            crc.update(key);
+            crc.update(value);
+            if ((int) crc.getValue() != file.getInt(at + 12)) {
+                break;
+            }
+            //a later record for the same key replaces the earlier one
+            long[] replaced = index.put(new String(key, StandardCharsets.UTF_8), new long[]{position, length});
+            if (replaced != null) {
+                live -= replaced[1];
+            }
+            live += length;
+            position += length;
+        }
+        end = position;
+        //Anything after the last good record is ignored from now on
+        writeEndMarker();
+        if (end > maxBytes || end - HEADER_BYTES - live > live) {
+            compact(maxBytes * 3 / 4);
+        }
+    }
+
+    /*
+     Evict the least recently used entries until the live records fit in the
+     given number of bytes, then move the remaining records down over the
+     gaps in file order. A record is only ever moved towards the start of the
+     file, so it is never overwritten before it has been copied.
+     */
+    private void compact(long target) throws IOException {
+        compactions++;
+        Iterator<Map.Entry<String, long[]>> eldest = index.entrySet().iterator();
+        while (live > target && eldest.hasNext()) {
+            live -= eldest.next().getValue()[1];
+            eldest.remove();
+            evictions++;
+        }
+
+        List<long[]> records = new ArrayList<>(index.values());
+        records.sort(Comparator.comparingLong(record -> record[0]));
+        long position = HEADER_BYTES;
+        for (long[] record : records) {
+            if (record[0] != position) {
+                ByteBuffer bytes = ByteBuffer.allocate((int) record[1]);
+                readFully(bytes, record[0]);
+                bytes.flip();
+                writeFully(bytes, position);
+                //the index holds the same arrays, so this moves the entry
+                record[0] = position;
+            }
+            position += record[1];
+        }
+        end = position;
+        writeEndMarker();
+        mapped = null;
+    }
+
+    /*
+     Remove an entry from the index, leaving its record as a gap in the file.
+     */
+    private void remove(String key) {
+        long[] record = index.remove(key);
+        if (record != null) {
+            live -= record[1];
+        }
+    }
+
+    /*
+     Read an entry's value through the mapping of the file, mapping the file
+     again if the record was written after it was last mapped.
+     */
+    private byte[] valueBytes(long[] record) throws IOException {
+        long recordEnd = record[0] + record[1];
+        if (mapped == null || mapped.capacity() < recordEnd) {
+            mapped = map(end);
+        }
+        int at = (int) record[0];
+        int keyLength = mapped.getInt(at + 4);
+        byte[] value = new byte[mapped.getInt(at + 8)];
+        ByteBuffer body = mapped.duplicate();
+        body.position(at + RECORD_HEADER_BYTES + keyLength);
+        body.get(value);
+        return value;
+    }
+
+    /*
+     Map the first bytes of the file for reading.
+     */
+    private MappedByteBuffer map(long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /*
+     Write the end marker after the last record, so the records are not read
+     past it when the file is next opened.
+     */
+    private void writeEndMarker() throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(4);
+        marker.putInt(END_MARKER).flip();
+        writeFully(marker, end);
+        channel.force(false);
+    }
+
+    /*
+     Write all of a buffer to the file at a position.
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /*
+     Fill a buffer from the file at a position.
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Cache file ends inside a record");
+            }
+            position += read;
+        }
+    }
+}
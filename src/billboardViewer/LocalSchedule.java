@@ -0,0 +1,227 @@
+package billboardViewer;
+
+import billboardControlPanel.Billboard;
+import helpers.ContentTag;
+import helpers.ScheduleEntry;
+import helpers.ScheduleIndex;
+import helpers.ScheduleLookup;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The viewer's own copy of the weekly schedule and of every billboard it
+ * shows, kept up to date from RECEIVE_SCHEDULE responses. The billboard
+ * showing at any time is worked out locally, by the same ScheduleIndex the
+ * server uses, so the viewer keeps showing the right billboard while the
+ * server cannot be reached.
+ */
+public class LocalSchedule {
+    //shown when nothing is scheduled, as on the server
+    private static final String DEFAULT_BB = "1";
+
+    private String version;
+    private Map<Integer, ScheduleEntry> entries = new HashMap<>();
+    private Map<String, Billboard> billboards = new HashMap<>();
+    //ContentTag of each billboard held, by billboardID
+    private Map<String, String> tags = new HashMap<>();
+    private ScheduleIndex index = new ScheduleIndex(Collections.emptyList());
+    private TimeZone zone = TimeZone.getDefault();
+
+    /**
+     * Bring the schedule up to date with a RECEIVE_SCHEDULE response: either
+     * the whole schedule or the entries added and removed since the version
+     * held, along with every billboard the schedule shows. Nothing is changed
+     * if the response cannot be applied.
+     * @param response RECEIVE_SCHEDULE response
+     * @throws IOException if the response is malformed or refers to a
+     *                     billboard that is not held
+     */
+    public synchronized void apply(Object[] response) throws IOException {
+        try {
+            boolean full = (Boolean) response[1];
+            Map<Integer, ScheduleEntry> updated = full ? new HashMap<>() : new HashMap<>(entries);
+            for (String scheduleID : (String[]) response[3]) {
+                updated.remove(Integer.parseInt(scheduleID));
+            }
+            for (Object fields : (Object[]) response[2]) {
+                ScheduleEntry entry = ScheduleEntry.fromFields((String[]) fields);
+                updated.put(entry.getScheduleID(), entry);
+            }
+
+            //Keep the billboards still held, and build the ones sent in full. The server sends only the tag of
+            //any billboard whose tag the viewer holds, which may be held under another billboardID, such as
+            //when a billboard is deleted and made again
+            Map<String, Billboard> held = new HashMap<>();
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                held.put(tag.getValue(), billboards.get(tag.getKey()));
+            }
+            Map<String, Billboard> updatedBillboards = new HashMap<>();
+            Map<String, String> updatedTags = new HashMap<>();
+            @SuppressWarnings("unchecked")
+            Map<String, String[]> sent = (Map<String, String[]>) response[4];
+            for (Map.Entry<String, String[]> billboard : sent.entrySet()) {
+                String billboardID = billboard.getKey();
+                String[] info = billboard.getValue();
+                if (info.length == 1) {
+                    Billboard heldBillboard = held.get(info[0]);
+                    if (heldBillboard == null) {
+                        throw new IOException("Billboard " + billboardID + " is not held");
+                    }
+                    updatedBillboards.put(billboardID, heldBillboard);
+                    updatedTags.put(billboardID, info[0]);
+                } else {
+                    Billboard parsed = parse(info);
+                    //a billboard that cannot be parsed is not held, so it is sent again next time
+                    if (parsed != null) {
+                        updatedBillboards.put(billboardID, parsed);
+                        updatedTags.put(billboardID, ContentTag.of(info));
+                    }
+                }
+            }
+
+            version = (String) response[0];
+            entries = updated;
+            billboards = updatedBillboards;
+            tags = updatedTags;
+            index = new ScheduleIndex(updated.values());
+            zone = TimeZone.getTimeZone((String) response[5]);
+        } catch (ClassCastException | NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Malformed schedule", ex);
+        }
+    }
+
+    /**
+     * Returns the version of the schedule held.
+     * @return the version, or null if no schedule has been received
+     */
+    public synchronized String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the ContentTags of every billboard held, to send with the next
+     * request so they are not sent again.
+     * @return the tags
+     */
+    public synchronized List<String> getHeldTags() {
+        return new ArrayList<>(tags.values());
+    }
+
+    /**
+     * Find the billboard showing at a time.
+     * @param millis the time, in milliseconds since the epoch
+     * @return the billboard, or null if it is not held
+     */
+    public synchronized Billboard showingAt(long millis) {
+        int showing = index.billboardAt(ScheduleLookup.minuteOfWeek(millis, zone));
+        String billboardID = showing == ScheduleLookup.NOTHING_SCHEDULED ? DEFAULT_BB : String.valueOf(showing);
+        return billboards.get(billboardID);
+    }
+
+    /**
+     * Find when a different billboard is next scheduled after a time.
+     * @param millis the time, in milliseconds since the epoch
+     * @return the time of the change in milliseconds since the epoch, or
+     *         Long.MAX_VALUE if the scheduled billboard never changes
+     */
+    public synchronized long nextChange(long millis) {
+        int minutes = index.minutesUntilChange(ScheduleLookup.minuteOfWeek(millis, zone));
+        if (minutes >= ScheduleLookup.MINUTES_PER_WEEK) {
+            return Long.MAX_VALUE;
+        }
+        //changes happen at the start of a minute
+        return millis - millis % 60_000 + minutes * 60_000L;
+    }
+
+    /**
+     * Returns the number of schedule entries held.
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the schedule held as an array of strings, to be kept in the
+     * viewer's ContentCache: the version, the time zone, the number of entries,
+     * the fields of each entry, then the billboardID and ContentTag of each
+     * billboard held. The billboards themselves are cached by tag.
+     * @return the schedule, or null if no schedule has been received
+     */
+    public synchronized String[] toState() {
+        if (version == null) {
+            return null;
+        }
+        List<String> state = new ArrayList<>();
+        state.add(version);
+        state.add(zone.getID());
+        state.add(String.valueOf(entries.size()));
+        for (ScheduleEntry entry : entries.values()) {
+            state.addAll(Arrays.asList(entry.toFields()));
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            state.add(tag.getKey());
+            state.add(tag.getValue());
+        }
+        return state.toArray(new String[0]);
+    }
+
+    /**
+     * Replace the schedule held with one kept by toState, so a viewer can start
+     * without the server. Billboards that cannot be found are left out, and
+     * are sent in full by the server at the next poll.
+     * @param state the schedule, as returned by toState
+     * @param billboardByTag finds a billboard by its ContentTag, as a
+     *                       RECEIVE_BB response, returning null if it is not kept
+     * @throws IOException if the state is malformed
+     */
+    public synchronized void restore(String[] state, Function<String, String[]> billboardByTag) throws IOException {
+        try {
+            int count = Integer.parseInt(state[2]);
+            int fields = ScheduleEntry.FIELD_COUNT;
+            Map<Integer, ScheduleEntry> restored = new HashMap<>();
+            int at = 3;
+            for (int i = 0; i < count; i++, at += fields) {
+                ScheduleEntry entry = ScheduleEntry.fromFields(Arrays.copyOfRange(state, at, at + fields));
+                restored.put(entry.getScheduleID(), entry);
+            }
+            Map<String, Billboard> restoredBillboards = new HashMap<>();
+            Map<String, String> restoredTags = new HashMap<>();
+            for (; at + 1 < state.length; at += 2) {
+                String[] info = billboardByTag.apply(state[at + 1]);
+                Billboard parsed = info == null ? null : parse(info);
+                if (parsed != null) {
+                    restoredBillboards.put(state[at], parsed);
+                    restoredTags.put(state[at], state[at + 1]);
+                }
+            }
+
+            version = state[0];
+            zone = TimeZone.getTimeZone(state[1]);
+            entries = restored;
+            billboards = restoredBillboards;
+            tags = restoredTags;
+            index = new ScheduleIndex(restored.values());
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Malformed schedule", ex);
+        }
+    }
+
+    /*
+     Construct a billboard from its name, creator and XML, or return null if
+     the XML cannot be parsed.
+     */
+    private static Billboard parse(String[] info) {
+        if (info.length < 3) {
+            return null;
+        }
+        try {
+            return Billboard.constructFromXML(info[1], info[2], info[0]);
+        } catch (IOException | SAXException ex) {
+            return null;
+        }
+    }
+}
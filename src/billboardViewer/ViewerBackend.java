@@ -1,26 +1,98 @@
 package billboardViewer;
 
 import billboardControlPanel.Billboard;
+import helpers.ContentTag;
+import helpers.ServerConnection;
 import org.xml.sax.SAXException;
 
 import javax.swing.*;
 import java.io.*;
-import java.net.Socket;
-import java.util.Arrays;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import static helpers.Constants.NOT_MODIFIED;
+import static helpers.Constants.RECEIVE_BB;
+import static helpers.Constants.RECEIVE_BB_NEXT;
+import static helpers.Constants.RECEIVE_SCHEDULE;
+import static helpers.Constants.SUBSCRIBE_BB;
+
 /**
- * The ViewerBackend handles the 15 second ping that requests the
- * currently scheduled billboard from the server. The retrieved
- * billboard is then passed to the ViewerGUI for display.
+ * The ViewerBackend handles the ping that requests the currently scheduled
+ * billboard from the server. The retrieved billboard is then passed to the
+ * ViewerGUI for display. The server says when to poll again with each
+ * response: when the scheduled billboard next changes, or after its
+ * maximum staleness setting if that is sooner. A random delay of up to
+ * "pollJitterMillis" is added so viewers do not all poll at the same moment.
+ * Without a server to ask, the viewer polls every 15 seconds.
+ * With "subscribe=true" in network.props (framed transport only), the
+ * viewer instead holds a subscription open and displays each billboard
+ * the server pushes when the schedule changes, polling only while the
+ * subscription is down.
+ * Each poll sends the ContentTag of the billboard on display, so the server
+ * only sends the billboard again if a different one is scheduled.
+ * With "prefetch=true" in network.props, each poll also fetches the billboard
+ * scheduled next and the time it starts. The next billboard is prepared in
+ * advance and shown by a local timer exactly when it is scheduled, rather
+ * than at the first poll after the change. This needs a server that
+ * understands RECEIVE_BB_NEXT.
+ * With "localSchedule=true" in network.props, the viewer instead keeps its
+ * own copy of the weekly schedule and of the billboards it shows (see
+ * LocalSchedule), works out the billboard showing itself and switches
+ * billboards on a local timer. Polls only fetch changes to the schedule, and
+ * the viewer keeps showing the right billboard while the server is down.
+ * Every billboard received, the billboard on display and the local schedule
+ * are kept in an on-disk ContentCache ("cacheFile" in network.props, empty
+ * to turn it off, limited to "cacheMaxBytes"). A viewer starts from the
+ * cache and keeps showing its billboard while the server cannot be reached,
+ * and the tags and schedule version it sends mean only billboards it does
+ * not have are downloaded.
  */
 public class ViewerBackend {
+    //billboards kept for reuse by tag: the one on display, the next one and the one before
+    private static final int HELD_BILLBOARDS = 3;
+    //milliseconds between polls when the server has not said when to poll again
+    private static final long DEFAULT_POLL = 15_000;
+    //cache keys: billboards by ContentTag, the tag of the billboard on display and the local schedule
+    private static final String CACHED_BILLBOARD = "bb:";
+    private static final String CACHED_SHOWING = "showing";
+    private static final String CACHED_SCHEDULE = "schedule";
+
     //declare global variables
     private Billboard displayNext;
+    //ContentTag of the billboard on display, null if an error is on display
+    private String displayedTag;
     private String host;
     private String port;
+    private ServerConnection connection;
+    private boolean subscribe;
+    private boolean prefetch;
+    private boolean localSchedule;
+    private final LocalSchedule schedule = new LocalSchedule();
+    //null if the cache is turned off or cannot be opened
+    private ContentCache cache;
     private ViewerGui viewer;
+    //billboards received with prefetch on, by ContentTag, least recently used first
+    private final Map<String, Billboard> held = new LinkedHashMap<String, Billboard>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Billboard> eldest) {
+            return size() > HELD_BILLBOARDS;
+        }
+    };
+    private ScheduledExecutorService switcher;
+    private ScheduledFuture<?> pendingSwitch;
+    //milliseconds to wait before the next poll, as told by the server
+    private long checkAfter = DEFAULT_POLL;
+    private long pollJitter = 2000;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(
+            task -> new Thread(task, "billboard-poll"));
 
     /**
      * Constructs ViewerBackend.
@@ -34,68 +106,426 @@ public class ViewerBackend {
             in.close();
             host = props.getProperty("host");
             port = props.getProperty("port");
+            connection = ServerConnection.fromProperties(props);
+            subscribe = Boolean.parseBoolean(props.getProperty("subscribe", "false"));
+            prefetch = Boolean.parseBoolean(props.getProperty("prefetch", "false"));
+            localSchedule = Boolean.parseBoolean(props.getProperty("localSchedule", "false"));
+            pollJitter = Long.parseLong(props.getProperty("pollJitterMillis", String.valueOf(pollJitter)));
+            String cacheFile = props.getProperty("cacheFile", "./viewer-cache.dat");
+            long cacheMaxBytes = Long.parseLong(props.getProperty("cacheMaxBytes", "67108864"));
+            if (!cacheFile.isEmpty()) {
+                openCache(cacheFile, cacheMaxBytes);
+            }
 
+        } catch (NumberFormatException e) {
+            //leave the connection unset, receiveBillboard() shows the props error
         } catch (IOException e) {
             displayNext = propsError();
             viewer = new ViewerGui(displayNext, false);
             SwingUtilities.invokeLater(viewer);
         }
-        displayNext = this.receiveBillboard();
+        restoreFromCache();
+        displayNext = this.poll();
         viewer = new ViewerGui(displayNext, false);
         SwingUtilities.invokeLater(viewer);
     }
 
     /*
-     Function to receive the current billboard from the Server.
+     Function to receive the current billboard in whichever way the viewer is
+     configured to.
+     */
+    private Billboard poll() {
+        if (localSchedule) {
+            return receiveSchedule();
+        }
+        return prefetch ? receiveBillboardAhead() : receiveBillboard();
+    }
+
+    /*
+     Function to show a billboard. The display is only changed on the event
+     dispatch thread, as billboards are shown by the poll and the switch timer.
+     */
+    private void show(Billboard billboard) {
+        SwingUtilities.invokeLater(() -> viewer.updateViewer(billboard));
+    }
+
+    /*
+     Function to receive the current billboard from the Server. Returns the
+     billboard already on display if the server says it has not changed.
      */
     private Billboard receiveBillboard() {
 
-        //declare a string array to store the billboard information
-        String[] billboard_info;
+        if (connection == null) {
+            return propsError();
+        }
         try {
+            //Send an array of "Receive_BB" -- describes to server what action must be taken --
+            //along with the tag of the billboard on display, null if none
+            Object response = connection.sendReceive(new Object[]{RECEIVE_BB, displayedTag});
+            checkAfter = DEFAULT_POLL;
+            //The billboard comes with when to poll again, except from servers that do not send it
+            if (response instanceof Object[] && !(response instanceof String[])) {
+                Object[] parts = (Object[]) response;
+                checkAfter = (Long) parts[1];
+                response = parts[0];
+            }
+            if (NOT_MODIFIED.equals(response)) {
+                return displayNext;
+            }
+            //serialise the response into a string array
+            displayNext = constructBillboard((String[]) response);
 
-            //Create new socket instance with host and port
-            Socket socket = new Socket(host, Integer.parseInt(port));
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            checkAfter = DEFAULT_POLL;
+            return keepShowingOrError();
+        }
+        return displayNext;
+    }
 
-            //Create output stream and output object stream to
-            //send request information to the server.
-            OutputStream stream_receive_bb = socket.getOutputStream();
-            ObjectOutputStream oos_create_user = new ObjectOutputStream(stream_receive_bb);
+    /*
+     Function to receive the current billboard and the billboard scheduled
+     after it from the Server, and set the timer that switches to the next
+     billboard when it starts. Billboards already held are sent by the server
+     as their tag only.
+     */
+    private synchronized Billboard receiveBillboardAhead() {
+        if (connection == null) {
+            return propsError();
+        }
+        try {
+            //Send the tags of every billboard held, so none of them is sent again
+            Object[] request = new Object[1 + held.size()];
+            request[0] = RECEIVE_BB_NEXT;
+            int i = 1;
+            for (String tag : held.keySet()) {
+                request[i++] = tag;
+            }
+            Object[] response = (Object[]) connection.sendReceive(request);
+            Billboard current = resolve(response[0]);
+            Billboard upcoming = resolve(response[1]);
+            if (current == null || (response[1] != null && upcoming == null)) {
+                //A tag of a billboard no longer held, ask again for both in full
+                held.clear();
+                return receiveBillboardAhead();
+            }
+            displayNext = current;
+            displayedTag = tagOf(response[0]);
+            store(CACHED_SHOWING, new String[]{displayedTag});
+            checkAfter = response.length > 4 ? (Long) response[4] : DEFAULT_POLL;
 
-            //Send an array of "Receive_BB" -- describes to server what action must be taken.
-            oos_create_user.writeObject(new Object[]{"RECEIVE_BB"});
+            //Switch to the next billboard when it starts, measured on the server's clock
+            if (pendingSwitch != null) {
+                pendingSwitch.cancel(false);
+                pendingSwitch = null;
+            }
+            long changeAt = (Long) response[2];
+            if (upcoming != null && changeAt != Long.MAX_VALUE) {
+                long delay = Math.max(0, changeAt - (Long) response[3]);
+                String upcomingTag = tagOf(response[1]);
+                //draw the next billboard now, so it is ready the moment it starts
+                if (viewer != null) {
+                    viewer.prepare(upcoming);
+                }
+                pendingSwitch = switcher().schedule(() -> switchTo(upcoming, upcomingTag), delay,
+                        TimeUnit.MILLISECONDS);
+            }
 
-            //Create input stream to receive from the server
-            InputStream inputStream = socket.getInputStream();
-            ObjectInputStream ois = new ObjectInputStream(inputStream);
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            //any switch already set still shows the next billboard when it starts
+            checkAfter = DEFAULT_POLL;
+            return keepShowingOrError();
+        }
+        return displayNext;
+    }
 
-            //serialise the bytes received from the server into a string array
-            billboard_info = (String[]) ois.readObject();
+    /*
+     Function to bring the local schedule up to date with the Server and show
+     the billboard it says is showing now. Billboards already held are sent
+     by the server as their tag only. If the server cannot be reached, the
+     schedule already held is used.
+     */
+    private synchronized Billboard receiveSchedule() {
+        if (connection == null) {
+            return propsError();
+        }
+        try {
+            //Send the version of the schedule held and the tags of every billboard held
+            List<String> heldTags = schedule.getHeldTags();
+            Object[] request = new Object[2 + heldTags.size()];
+            request[0] = RECEIVE_SCHEDULE;
+            request[1] = schedule.getVersion();
+            for (int i = 0; i < heldTags.size(); i++) {
+                request[2 + i] = heldTags.get(i);
+            }
+            Object response = connection.sendReceive(request);
+            //the server sends an error message if it cannot read the schedule
+            if (!(response instanceof Object[]) || response instanceof String[]) {
+                throw new IOException("Schedule not available from server");
+            }
+            Object[] parts = (Object[]) response;
+            schedule.apply(parts);
+            checkAfter = (Long) parts[6];
 
-            //close sockets once completed
-            oos_create_user.close();
-            socket.close();
+            //Keep the billboards sent in full and the schedule for the next start
+            @SuppressWarnings("unchecked")
+            Map<String, String[]> sent = (Map<String, String[]>) parts[4];
+            for (String[] billboard_info : sent.values()) {
+                String tag = ContentTag.of(billboard_info);
+                if (tag != null) {
+                    store(CACHED_BILLBOARD + tag, billboard_info);
+                }
+            }
+            store(CACHED_SCHEDULE, schedule.toState());
 
-            //assign the received billboard information
-            String receivedName = billboard_info[0];
-            String receivedCreator = billboard_info[1];
-            String receivedXML = billboard_info[2];
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            System.out.println("Unable to update the schedule: " + ex.getMessage());
+            checkAfter = DEFAULT_POLL;
+            if (schedule.getVersion() == null) {
+                displayNext = serverError();
+                displayedTag = null;
+                return displayNext;
+            }
+        }
+        return showScheduled();
+    }
 
-            try {
-                //Construct a new billboard object
-                displayNext = Billboard.constructFromXML(receivedCreator, receivedXML, receivedName);
-            } catch (IOException | SAXException e) {
-                displayNext = xmlError();
+    /*
+     Function to find the billboard showing now in the local schedule, and set
+     the timer that shows the next one when the schedule says it starts.
+     */
+    private synchronized Billboard showScheduled() {
+        long now = System.currentTimeMillis();
+        Billboard showing = schedule.showingAt(now);
+        displayNext = showing == null ? xmlError() : showing;
+        displayedTag = null;
+
+        if (pendingSwitch != null) {
+            pendingSwitch.cancel(false);
+            pendingSwitch = null;
+        }
+        long changeAt = schedule.nextChange(now);
+        if (changeAt != Long.MAX_VALUE) {
+            Billboard upcoming = schedule.showingAt(changeAt);
+            if (viewer != null && upcoming != null) {
+                viewer.prepare(upcoming);
             }
+            pendingSwitch = switcher().schedule(() -> show(showScheduled()), changeAt - now,
+                    TimeUnit.MILLISECONDS);
+        }
+        return displayNext;
+    }
 
+    /*
+     Function to find the billboard for part of a RECEIVE_BB_NEXT response:
+     a held billboard if the server sent its tag, otherwise the billboard
+     sent, which is constructed and held. Returns null if there is no
+     billboard or the tag is not held.
+     */
+    private Billboard resolve(Object part) {
+        if (part instanceof String) {
+            Billboard billboard = held.get(part);
+            //a billboard held in an earlier run is found in the cache
+            if (billboard == null) {
+                String[] billboard_info = cached(CACHED_BILLBOARD + part);
+                billboard = billboard_info == null ? null : parseBillboard(billboard_info);
+                if (billboard != null) {
+                    held.put((String) part, billboard);
+                }
+            }
+            return billboard;
+        }
+        if (!(part instanceof String[])) {
+            return null;
+        }
+        String[] billboard_info = (String[]) part;
+        String tag = ContentTag.of(billboard_info);
+        Billboard billboard = parseBillboard(billboard_info);
+        if (billboard == null) {
+            return xmlError();
+        }
+        if (tag != null) {
+            held.put(tag, billboard);
+            store(CACHED_BILLBOARD + tag, billboard_info);
+        }
+        return billboard;
+    }
+
+    /*
+     Function to find the tag of part of a RECEIVE_BB_NEXT response.
+     */
+    private static String tagOf(Object part) {
+        return part instanceof String ? (String) part : ContentTag.of((String[]) part);
+    }
+
+    /*
+     Function run by the switch timer to show the next billboard when it starts.
+     */
+    private synchronized void switchTo(Billboard billboard, String tag) {
+        pendingSwitch = null;
+        displayNext = billboard;
+        displayedTag = tag;
+        store(CACHED_SHOWING, new String[]{tag});
+        System.out.println("switching to next billboard");
+        show(billboard);
+    }
+
+    /*
+     Function to return the timer that switches to the next billboard, starting it on first use.
+     */
+    private ScheduledExecutorService switcher() {
+        if (switcher == null) {
+            switcher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "billboard-switch");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return switcher;
+    }
+
+    /*
+     Function to hold a subscription to the current billboard open, displaying
+     each billboard the server pushes. Returns when the subscription ends;
+     subscribing is given up if the server answers without holding it open.
+     */
+    private void subscribeToBillboards() {
+        try {
+            connection.subscribe(new Object[]{SUBSCRIBE_BB}, response -> {
+                System.out.println("billboard received from server");
+                show(constructBillboard((String[]) response));
+            });
+            System.out.println("Server does not hold subscriptions, polling instead");
+            subscribe = false;
         } catch (IOException | ClassNotFoundException ex) {
-            displayNext = serverError();
-        } catch (NumberFormatException e){
-            displayNext = propsError();
+            System.out.println("Subscription to server lost, polling until it is restored");
+        }
+    }
+
+    /*
+     Function to construct a billboard from the server's response, and
+     remember its tag for the next poll.
+     */
+    private Billboard constructBillboard(String[] billboard_info) {
+        displayNext = parseBillboard(billboard_info);
+        displayedTag = displayNext == null ? null : ContentTag.of(billboard_info);
+        if (displayNext == null) {
+            displayNext = xmlError();
+        } else {
+            store(CACHED_BILLBOARD + displayedTag, billboard_info);
+            store(CACHED_SHOWING, new String[]{displayedTag});
         }
         return displayNext;
     }
 
+    /*
+     Function to use when the server cannot be reached: keep showing the
+     billboard on display if the cache is on, otherwise show the server error.
+     */
+    private Billboard keepShowingOrError() {
+        if (cache != null && displayedTag != null) {
+            System.out.println("Unable to reach server, still showing the last billboard received");
+            return displayNext;
+        }
+        displayNext = serverError();
+        displayedTag = null;
+        return displayNext;
+    }
+
+    /*
+     Function to open the content cache, running without it if it cannot be opened.
+     */
+    private void openCache(String cacheFile, long cacheMaxBytes) {
+        try {
+            cache = new ContentCache(Paths.get(cacheFile), cacheMaxBytes);
+            System.out.println("content cache opened: " + cache);
+        } catch (IOException ex) {
+            System.out.println("Unable to open content cache, running without it: " + ex.getMessage());
+        }
+    }
+
+    /*
+     Function to start from the cache: the local schedule if the viewer keeps
+     one, otherwise the billboard last on display. Its tag is sent with the
+     first poll, so the server does not send it again if it is still showing.
+     */
+    private void restoreFromCache() {
+        if (cache == null) {
+            return;
+        }
+        if (localSchedule) {
+            String[] state = cached(CACHED_SCHEDULE);
+            if (state != null) {
+                try {
+                    schedule.restore(state, tag -> cached(CACHED_BILLBOARD + tag));
+                } catch (IOException ex) {
+                    System.out.println("Unable to restore cached schedule: " + ex.getMessage());
+                }
+            }
+            return;
+        }
+        String[] showing = cached(CACHED_SHOWING);
+        String[] billboard_info = showing == null ? null : cached(CACHED_BILLBOARD + showing[0]);
+        Billboard billboard = billboard_info == null ? null : parseBillboard(billboard_info);
+        if (billboard != null) {
+            displayNext = billboard;
+            displayedTag = showing[0];
+            held.put(displayedTag, billboard);
+        }
+    }
+
+    /*
+     Function to find an entry in the cache, returning null if there is none
+     or the cache is off or cannot be read.
+     */
+    private String[] cached(String key) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.get(key);
+        } catch (IOException ex) {
+            System.out.println("Unable to read content cache: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     Function to store an entry in the cache if it is on. The viewer carries on
+     without storing it if the cache cannot be written.
+     */
+    private void store(String key, String[] value) {
+        if (cache == null || value == null) {
+            return;
+        }
+        try {
+            cache.put(key, value);
+        } catch (IOException ex) {
+            System.out.println("Unable to write content cache: " + ex.getMessage());
+        }
+    }
+
+    /*
+     Function to construct a billboard object from the server's response.
+     Returns null if the XML cannot be parsed, or the server sent an error
+     message instead of a billboard.
+     */
+    private static Billboard parseBillboard(String[] billboard_info) {
+        if (billboard_info.length < 3) {
+            return null;
+        }
+        //assign the received billboard information
+        String receivedName = billboard_info[0];
+        String receivedCreator = billboard_info[1];
+        String receivedXML = billboard_info[2];
+
+        try {
+            //Construct a new billboard object
+            return Billboard.constructFromXML(receivedCreator, receivedXML, receivedName);
+        } catch (IOException | SAXException e) {
+            return null;
+        }
+    }
+
 
     //returns a billboard containing an error message for use when the Viewer cannot connect to the server
     private static Billboard serverError(){
@@ -128,25 +558,38 @@ public class ViewerBackend {
         return error;
     }
 
+    /*
+     Function run on the poll thread: hold the subscription open if configured
+     to, then schedule the next poll for when the server said to check again.
+     Each poll schedules the one after it.
+     */
+    private void scheduleNextPoll() {
+        //holds the subscription open for as long as the server does
+        if (subscribe && connection != null) {
+            subscribeToBillboards();
+        }
+        long delay = checkAfter + (pollJitter > 0 ? ThreadLocalRandom.current().nextLong(pollJitter + 1) : 0);
+        poller.schedule(() -> {
+            try {
+                //connects to server and retrieves current scheduled billboard
+                System.out.println("connecting to server");
+                show(poll());
+            } finally {
+                scheduleNextPoll();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
     /**
-     * Main method. Request a new billboard every 15 seconds.
+     * Main method. Subscribe to billboard changes if configured to, otherwise
+     * (or while the subscription is down) request a new billboard when the
+     * server says the scheduled billboard may have changed.
      * @param args argument for main
      */
     public static void main(String[] args) {
         ViewerBackend backend = new ViewerBackend();
 
-        //Loops gracefully ends when the GUI is closed with System.exit(), please ignore warning
-        while (true){
-            //waits 15 seconds
-            //connects to server and retrieves current scheduled billboard
-            try {
-                TimeUnit.SECONDS.sleep(15);
-                System.out.println("connecting to server");
-                backend.viewer.updateViewer(backend.receiveBillboard());
-            } catch (InterruptedException e) {
-                System.out.println("Error! Connection to server interrupted");
-                e.printStackTrace();
-            }
-        }
+        //The poll thread keeps running until the GUI is closed with System.exit()
+        backend.poller.execute(backend::scheduleNextPoll);
     }
 }
@@ -1,9 +1,8 @@
 package billboardViewer;
 
 import billboardControlPanel.Billboard;
-import helpers.MaxInfoFontSize;
+import helpers.FontFit;
 import helpers.gui;
-import helpers.stuffFromTheInternet.GraphicsUtilities;
 
 import javax.swing.*;
 import java.awt.*;
@@ -13,9 +12,17 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * handles the creation of the GUI for the billboard viewer application
+ *
+ * Billboards are laid out and drawn into an image on a background thread,
+ * including scaling the picture and finding font sizes, and the finished
+ * image is swapped onto the screen on the event dispatch thread, which only
+ * ever draws the image. The billboard scheduled next can be drawn in advance
+ * with prepare(), so it is on screen as soon as updateViewer() is called.
  * @author Oliver Patterson
  * @version 1.0
  */
@@ -58,6 +65,20 @@ public class ViewerGui extends JFrame implements Runnable{
     private Dimension case0b100Box;
     //Sets font family used by the viewer for any billboard text
     private final String CHOSEN_FONT = "Arial";
+    //draws every viewer's billboards, so the labels above are only used on this thread
+    private static final ExecutorService RENDERER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "billboard-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //finds font sizes for every viewer, keeping the sizes found for each billboard's text
+    private static final FontFit FONT_FIT = new FontFit();
+    //shows the image of the billboard on display
+    private final BillboardCanvas canvas = new BillboardCanvas();
+    //the billboard most recently asked to be shown, so older renders are not shown over it
+    private volatile Billboard requested;
+    //a billboard drawn in advance by prepare(), null if none
+    private volatile Prepared prepared;
 
     /**
      * Default constructor for full screen display of billboard, exit on click or escape
@@ -104,38 +125,140 @@ public class ViewerGui extends JFrame implements Runnable{
      * Handles initial creation of viewer (ie first displayed billboard on launch)
      */
     public void createAndShowViewer() {
-        add(createBillboardPanels());
-        repaint();
+        canvas.setPreferredSize(fullWidthFullHeight);
+        add(canvas);
         setVisible(true);
+        Billboard first = displayThis;
+        requested = first;
+        RENDERER.execute(() -> renderAndShow(first));
     }
 
     /**
-     * handles update of viewer to show any billboards after the initial billboard
+     * handles update of viewer to show any billboards after the initial billboard.
+     * Nothing is drawn again if the billboard is the one already on display, and
+     * a billboard drawn in advance by prepare() is shown straight away. Otherwise
+     * the billboard is drawn on the render thread and shown when it is ready.
+     * Called on the event dispatch thread.
      * @param newBillboard new billboard to display on viewer
      */
     public void updateViewer(Billboard newBillboard) {
+        if (newBillboard == displayThis) {
+            return;
+        }
         displayThis = newBillboard;
-        remove(populatedPanel);
-        add(createBillboardPanels());
-        revalidate();
-        repaint();
-        pack();
-        setVisible(true);
+        requested = newBillboard;
+        Prepared next = prepared;
+        if (next != null && next.billboard == newBillboard) {
+            canvas.swap(next.image);
+            return;
+        }
+        RENDERER.execute(() -> renderAndShow(newBillboard));
+    }
+
+    /**
+     * Draw a billboard in advance on the render thread, so that it can be shown
+     * without delay when updateViewer() is called with it, such as the billboard
+     * scheduled next. Replaces any billboard prepared before. May be called on any thread.
+     * @param billboard billboard that will be shown next
+     */
+    public void prepare(Billboard billboard) {
+        Prepared next = prepared;
+        if ((next != null && next.billboard == billboard) || billboard == displayThis) {
+            return;
+        }
+        RENDERER.execute(() -> prepared = new Prepared(billboard, render(billboard)));
+    }
+
+    /* Run on the render thread: draw a billboard and show it, unless another billboard has
+       been asked for since */
+    private void renderAndShow(Billboard billboard) {
+        if (billboard != requested) {
+            return;
+        }
+        Prepared next = prepared;
+        BufferedImage image = next != null && next.billboard == billboard ? next.image : render(billboard);
+        SwingUtilities.invokeLater(() -> {
+            if (billboard == requested) {
+                canvas.swap(image);
+            }
+        });
+    }
+
+    /* Run on the render thread: lay out the billboard's components at the size of the screen
+       and draw them into an image */
+    private BufferedImage render(Billboard billboard) {
+        JPanel panel = createBillboardPanels(billboard);
+        panel.setSize(fullWidthFullHeight);
+        layOut(panel);
+        BufferedImage image = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(fullWidthFullHeight.width,
+                        fullWidthFullHeight.height);
+        Graphics2D g = image.createGraphics();
+        try {
+            panel.printAll(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /* Lays out a container and everything in it. The panel is never added to the frame, so
+       it is not laid out by Swing */
+    private static void layOut(Container container) {
+        container.doLayout();
+        for (Component child : container.getComponents()) {
+            if (child instanceof Container) {
+                layOut((Container) child);
+            }
+        }
+    }
+
+    //A billboard drawn in advance and its image
+    private static final class Prepared {
+        private final Billboard billboard;
+        private final BufferedImage image;
+
+        private Prepared(Billboard billboard, BufferedImage image) {
+            this.billboard = billboard;
+            this.image = image;
+        }
+    }
+
+    //Shows the image of the billboard on display, swapped in whole on the event dispatch thread
+    private static class BillboardCanvas extends JComponent {
+        private static final long serialVersionUID = 1L;
+        private BufferedImage image;
+
+        //Replaces the image shown and repaints, on the event dispatch thread
+        private void swap(BufferedImage next) {
+            image = next;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (image == null) {
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, getWidth(), getHeight());
+            } else {
+                g.drawImage(image, 0, 0, null);
+            }
+        }
     }
 
     //Checks for billboard components, sets/clears bit for their presence and instantiates if they are.
-    private void checkAndSetFields(){
+    private void checkAndSetFields(Billboard billboard){
         //checking for message
-        if (displayThis.getMessage() != null) {
-            msgLabel.setText(displayThis.getMessage());
+        if (billboard.getMessage() != null) {
+            msgLabel.setText(billboard.getMessage());
             //Setting bit for message presence
             panelFlags |= (1 << MSG_BIT);
         } else {
             panelFlags &= ~(1 << MSG_BIT);
         }
         //checking for picture
-        if (displayThis.getPicture() != null) {
-            byte[] decoded = Base64.getDecoder().decode(displayThis.getPicture());
+        if (billboard.getPicture() != null) {
+            byte[] decoded = Base64.getDecoder().decode(billboard.getPicture());
             picture = new ImageIcon(decoded);
             //Setting bit for picture presence
             panelFlags |= (1 << PIC_BIT);
@@ -143,28 +266,28 @@ public class ViewerGui extends JFrame implements Runnable{
             panelFlags &= ~(1 << PIC_BIT);
         }
         //checking for information
-        if (displayThis.getInformation() != null) {
-            infLabel.setText(displayThis.getInformation());
+        if (billboard.getInformation() != null) {
+            infLabel.setText(billboard.getInformation());
             //Setting bit for information presence
             panelFlags |= (1 << INF_BIT);
         } else {
             panelFlags &= ~(1 << INF_BIT);
         }
         //Setting bg colour
-        if (displayThis.getBackgroundColour() != null) {
-            populatedPanel.setBackground(Color.decode(displayThis.getBackgroundColour()));
+        if (billboard.getBackgroundColour() != null) {
+            populatedPanel.setBackground(Color.decode(billboard.getBackgroundColour()));
         } else {
             populatedPanel.setBackground(Color.WHITE);
         }
         //setting msg font colour
-        if (displayThis.getMessageColour() != null) {
-            msgLabel.setForeground(Color.decode(displayThis.getMessageColour()));
+        if (billboard.getMessageColour() != null) {
+            msgLabel.setForeground(Color.decode(billboard.getMessageColour()));
         } else {
             msgLabel.setForeground(Color.BLACK);
         }
         //setting info font colour
-        if (displayThis.getInformationColour() != null) {
-            infLabel.setForeground(Color.decode(displayThis.getInformationColour()));
+        if (billboard.getInformationColour() != null) {
+            infLabel.setForeground(Color.decode(billboard.getInformationColour()));
         } else {
             infLabel.setForeground(Color.BLACK);
         }
@@ -172,7 +295,7 @@ public class ViewerGui extends JFrame implements Runnable{
 
     /* assembles a panel populated with present components and arranges them appropriately
        @return a JPanel with present components */
-    private JPanel createBillboardPanels() {
+    private JPanel createBillboardPanels(Billboard billboard) {
         populatedPanel = new JPanel();
         JLabel pic;
         int heightRemaining;
@@ -180,7 +303,7 @@ public class ViewerGui extends JFrame implements Runnable{
         BoxLayout layout = new BoxLayout(populatedPanel, BoxLayout.Y_AXIS);
         populatedPanel.setLayout(layout);
         populatedPanel.setPreferredSize(fullWidthFullHeight);
-        checkAndSetFields();
+        checkAndSetFields(billboard);
         //Assigning screen percentage and adding panels based on present elements
         switch (panelFlags) {
             /* nothing*/
@@ -257,7 +380,7 @@ public class ViewerGui extends JFrame implements Runnable{
         label.setPreferredSize(size);
         label.setMaximumSize(size);
         label.setOpaque(false);
-        /* GraphicsUtilities.getMaxFittingFontSize appears to give a pt value 1 higher than what will comfortably fit
+        /* FontFit.maxFittingSize (as GraphicsUtilities.getMaxFittingFontSize) appears to give a pt value 1 higher than what will comfortably fit
          * in all dimensions given, so we drop the outputted value by ptAdjustment. (this was found by incrementally
          * incrementing the value from 1 and will probably not work if the font is adjusted. a percentage value might be
          * better) */
@@ -277,7 +400,7 @@ public class ViewerGui extends JFrame implements Runnable{
         label.setPreferredSize(size);
         label.setMaximumSize(size);
         label.setOpaque(false);
-        /* MaxInfoFontSize.getMaxFittingFontSize appears to give a pt value 9 higher than what will comfortably fit
+        /* FontFit.maxWrappingSize (as MaxInfoFontSize.getMaxFittingFontSize) appears to give a pt value 9 higher than what will comfortably fit
          * in all dimensions given, so we drop the outputted value by ptAdjustment. (this was found by incrementally
          * incrementing the value from 1 and will probably not work if the font is adjusted. a percentage value might be
          * better */
@@ -313,27 +436,23 @@ public class ViewerGui extends JFrame implements Runnable{
         return label;
     }
 
-    /* Calls GraphicsUtilities.getMaxFittingFontSize to estimate message font size after it has been scaled.
+    /* Calls FontFit.maxFittingSize to estimate message font size after it has been scaled.
        Scaling a font with an affine transformation doesn't alter the font size so this is used instead to get
        something approximating what it would be. */
     private int calcMessageFontSize(Dimension size, String text) {
-        BufferedImage img = new BufferedImage(size.width, size.height, BufferedImage.SCALE_DEFAULT);
-        Graphics2D g = img.createGraphics();
-        return GraphicsUtilities.getMaxFittingFontSize(g, new Font(CHOSEN_FONT, Font.PLAIN, DEFAULT_FONT_SIZE),
-                text, size);
+        return FONT_FIT.maxFittingSize(new Font(CHOSEN_FONT, Font.PLAIN, DEFAULT_FONT_SIZE), text,
+                size.width, size.height);
     }
 
     //Returns the font size info string needs to be to fill the available area
     private int calcInfoFontSize(Dimension size, String text) {
-        BufferedImage img = new BufferedImage(size.width, size.height, BufferedImage.SCALE_DEFAULT);
-        Graphics2D g = img.createGraphics();
         Font font = new Font(CHOSEN_FONT, Font.PLAIN, 12);
         int maxInfoFontSize = messageFontSize-FONT_DIFF;
         int pt;
         if (isWhitespace(text)){
-            pt = MaxInfoFontSize.getMaxFittingFontSize(g, font, text, size.width, size.height, maxInfoFontSize);
+            pt = FONT_FIT.maxWrappingSize(font, text, size.width, size.height, maxInfoFontSize);
         } else {
-            pt = GraphicsUtilities.getMaxFittingFontSize(g, font, text, size.width, size.height);
+            pt = FONT_FIT.maxFittingSize(font, text, size.width, size.height);
             //ensure info is smaller than
             //Be
         }
@@ -0,0 +1,288 @@
+package helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of requests and responses, used on framed
+ * connections that set the FrameCodec.OPTION_BINARY preface option. It
+ * replaces Java serialisation, which writes class descriptors and uses
+ * reflection for every message.
+ *
+ * A request is encoded as:
+ *     [short opcode][byte argument count][value]...
+ * and a response as a single value. Every value starts with a one byte tag:
+ *     NULL
+ *     STRING        [int length][UTF-8 bytes]
+ *     BOOL          [byte 0 or 1]
+ *     INT           [int]
+ *     LONG          [long]
+ *     STRING_ARRAY  [int count][int length][UTF-8 bytes]...   (length -1 for null)
+ *     STRING_MAP    [int count]([string key][string array value])...
+ *     LIST          [int count][value]...
+ * Numbers are big-endian, as written by DataOutputStream.
+ */
+public class BinaryCodec {
+    public static final byte NULL = 0;
+    public static final byte STRING = 1;
+    public static final byte BOOL = 2;
+    public static final byte INT = 3;
+    public static final byte LONG = 4;
+    public static final byte STRING_ARRAY = 5;
+    public static final byte STRING_MAP = 6;
+    public static final byte LIST = 7;
+
+    /**
+     * Encode a request array. The first element is the request string, which
+     * is sent as its opcode. Arguments declared as booleans or integers in
+     * Opcodes are sent typed even if they were given as strings.
+     * @param message request array, the first element being the request type
+     * @return encoded request
+     * @throws IOException if the request is unknown, has more than 255
+     *                     arguments or an argument cannot be encoded
+     */
+    public static byte[] encodeRequest(Object[] message) throws IOException {
+        short opcode = Opcodes.forCommand((String) message[0]);
+        if (opcode < 0) {
+            throw new IOException("No opcode for request " + message[0]);
+        }
+        //the argument count is sent in a single unsigned byte
+        if (message.length - 1 > 0xFF) {
+            throw new IOException("Too many arguments for request " + message[0] + ": " + (message.length - 1));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(opcode);
+        out.writeByte(message.length - 1);
+        for (int i = 1; i < message.length; i++) {
+            writeValue(out, typed(message[i], Opcodes.argumentType(opcode, i - 1)));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a request into the same array a legacy client sends: the request
+     * string followed by the arguments. Typed arguments are left as Boolean or
+     * Integer objects.
+     * @param payload encoded request
+     * @return request array
+     * @throws IOException if the opcode is unknown or the request is malformed
+     */
+    public static Object[] decodeRequest(byte[] payload) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        try {
+            short opcode = in.getShort();
+            String command = Opcodes.command(opcode);
+            if (command == null) {
+                throw new IOException("Unknown opcode " + opcode);
+            }
+            Object[] message = new Object[1 + (in.get() & 0xFF)];
+            message[0] = command;
+            for (int i = 1; i < message.length; i++) {
+                message[i] = readValue(in);
+            }
+            return message;
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated request");
+        }
+    }
+
+    /**
+     * Encode a single value.
+     * @param value null, String, Boolean, Integer, Long, String[], a map of
+     *              String to String[], or an Object[] of these
+     * @return encoded value
+     * @throws IOException if the value is of a type that cannot be encoded
+     */
+    public static byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeValue(new DataOutputStream(bytes), value);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a single value.
+     * @param payload encoded value
+     * @return the value; maps are returned as a LinkedHashMap and lists as Object[]
+     * @throws IOException if the value is malformed
+     */
+    public static Object decode(byte[] payload) throws IOException {
+        try {
+            return readValue(ByteBuffer.wrap(payload));
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated value");
+        }
+    }
+
+    /*
+     Convert a string argument to the type declared for it, leaving it as a
+     string if it does not parse.
+     */
+    private static Object typed(Object value, char type) {
+        if (!(value instanceof String)) {
+            return value;
+        }
+        if (type == 'B') {
+            return Boolean.valueOf((String) value);
+        }
+        if (type == 'I') {
+            try {
+                return Integer.valueOf((String) value);
+            } catch (NumberFormatException ex) {
+                return value;
+            }
+        }
+        return value;
+    }
+
+    /*
+     Write a tagged value.
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOL);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof String[]) {
+            out.writeByte(STRING_ARRAY);
+            writeStringArray(out, (String[]) value);
+        } else if (value instanceof Map) {
+            out.writeByte(STRING_MAP);
+            Map<String, String[]> map = (Map<String, String[]>) value;
+            out.writeInt(map.size());
+            for (Map.Entry<String, String[]> entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                writeStringArray(out, entry.getValue());
+            }
+        } else if (value instanceof Object[]) {
+            out.writeByte(LIST);
+            Object[] list = (Object[]) value;
+            out.writeInt(list.length);
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else {
+            throw new IOException("Cannot encode " + value.getClass().getName());
+        }
+    }
+
+    /*
+     Read a tagged value.
+     */
+    private static Object readValue(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case BOOL:
+                return in.get() != 0;
+            case INT:
+                return in.getInt();
+            case LONG:
+                return in.getLong();
+            case STRING_ARRAY:
+                return readStringArray(in);
+            case STRING_MAP:
+                int entries = checkCount(in, in.getInt());
+                Map<String, String[]> map = new LinkedHashMap<>();
+                for (int i = 0; i < entries; i++) {
+                    map.put(readString(in), readStringArray(in));
+                }
+                return map;
+            case LIST:
+                Object[] list = new Object[checkCount(in, in.getInt())];
+                for (int i = 0; i < list.length; i++) {
+                    list[i] = readValue(in);
+                }
+                return list;
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /*
+     Write a length-prefixed UTF-8 string, with a length of -1 for null.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     Read a length-prefixed UTF-8 string.
+     */
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        checkCount(in, length);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /*
+     Write a counted array of strings, with a count of -1 for null.
+     */
+    private static void writeStringArray(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    /*
+     Read a counted array of strings.
+     */
+    private static String[] readStringArray(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count == -1) {
+            return null;
+        }
+        String[] values = new String[checkCount(in, count)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    /*
+     Reject a length or count that cannot fit in the bytes left, so a corrupt
+     message cannot make the reader allocate a huge array.
+     */
+    private static int checkCount(ByteBuffer in, int count) throws IOException {
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Invalid length " + count);
+        }
+        return count;
+    }
+}
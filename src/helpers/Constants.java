@@ -46,4 +46,16 @@ public class Constants {
     public static final String LOGOUT_REQUEST = "LOGOUT_REQUEST";
     //receive scheduled billboard request
     public static final String RECEIVE_BB = "RECEIVE_BB";
+    //receive scheduled billboard, the billboard after it and the time it starts request
+    public static final String RECEIVE_BB_NEXT = "RECEIVE_BB_NEXT";
+    //receive the whole schedule and its billboards request
+    public static final String RECEIVE_SCHEDULE = "RECEIVE_SCHEDULE";
+    //Used when returning/checking a response to RECEIVE_BB when the viewer already shows the scheduled billboard
+    public static final String NOT_MODIFIED = "NOT_MODIFIED";
+    //show one page of billboards request
+    public static final String SHOW_BB_PAGE = "SHOW_BB_PAGE";
+    //subscribe to the currently scheduled billboard request
+    public static final String SUBSCRIBE_BB = "SUBSCRIBE_BB";
+    //batch of requests actioned in one round trip
+    public static final String BATCH = "BATCH";
 }
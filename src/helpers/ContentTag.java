@@ -0,0 +1,91 @@
+package helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Tags a billboard with a short hash of its content, used by the viewer and
+ * the server to tell whether the billboard a viewer is showing is still the
+ * one scheduled. The tag depends only on the name, creator and XML, so every
+ * server gives the same billboard the same tag, and a viewer can work out
+ * the tag of a billboard it was sent without being told it. Schedules are
+ * tagged the same way, to version the schedule sent to viewers.
+ */
+public class ContentTag {
+    //bytes of the SHA-256 digest kept in a tag, plenty to tell billboards apart
+    private static final int TAG_BYTES = 12;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Returns the tag of a billboard.
+     * @param billboard RECEIVE_BB response: name, creator and XML
+     * @return the tag as a hexadecimal string, or null if the response is not
+     *         a billboard (such as an error message)
+     */
+    public static String of(String[] billboard) {
+        if (billboard == null || billboard.length < 3) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        update(digest, billboard, 3);
+        return toTag(digest.digest());
+    }
+
+    /**
+     * Returns the tag of a schedule, which changes whenever an entry is added,
+     * removed or changed.
+     * @param entries every entry in the schedule, in any order
+     * @return the tag as a hexadecimal string
+     */
+    public static String ofSchedule(Collection<ScheduleEntry> entries) {
+        ScheduleEntry[] sorted = entries.toArray(new ScheduleEntry[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(ScheduleEntry::getScheduleID));
+        MessageDigest digest = newDigest();
+        for (ScheduleEntry entry : sorted) {
+            String[] fields = entry.toFields();
+            update(digest, fields, fields.length);
+        }
+        return toTag(digest.digest());
+    }
+
+    /*
+     Returns a new SHA-256 digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            //every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     Add the first count parts to a digest. Each part is followed by a zero
+     byte, so moving text between parts changes the tag.
+     */
+    private static void update(MessageDigest digest, String[] parts, int count) {
+        for (int i = 0; i < count; i++) {
+            if (parts[i] != null) {
+                digest.update(parts[i].getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+    }
+
+    /*
+     Returns the leading bytes of a hash as a hexadecimal tag.
+     */
+    private static String toTag(byte[] hash) {
+        char[] tag = new char[TAG_BYTES * 2];
+        for (int i = 0; i < TAG_BYTES; i++) {
+            tag[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            tag[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(tag);
+    }
+}
@@ -0,0 +1,147 @@
+package helpers;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Finds the largest font size for which a string fits a space, giving the
+ * same sizes as GraphicsUtilities.getMaxFittingFontSize (one line) and
+ * MaxInfoFontSize.getMaxFittingFontSize (wrapped across lines).
+ *
+ * Those methods make a new Font and FontMetrics for every size they try, and
+ * the viewer made a screen-sized image for every search only to measure text.
+ * Here every string is measured with one small scratch Graphics2D, the
+ * FontMetrics of each font and size are made once and kept, and the size
+ * found for a string, font and space is kept so the same billboard text is
+ * not searched again.
+ */
+public class FontFit {
+    //largest size searched for a single line, as in GraphicsUtilities
+    public static final int MAX_SIZE = 288;
+    //sizes found that are kept, least recently used are dropped first
+    private static final int CACHED_RESULTS = 256;
+
+    //only measures text, so its size does not matter
+    private final Graphics2D scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics();
+    //metrics of each size from 0 to MAX_SIZE, by font name and style
+    private final Map<String, FontMetrics[]> metrics = new HashMap<>();
+    private final LinkedHashMap<String, Integer> results = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > CACHED_RESULTS;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    /**
+     * Find the largest size of a font for which a string fits on one line in a
+     * space. The search starts from the size of the font given.
+     * @param font font to size, its size is where the search starts
+     * @param string the text
+     * @param width width of the space
+     * @param height height of the space
+     * @return the font size
+     */
+    public synchronized int maxFittingSize(Font font, String string, int width, int height) {
+        String key = key("line", font, string, width, height, MAX_SIZE);
+        Integer found = results.get(key);
+        if (found != null) {
+            hits++;
+            return found;
+        }
+        misses++;
+        int minSize = 0;
+        int maxSize = MAX_SIZE;
+        int curSize = font.getSize();
+        while (maxSize - minSize > 2) {
+            FontMetrics fm = metrics(font, curSize);
+            int fontWidth = fm.stringWidth(string);
+            int fontHeight = fm.getLeading() + fm.getMaxAscent() + fm.getMaxDescent();
+            if ((fontWidth > width) || (fontHeight > height)) {
+                maxSize = curSize;
+            } else {
+                minSize = curSize;
+            }
+            curSize = (maxSize + minSize) / 2;
+        }
+        results.put(key, curSize);
+        return curSize;
+    }
+
+    /**
+     * Find the largest size of a font, no larger than a limit, for which a
+     * string roughly fills a space when wrapped across lines. The search starts
+     * from the size of the font given.
+     * @param font font to size, its size is where the search starts
+     * @param string the text
+     * @param width width of the space
+     * @param height height of the space
+     * @param maxSize largest size allowed
+     * @return the font size
+     */
+    public synchronized int maxWrappingSize(Font font, String string, int width, int height, int maxSize) {
+        String key = key("wrap", font, string, width, height, maxSize);
+        Integer found = results.get(key);
+        if (found != null) {
+            hits++;
+            return found;
+        }
+        misses++;
+        int minSize = 0;
+        int curSize = font.getSize();
+        //Area of the space to be filled is compared against the space the string fills
+        int areaOfSpace = width * height;
+        while (maxSize - minSize > 2) {
+            FontMetrics fm = metrics(font, curSize);
+            int stringWidth = fm.stringWidth(string);
+            int stringHeight = fm.getLeading() + fm.getMaxAscent() + fm.getMaxDescent();
+            int areaOfString = stringWidth * stringHeight;
+            //Larger than the space, but may still fit when wrapped if neither side is too long
+            if (areaOfString > areaOfSpace && ((stringWidth > width) || (stringHeight > height))) {
+                maxSize = curSize;
+            } else {
+                minSize = curSize;
+            }
+            curSize = (maxSize + minSize) / 2;
+        }
+        results.put(key, curSize);
+        return curSize;
+    }
+
+    /**
+     * Returns a one line summary of the sizes found.
+     * @return font fit metrics
+     */
+    @Override
+    public synchronized String toString() {
+        return "results=" + results.size() + " hits=" + hits + " misses=" + misses + " fonts=" + metrics.size();
+    }
+
+    /*
+     Returns the metrics of a font at a size, making them the first time the
+     size is used. Sizes outside 0 to MAX_SIZE are not kept.
+     */
+    private FontMetrics metrics(Font font, int size) {
+        if (size < 0 || size > MAX_SIZE) {
+            return scratch.getFontMetrics(new Font(font.getName(), font.getStyle(), size));
+        }
+        FontMetrics[] sizes = metrics.computeIfAbsent(font.getName() + '|' + font.getStyle(),
+                name -> new FontMetrics[MAX_SIZE + 1]);
+        if (sizes[size] == null) {
+            sizes[size] = scratch.getFontMetrics(new Font(font.getName(), font.getStyle(), size));
+        }
+        return sizes[size];
+    }
+
+    /*
+     Key of a search: every input the size found depends on.
+     */
+    private static String key(String kind, Font font, String string, int width, int height, int maxSize) {
+        return kind + '|' + font.getName() + '|' + font.getStyle() + '|' + font.getSize() + '|' + width + 'x' +
+                height + '|' + maxSize + '|' + string;
+    }
+}
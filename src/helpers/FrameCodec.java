@@ -0,0 +1,315 @@
+package helpers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the framed billboard protocol shared by the server,
+ * the control panel and the viewer. Unlike the legacy protocol, where a
+ * request is a bare serialised object, every message is wrapped in a frame
+ * with a length prefix. This lets a non-blocking server find the end of a
+ * request without parsing it.
+ *
+ * A framed connection starts with a preface sent by the client:
+ *     [int MAGIC][byte version][byte options]
+ * followed by frames in both directions:
+ *     [int payload length][int request ID][byte flags][payload]
+ * The server echoes the request ID of a request on its response.
+ *
+ * Without the keep-alive option the server closes the connection after one
+ * response. With it, the client may send further requests, including several
+ * at once before reading any response (pipelining); responses come back in
+ * request order and are matched to their request by ID. A server that does
+ * not keep the connection open marks its last response with FLAG_CLOSE.
+ *
+ * Payloads are serialised objects, or BinaryCodec messages if the client set
+ * the binary option. If the client set the deflate option, large payloads in
+ * either direction may be compressed by FrameCompressor and flagged with
+ * FLAG_DEFLATED.
+ */
+public class FrameCodec {
+    //"BBPF" - cannot be confused with the 0xACED header of a serialised stream
+    public static final int MAGIC = 0x42425046;
+    public static final byte VERSION = 1;
+    //preface: magic, version, options
+    public static final int PREFACE_LENGTH = 6;
+    //frame header: payload length, request ID, flags
+    public static final int HEADER_LENGTH = 9;
+    //largest payload accepted, big enough for a MEDIUMTEXT billboard
+    public static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+    //preface option: keep the connection open for further requests
+    public static final byte OPTION_KEEP_ALIVE = 0x01;
+    //preface option: payloads use BinaryCodec instead of Java serialisation
+    public static final byte OPTION_BINARY = 0x02;
+    //preface option: large payloads may be Deflate compressed
+    public static final byte OPTION_DEFLATE = 0x04;
+    //frame flag: the server closes the connection after this response
+    public static final byte FLAG_CLOSE = 0x01;
+    //frame flag: the payload is compressed (see FrameCompressor)
+    public static final byte FLAG_DEFLATED = 0x02;
+    //first two bytes of a serialised object stream (legacy protocol)
+    public static final short STREAM_MAGIC = ObjectStreamConstants.STREAM_MAGIC;
+
+    /**
+     * A single frame read from a connection.
+     */
+    public static class Frame {
+        public final int requestId;
+        public final byte flags;
+        public final byte[] payload;
+
+        public Frame(int requestId, byte flags, byte[] payload) {
+            this.requestId = requestId;
+            this.flags = flags;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Write the connection preface.
+     * @param out stream to the server
+     * @param options option bits requested by the client
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writePreface(DataOutputStream out, byte options) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(options);
+    }
+
+    /**
+     * Read the version and options of a preface whose magic number has already
+     * been read.
+     * @param in stream from the client
+     * @return the option bits requested by the client
+     * @throws IOException if the version is not supported or the stream fails
+     */
+    public static byte readPrefaceOptions(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        byte options = in.readByte();
+        checkVersion(version);
+        return options;
+    }
+
+    /**
+     * Reject a preface with an unsupported protocol version.
+     * @param version version sent by the client
+     * @throws IOException if the version is not supported
+     */
+    public static void checkVersion(byte version) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("Unsupported protocol version " + version);
+        }
+    }
+
+    /**
+     * Write a frame to a stream.
+     * @param out stream to write to
+     * @param requestId request the frame belongs to
+     * @param flags flag bits
+     * @param payload encoded message
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writeFrame(DataOutputStream out, int requestId, byte flags, byte[] payload)
+            throws IOException {
+        writeHeader(out, payload.length, requestId, flags);
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Write the header of a frame, leaving the caller to write the payload.
+     * @param out stream to write to
+     * @param length length of the payload that follows
+     * @param requestId request the frame belongs to
+     * @param flags flag bits
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writeHeader(DataOutputStream out, int length, int requestId, byte flags)
+            throws IOException {
+        out.writeInt(length);
+        out.writeInt(requestId);
+        out.writeByte(flags);
+    }
+
+    /**
+     * Write a frame to a stream.
+     * @param out stream to write to
+     * @param frame frame to write
+     * @throws IOException if the stream cannot be written
+     */
+    public static void writeFrame(DataOutputStream out, Frame frame) throws IOException {
+        writeFrame(out, frame.requestId, frame.flags, frame.payload);
+    }
+
+    /**
+     * Read a frame from a stream, blocking until it has fully arrived.
+     * @param in stream to read from
+     * @return the frame
+     * @throws IOException if the frame is too large or the stream fails
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = checkLength(in.readInt());
+        int requestId = in.readInt();
+        byte flags = in.readByte();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(requestId, flags, payload);
+    }
+
+    /**
+     * Encode a frame into a buffer ready to be written to a channel.
+     * @param requestId request the frame belongs to
+     * @param flags flag bits
+     * @param payload encoded message
+     * @return buffer positioned at the start of the frame
+     */
+    public static ByteBuffer encodeFrame(int requestId, byte flags, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_LENGTH + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt(requestId);
+        frame.put(flags);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Encode the header of a frame into a buffer, for a payload written to
+     * the channel from a buffer of its own.
+     * @param length length of the payload that follows
+     * @param requestId request the frame belongs to
+     * @param flags flag bits
+     * @return buffer positioned at the start of the header
+     */
+    public static ByteBuffer encodeHeader(int length, int requestId, byte flags) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(length);
+        header.putInt(requestId);
+        header.put(flags);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Encode a frame into a buffer ready to be written to a channel.
+     * @param frame frame to encode
+     * @return buffer positioned at the start of the frame
+     */
+    public static ByteBuffer encodeFrame(Frame frame) {
+        return encodeFrame(frame.requestId, frame.flags, frame.payload);
+    }
+
+    /**
+     * Reject a payload length that is negative or larger than MAX_PAYLOAD.
+     * @param length length read from a frame header
+     * @return the length
+     * @throws IOException if the length is not acceptable
+     */
+    public static int checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Encode a request for a connection with the given options.
+     * @param message request array, the first element being the request type
+     * @param options option bits sent in the preface
+     * @return payload
+     * @throws IOException if the request cannot be encoded
+     */
+    public static byte[] encodeRequest(Object[] message, byte options) throws IOException {
+        if ((options & OPTION_BINARY) != 0) {
+            return BinaryCodec.encodeRequest(message);
+        }
+        return serialize(message);
+    }
+
+    /**
+     * Decode a request received on a connection with the given options.
+     * @param payload payload of the request frame
+     * @param options option bits sent in the preface
+     * @return request array, the first element being the request type
+     * @throws IOException if the payload is malformed
+     * @throws ClassNotFoundException if a serialised request is of an unknown class
+     */
+    public static Object[] decodeRequest(byte[] payload, byte options) throws IOException,
+            ClassNotFoundException {
+        if ((options & OPTION_BINARY) != 0) {
+            return BinaryCodec.decodeRequest(payload);
+        }
+        return (Object[]) deserialize(payload);
+    }
+
+    /**
+     * Encode a response for a connection with the given options.
+     * @param response response to send
+     * @param options option bits sent in the preface
+     * @return payload
+     * @throws IOException if the response cannot be encoded
+     */
+    public static byte[] encodeResponse(Object response, byte options) throws IOException {
+        if ((options & OPTION_BINARY) != 0) {
+            return BinaryCodec.encode(response);
+        }
+        return serialize(response);
+    }
+
+    /**
+     * Decode a response received on a connection with the given options.
+     * @param payload payload of the response frame
+     * @param options option bits sent in the preface
+     * @return the response
+     * @throws IOException if the payload is malformed
+     * @throws ClassNotFoundException if a serialised response is of an unknown class
+     */
+    public static Object decodeResponse(byte[] payload, byte options) throws IOException,
+            ClassNotFoundException {
+        if ((options & OPTION_BINARY) != 0) {
+            return BinaryCodec.decode(payload);
+        }
+        return deserialize(payload);
+    }
+
+    /**
+     * Serialise an object into a payload.
+     * @param message object to serialise
+     * @return serialised bytes
+     * @throws IOException if the object cannot be serialised
+     */
+    public static byte[] serialize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(message);
+        oos.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialise a payload into an object.
+     * @param payload serialised bytes
+     * @return the object
+     * @throws IOException if the payload is not a complete serialised object
+     * @throws ClassNotFoundException if the class of the object is unknown
+     */
+    public static Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        return deserialize(payload, 0, payload.length);
+    }
+
+    /**
+     * Deserialise part of a byte array into an object.
+     * @param bytes array holding the serialised object
+     * @param offset start of the object
+     * @param length number of bytes available
+     * @return the object
+     * @throws IOException if the bytes are not a complete serialised object
+     * @throws ClassNotFoundException if the class of the object is unknown
+     */
+    public static Object deserialize(byte[] bytes, int offset, int length) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length));
+        return ois.readObject();
+    }
+}
@@ -0,0 +1,138 @@
+package helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of frame payloads, used on framed connections that set
+ * the FrameCodec.OPTION_DEFLATE preface option. Billboard XML, and the base64
+ * pictures inside it, compresses well, so large SHOW_BB and RECEIVE_BB
+ * responses shrink to a fraction of their size on slow links.
+ *
+ * Only payloads of at least the minimum size are compressed, and only if the
+ * result is smaller; a compressed frame is marked with FrameCodec.FLAG_DEFLATED.
+ * Its payload is the uncompressed length followed by the deflated bytes:
+ *     [int length][deflate data]
+ *
+ * Each thread keeps its own Deflater and Inflater, so a compressor can be
+ * shared by every connection of the server.
+ */
+public class FrameCompressor {
+    private final int level;
+    private final int minBytes;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * Creates a compressor.
+     * @param level Deflate level, from 0 (no compression) to 9 (smallest)
+     * @param minBytes payloads smaller than this are sent uncompressed
+     * @throws IllegalArgumentException if the level is out of range
+     */
+    public FrameCompressor(int level, int minBytes) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        }
+        this.level = level;
+        this.minBytes = minBytes;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    /**
+     * Build a frame, compressing its payload if that is worth doing.
+     * @param requestId request the frame belongs to
+     * @param flags flag bits
+     * @param payload encoded message
+     * @return the frame, with FLAG_DEFLATED set if the payload was compressed
+     */
+    public FrameCodec.Frame compress(int requestId, byte flags, byte[] payload) {
+        if (payload.length < minBytes) {
+            return new FrameCodec.Frame(requestId, flags, payload);
+        }
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+
+        //Compress into a buffer no larger than the payload, giving up if the
+        //compressed form would not fit.
+        byte[] compressed = new byte[payload.length];
+        int length = Integer.BYTES;
+        while (!deflater.finished() && length < compressed.length) {
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        if (!deflater.finished()) {
+            return new FrameCodec.Frame(requestId, flags, payload);
+        }
+        ByteBuffer.wrap(compressed).putInt(payload.length);
+
+        compressedFrames.increment();
+        bytesIn.add(payload.length);
+        bytesOut.add(length);
+        return new FrameCodec.Frame(requestId, (byte) (flags | FrameCodec.FLAG_DEFLATED),
+                Arrays.copyOf(compressed, length));
+    }
+
+    /**
+     * Returns the payload of a frame, inflating it if it is compressed.
+     * @param frame frame read from a connection
+     * @return uncompressed payload
+     * @throws IOException if the compressed payload is corrupt or too large
+     */
+    public byte[] decompress(FrameCodec.Frame frame) throws IOException {
+        if ((frame.flags & FrameCodec.FLAG_DEFLATED) == 0) {
+            return frame.payload;
+        }
+        if (frame.payload.length < Integer.BYTES) {
+            throw new IOException("Truncated compressed payload");
+        }
+        byte[] payload = new byte[FrameCodec.checkLength(ByteBuffer.wrap(frame.payload).getInt())];
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(frame.payload, Integer.BYTES, frame.payload.length - Integer.BYTES);
+        try {
+            int length = 0;
+            while (length < payload.length && !inflater.finished()) {
+                int inflated = inflater.inflate(payload, length, payload.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != payload.length || !inflater.finished()) {
+                throw new IOException("Compressed payload does not match its length");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt compressed payload", ex);
+        }
+        return payload;
+    }
+
+    /**
+     * Returns the number of bytes compression has saved so far.
+     * @return uncompressed bytes minus the bytes actually sent
+     */
+    public long getBytesSaved() {
+        return bytesIn.sum() - bytesOut.sum();
+    }
+
+    /**
+     * Returns a one line summary of the compression counters.
+     * @return compression metrics
+     */
+    @Override
+    public String toString() {
+        long in = bytesIn.sum();
+        long saved = getBytesSaved();
+        return "level=" + level + " frames=" + compressedFrames.sum() + " bytesIn=" + in + " bytesOut=" +
+                bytesOut.sum() + " saved=" + saved + (in == 0 ? "" : " (" + saved * 100 / in + "%)");
+    }
+}
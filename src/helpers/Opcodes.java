@@ -0,0 +1,111 @@
+package helpers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Numeric opcodes for the binary protocol. Each opcode stands for one of the
+ * request strings in Constants, so a binary request is dispatched exactly
+ * like its legacy equivalent.
+ *
+ * Every opcode also records the type of each of its arguments: 'S' for a
+ * string, 'B' for a boolean and 'I' for an integer. The control panel builds
+ * its requests as strings, and BinaryCodec uses these types to send booleans
+ * and integers in their typed form instead.
+ */
+public class Opcodes {
+    public static final short LOGIN_REQUEST = 1;
+    public static final short SHOW_BB = 2;
+    public static final short CREATE_EDIT = 3;
+    public static final short GET_BB = 4;
+    public static final short DELETE_BB = 5;
+    public static final short VIEW_SCHEDULE = 6;
+    public static final short SCHEDULE_BB = 7;
+    public static final short REMOVE_BB = 8;
+    public static final short LIST_USERS = 9;
+    public static final short CREATE_USER = 10;
+    public static final short GET_USER_PERMISSIONS = 11;
+    public static final short SET_USER_PERMISSIONS = 12;
+    public static final short SET_USER_PASSWORD = 13;
+    public static final short DELETE_USER = 14;
+    public static final short LOGOUT_REQUEST = 15;
+    public static final short RECEIVE_BB = 16;
+    public static final short BATCH = 17;
+    public static final short SHOW_BB_PAGE = 18;
+    public static final short SUBSCRIBE_BB = 19;
+    public static final short RECEIVE_BB_NEXT = 20;
+    public static final short RECEIVE_SCHEDULE = 21;
+    //one more than the largest opcode
+    public static final int COUNT = 22;
+
+    private static final String[] COMMANDS = new String[COUNT];
+    private static final String[] ARGUMENTS = new String[COUNT];
+    private static final Map<String, Short> OPCODES = new HashMap<>();
+
+    static {
+        define(LOGIN_REQUEST, Constants.LOGIN_REQUEST, "SS");
+        define(SHOW_BB, Constants.SHOW_BB, "S");
+        define(CREATE_EDIT, Constants.CREATE_EDIT, "SSSBSS");
+        define(GET_BB, Constants.GET_BB, "SS");
+        define(DELETE_BB, Constants.DELETE_BB, "SSS");
+        define(VIEW_SCHEDULE, Constants.VIEW_SCHEDULE, "SS");
+        define(SCHEDULE_BB, Constants.SCHEDULE_BB, "SSSIISBBSI");
+        define(REMOVE_BB, Constants.REMOVE_BB, "SSSSS");
+        define(LIST_USERS, Constants.LIST_USERS, "SS");
+        define(CREATE_USER, Constants.CREATE_USER, "SSSSBBBBBB");
+        define(GET_USER_PERMISSIONS, Constants.GET_USER_PERMISSIONS, "SSS");
+        define(SET_USER_PERMISSIONS, Constants.SET_USER_PERMISSIONS, "SSSBBBB");
+        define(SET_USER_PASSWORD, Constants.SET_USER_PASSWORD, "SSSS");
+        define(DELETE_USER, Constants.DELETE_USER, "SSS");
+        define(LOGOUT_REQUEST, Constants.LOGOUT_REQUEST, "S");
+        //optional ContentTag of the billboard the viewer is showing
+        define(RECEIVE_BB, Constants.RECEIVE_BB, "S");
+        //arguments are whole request arrays
+        define(BATCH, Constants.BATCH, "");
+        define(SHOW_BB_PAGE, Constants.SHOW_BB_PAGE, "SII");
+        define(SUBSCRIBE_BB, Constants.SUBSCRIBE_BB, "");
+        //ContentTags of the billboards the viewer holds
+        define(RECEIVE_BB_NEXT, Constants.RECEIVE_BB_NEXT, "SS");
+        //version of the schedule held, then ContentTags of the billboards held
+        define(RECEIVE_SCHEDULE, Constants.RECEIVE_SCHEDULE, "S");
+    }
+
+    /*
+     Record the request string and argument types of an opcode.
+     */
+    private static void define(short opcode, String command, String arguments) {
+        COMMANDS[opcode] = command;
+        ARGUMENTS[opcode] = arguments;
+        OPCODES.put(command, opcode);
+    }
+
+    /**
+     * Find the opcode of a request string.
+     * @param command request string from Constants
+     * @return the opcode, or -1 if the request is unknown
+     */
+    public static short forCommand(String command) {
+        Short opcode = OPCODES.get(command);
+        return opcode == null ? -1 : opcode;
+    }
+
+    /**
+     * Find the request string of an opcode.
+     * @param opcode opcode
+     * @return the request string, or null if the opcode is unknown
+     */
+    public static String command(int opcode) {
+        return opcode > 0 && opcode < COUNT ? COMMANDS[opcode] : null;
+    }
+
+    /**
+     * Find the type of an argument of a request.
+     * @param opcode opcode of the request
+     * @param index index of the argument, the first argument being 0
+     * @return 'S', 'B' or 'I'; 'S' if the argument is not described
+     */
+    public static char argumentType(int opcode, int index) {
+        String arguments = opcode > 0 && opcode < COUNT ? ARGUMENTS[opcode] : null;
+        return arguments != null && index < arguments.length() ? arguments.charAt(index) : 'S';
+    }
+}
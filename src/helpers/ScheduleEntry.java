@@ -0,0 +1,242 @@
+package helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row of the billboard schedule: when a billboard is shown, for how long
+ * and how often it recurs, along with the billboard's name and who scheduled
+ * it. Rows are read from the database in a single query that joins the
+ * schedule to the billboards table.
+ */
+public class ScheduleEntry {
+    //length of the array made by toFields
+    public static final int FIELD_COUNT = 11;
+
+    private final int scheduleID;
+    private final int billboardID;
+    private final String billboardName;
+    private final String scheduler;
+    private final int hour;
+    private final int minute;
+    private final int day;
+    private final int duration;
+    private final boolean daily;
+    private final boolean hourly;
+    private final int everyMinutes;
+
+    /**
+     * Constructs a schedule entry.
+     * @param scheduleID ID of the entry, in the order entries were scheduled
+     * @param billboardID ID of the scheduled billboard
+     * @param billboardName name of the scheduled billboard
+     * @param scheduler user that scheduled the billboard
+     * @param hour hour the billboard is first shown
+     * @param minute minute the billboard is first shown
+     * @param day day the billboard is first shown, 1 for Sunday to 7 for Saturday
+     * @param duration minutes the billboard is shown for
+     * @param daily whether the billboard is shown again every day
+     * @param hourly whether the billboard is shown again every hour
+     * @param everyMinutes minutes between showings, or 0 if it does not recur by minute
+     */
+    public ScheduleEntry(int scheduleID, int billboardID, String billboardName, String scheduler, int hour,
+                         int minute, int day, int duration, boolean daily, boolean hourly, int everyMinutes) {
+        this.scheduleID = scheduleID;
+        this.billboardID = billboardID;
+        this.billboardName = billboardName;
+        this.scheduler = scheduler;
+        this.hour = hour;
+        this.minute = minute;
+        this.day = day;
+        this.duration = duration;
+        this.daily = daily;
+        this.hourly = hourly;
+        this.everyMinutes = everyMinutes;
+    }
+
+    /**
+     * Parse the minute recurrence as stored in the schedule table, where no
+     * recurrence is stored as an empty string.
+     * @param reoccurMin stored minute recurrence
+     * @return minutes between showings, or 0 if it does not recur by minute
+     */
+    public static int parseEveryMinutes(String reoccurMin) {
+        if (reoccurMin == null || reoccurMin.trim().isEmpty()) {
+            return 0;
+        }
+        return Integer.parseInt(reoccurMin.trim());
+    }
+
+    public int getScheduleID() {
+        return scheduleID;
+    }
+
+    public int getBillboardID() {
+        return billboardID;
+    }
+
+    public String getBillboardName() {
+        return billboardName;
+    }
+
+    public String getScheduler() {
+        return scheduler;
+    }
+
+    public int getHour() {
+        return hour;
+    }
+
+    public int getMinute() {
+        return minute;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public boolean isDaily() {
+        return daily;
+    }
+
+    public boolean isHourly() {
+        return hourly;
+    }
+
+    public int getEveryMinutes() {
+        return everyMinutes;
+    }
+
+    /**
+     * The minute of the day the billboard is first shown.
+     * @return minutes since midnight
+     */
+    public int getStartMinute() {
+        return hour * 60 + minute;
+    }
+
+    /**
+     * The intervals of the week in which the billboard is shown, in order, as
+     * pairs of start and end minutes of the week, counting from midnight on
+     * Sunday. Each interval includes its start minute but not its end minute.
+     * The recurrences match those the server has always used:
+     *  - daily: at the start time every day, until the end of that day
+     *  - hourly: at the start minute of every hour, until the end of that hour
+     *  - every X minutes: counting from midnight each day in periods of X
+     *    minutes, starting at the start minute's offset into the period and
+     *    ending at the end of the period
+     *  - otherwise: at the start time on the scheduled day, until the end of that day
+     * @return start and end minutes, {start0, end0, start1, end1, ...}
+     */
+    public int[] getWeekIntervals() {
+        List<Integer> intervals = new ArrayList<>();
+        if (duration <= 0) {
+            return new int[0];
+        }
+        if (daily) {
+            for (int day = 0; day < ScheduleLookup.DAYS_PER_WEEK; day++) {
+                addClipped(day * ScheduleLookup.MINUTES_PER_DAY, getStartMinute(), ScheduleLookup.MINUTES_PER_DAY,
+                        intervals);
+            }
+        } else if (hourly) {
+            for (int hour = 0; hour < ScheduleLookup.DAYS_PER_WEEK * 24; hour++) {
+                addClipped(hour * ScheduleLookup.MINUTES_PER_HOUR, minute, ScheduleLookup.MINUTES_PER_HOUR,
+                        intervals);
+            }
+        } else if (everyMinutes > 0) {
+            for (int day = 0; day < ScheduleLookup.DAYS_PER_WEEK; day++) {
+                for (int periodStart = 0; periodStart < ScheduleLookup.MINUTES_PER_DAY; periodStart += everyMinutes) {
+                    //a period is cut short by the end of the day
+                    int length = Math.min(everyMinutes, ScheduleLookup.MINUTES_PER_DAY - periodStart);
+                    addClipped(day * ScheduleLookup.MINUTES_PER_DAY + periodStart, minute % everyMinutes, length,
+                            intervals);
+                }
+            }
+        } else if (day >= 1 && day <= ScheduleLookup.DAYS_PER_WEEK) {
+            addClipped((day - 1) * ScheduleLookup.MINUTES_PER_DAY, getStartMinute(), ScheduleLookup.MINUTES_PER_DAY,
+                    intervals);
+        }
+        int[] result = new int[intervals.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = intervals.get(i);
+        }
+        return result;
+    }
+
+    /*
+     Adds the interval starting offset minutes into a block of the week, cut
+     short at the end of the block.
+     */
+    private void addClipped(int blockStart, int offset, int blockLength, List<Integer> intervals) {
+        if (offset < blockLength) {
+            intervals.add(blockStart + offset);
+            intervals.add(blockStart + Math.min(offset + duration, blockLength));
+        }
+    }
+
+    /**
+     * The time the billboard is first shown, formatted as HH:MM.
+     * @return the scheduled time
+     */
+    public String getTime() {
+        return String.format("%02d:%02d", hour, minute);
+    }
+
+    /**
+     * How often the billboard recurs, as shown in the schedule table.
+     * @return one of "Daily", "Hourly", "Every N mins" or "N/A"
+     */
+    public String getRecurrence() {
+        if (daily) {
+            return "Daily";
+        } else if (hourly) {
+            return "Hourly";
+        } else if (everyMinutes > 0) {
+            return "Every " + everyMinutes + " mins";
+        }
+        return "N/A";
+    }
+
+    /**
+     * The entry as one row of the schedule table: ID, name, scheduled by,
+     * shown at, day, duration and recurrence.
+     * @return the row's columns
+     */
+    public String[] toRow() {
+        return new String[]{String.valueOf(billboardID), billboardName, scheduler, getTime(), String.valueOf(day),
+                duration + " min", getRecurrence()};
+    }
+
+    /**
+     * The entry as an array of every field, in the order the constructor
+     * takes them, so it can be sent to a viewer and rebuilt with fromFields.
+     * @return the entry's fields
+     */
+    public String[] toFields() {
+        return new String[]{String.valueOf(scheduleID), String.valueOf(billboardID), billboardName, scheduler,
+                String.valueOf(hour), String.valueOf(minute), String.valueOf(day), String.valueOf(duration),
+                String.valueOf(daily), String.valueOf(hourly), String.valueOf(everyMinutes)};
+    }
+
+    /**
+     * Rebuild an entry from the array made by toFields.
+     * @param fields the entry's fields
+     * @return the entry
+     * @throws NumberFormatException if a number field is malformed
+     */
+    public static ScheduleEntry fromFields(String[] fields) {
+        return new ScheduleEntry(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), fields[2], fields[3],
+                Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), Integer.parseInt(fields[6]),
+                Integer.parseInt(fields[7]), Boolean.parseBoolean(fields[8]), Boolean.parseBoolean(fields[9]),
+                Integer.parseInt(fields[10]));
+    }
+
+    @Override
+    public String toString() {
+        return String.join(", ", toRow());
+    }
+}
@@ -0,0 +1,168 @@
+package helpers;
+
+import java.util.*;
+
+/**
+ * An in-memory index of the billboard schedule that answers which billboard
+ * is showing at a given time without going back to the database.
+ *
+ * The index covers one week as minutes 0 to 10079, starting at midnight on
+ * Sunday. When the index is built every entry is expanded into the
+ * intervals of the week it is shown in (ScheduleEntry.getWeekIntervals), and the
+ * week is divided into segments where the same billboard is showing. Where
+ * entries overlap, the one scheduled last (the highest scheduleID) is shown.
+ * Finding the segment a time falls in is a binary search, so a lookup takes
+ * O(log n) in the number of segments.
+ *
+ * An index is never changed once built; a new index is built when the
+ * schedule changes.
+ */
+public class ScheduleIndex implements ScheduleLookup {
+    //Start minute of each segment of the week, and the entry showing in it (null if none)
+    private final int[] starts;
+    private final ScheduleEntry[] showing;
+    private final int size;
+
+    /*
+     An interval of the week in which an entry is shown, as [start, end) in minutes.
+     */
+    private static class Interval {
+        private final int start;
+        private final int end;
+        private final int priority;
+
+        private Interval(int start, int end, int priority) {
+            this.start = start;
+            this.end = end;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Builds an index of the given schedule entries.
+     * @param entries the schedule, in any order
+     */
+    public ScheduleIndex(Collection<ScheduleEntry> entries) {
+        //Entries scheduled later take precedence, so rank them by scheduleID
+        ScheduleEntry[] ranked = entries.toArray(new ScheduleEntry[0]);
+        Arrays.sort(ranked, Comparator.comparingInt(ScheduleEntry::getScheduleID));
+        size = ranked.length;
+
+        //Expand every entry into the intervals of the week it is shown in
+        List<Interval> intervals = new ArrayList<>();
+        for (int i = 0; i < ranked.length; i++) {
+            int[] weekIntervals = ranked[i].getWeekIntervals();
+            for (int j = 0; j < weekIntervals.length; j += 2) {
+                intervals.add(new Interval(weekIntervals[j], weekIntervals[j + 1], i));
+            }
+        }
+
+        //Sweep the week from start to end, keeping track of which entries are showing.
+        //At each interval boundary the highest ranked entry showing starts a new segment.
+        int[] boundaries = new int[intervals.size() * 2];
+        int boundary = 0;
+        for (Interval interval : intervals) {
+            boundaries[boundary++] = interval.start;
+            boundaries[boundary++] = interval.end;
+        }
+        Arrays.sort(boundaries);
+        intervals.sort(Comparator.comparingInt(interval -> interval.start));
+        PriorityQueue<Interval> active = new PriorityQueue<>(
+                Comparator.comparingInt((Interval interval) -> interval.priority).reversed());
+
+        List<Integer> segmentStarts = new ArrayList<>();
+        List<ScheduleEntry> segmentShowing = new ArrayList<>();
+        segmentStarts.add(0);
+        segmentShowing.add(null);
+        int next = 0;
+        for (int minute : boundaries) {
+            //Start the intervals beginning here, and drop the highest ranked ones that have ended
+            while (next < intervals.size() && intervals.get(next).start <= minute) {
+                active.add(intervals.get(next++));
+            }
+            while (!active.isEmpty() && active.peek().end <= minute) {
+                active.poll();
+            }
+            ScheduleEntry now = active.isEmpty() ? null : ranked[active.peek().priority];
+            int last = segmentStarts.size() - 1;
+            if (now == segmentShowing.get(last)) {
+                continue;
+            }
+            //Only the first segment can start at the same minute, when something is showing from minute 0
+            if (segmentStarts.get(last) == minute) {
+                segmentShowing.set(last, now);
+            } else {
+                segmentStarts.add(minute);
+                segmentShowing.add(now);
+            }
+        }
+        starts = new int[segmentStarts.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = segmentStarts.get(i);
+        }
+        showing = segmentShowing.toArray(new ScheduleEntry[0]);
+    }
+
+    /**
+     * Find the entry showing at a minute of the week.
+     * @param minuteOfWeek minute of the week, counting from midnight on Sunday
+     * @return the entry showing, or null if nothing is scheduled
+     */
+    public ScheduleEntry showingAt(int minuteOfWeek) {
+        int minute = Math.floorMod(minuteOfWeek, MINUTES_PER_WEEK);
+        //Find the last segment that starts at or before the minute
+        int found = Arrays.binarySearch(starts, minute);
+        int segment = found >= 0 ? found : -found - 2;
+        return showing[segment];
+    }
+
+    /**
+     * Find the entry showing at a time.
+     * @param time the time
+     * @return the entry showing, or null if nothing is scheduled
+     */
+    public ScheduleEntry showingAt(Calendar time) {
+        return showingAt(ScheduleLookup.minuteOfWeek(time));
+    }
+
+    @Override
+    public int billboardAt(int minuteOfWeek) {
+        ScheduleEntry entry = showingAt(minuteOfWeek);
+        return entry == null ? NOTHING_SCHEDULED : entry.getBillboardID();
+    }
+
+    @Override
+    public int minutesUntilChange(int minuteOfWeek) {
+        int minute = Math.floorMod(minuteOfWeek, MINUTES_PER_WEEK);
+        int found = Arrays.binarySearch(starts, minute);
+        int segment = found >= 0 ? found : -found - 2;
+        int showing = billboardAt(minute);
+        //Walk forward through the following segments, wrapping into next week, until the billboard differs
+        for (int step = 1; step < starts.length; step++) {
+            int next = segment + step;
+            int start = next < starts.length ? starts[next] : starts[next - starts.length] + MINUTES_PER_WEEK;
+            if (billboardAt(start) != showing) {
+                return start - minute;
+            }
+        }
+        return MINUTES_PER_WEEK;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of segments the week is divided into.
+     * @return number of segments
+     */
+    public int getSegmentCount() {
+        return starts.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("entries=%d segments=%d", size, starts.length);
+    }
+}
@@ -0,0 +1,78 @@
+package helpers;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Finds the billboard scheduled at a minute of the week. The schedule has
+ * minute resolution and repeats every week, so a time is looked up as the
+ * minute of the week it falls in, counting from midnight on Sunday.
+ *
+ * Two lookups are provided: ScheduleIndex, a binary search over the segments
+ * of the week, and ScheduleSlotTable, an array holding the billboard for
+ * every minute of the week.
+ */
+public interface ScheduleLookup {
+    int MINUTES_PER_HOUR = 60;
+    int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+    int DAYS_PER_WEEK = 7;
+    int MINUTES_PER_WEEK = DAYS_PER_WEEK * MINUTES_PER_DAY;
+
+    //Returned when nothing is scheduled; billboard IDs start at 1
+    int NOTHING_SCHEDULED = 0;
+
+    //1 January 1970 was a Thursday, the fifth day of a week starting on Sunday
+    int EPOCH_MINUTE_OF_WEEK = 4 * MINUTES_PER_DAY;
+
+    /**
+     * Find the billboard scheduled at a minute of the week.
+     * @param minuteOfWeek minute of the week, counting from midnight on Sunday
+     * @return the billboardID, or NOTHING_SCHEDULED
+     */
+    int billboardAt(int minuteOfWeek);
+
+    /**
+     * The number of minutes from a minute of the week until a different
+     * billboard is scheduled. Looks at most a week ahead.
+     * @param minuteOfWeek minute of the week, counting from midnight on Sunday
+     * @return minutes until the billboard changes, or MINUTES_PER_WEEK if it never does
+     */
+    default int minutesUntilChange(int minuteOfWeek) {
+        int showing = billboardAt(minuteOfWeek);
+        for (int minutes = 1; minutes < MINUTES_PER_WEEK; minutes++) {
+            if (billboardAt(minuteOfWeek + minutes) != showing) {
+                return minutes;
+            }
+        }
+        return MINUTES_PER_WEEK;
+    }
+
+    /**
+     * The number of schedule entries in the lookup.
+     * @return number of entries
+     */
+    int size();
+
+    /**
+     * The minute of the week a time falls in, counting from midnight on Sunday.
+     * @param time the time
+     * @return minute of the week, from 0 to MINUTES_PER_WEEK - 1
+     */
+    static int minuteOfWeek(Calendar time) {
+        return (time.get(Calendar.DAY_OF_WEEK) - 1) * MINUTES_PER_DAY +
+                time.get(Calendar.HOUR_OF_DAY) * MINUTES_PER_HOUR + time.get(Calendar.MINUTE);
+    }
+
+    /**
+     * The minute of the week a time falls in, in the given time zone. Unlike
+     * minuteOfWeek(Calendar) this does not allocate, so it can be called on
+     * every request.
+     * @param millis the time, in milliseconds since the epoch
+     * @param zone the time zone the schedule is kept in
+     * @return minute of the week, from 0 to MINUTES_PER_WEEK - 1
+     */
+    static int minuteOfWeek(long millis, TimeZone zone) {
+        long localMinutes = Math.floorDiv(millis + zone.getOffset(millis), 60 * 1000L);
+        return (int) Math.floorMod(localMinutes + EPOCH_MINUTE_OF_WEEK, (long) MINUTES_PER_WEEK);
+    }
+}
@@ -0,0 +1,141 @@
+package helpers;
+
+import java.util.*;
+
+/**
+ * A lookup table holding the billboard scheduled in every minute of the
+ * week, so finding the billboard showing is a single array read.
+ *
+ * The table is kept up to date by passing it the whole schedule whenever it
+ * changes. Only the minutes covered by entries that were added or removed
+ * are changed: an added entry takes the minutes it covers from any entry
+ * scheduled before it, and the minutes of a removed entry go to the latest
+ * remaining entry that covers them. Where entries overlap, the one scheduled
+ * last (the highest scheduleID) is shown, as in ScheduleIndex.
+ *
+ * Lookups never block. A lookup made while the table is being updated sees
+ * either the old or the new billboard for that minute.
+ */
+public class ScheduleSlotTable implements ScheduleLookup {
+    //The billboard and the scheduleID of the entry showing in each minute of the week
+    private final int[] billboards = new int[MINUTES_PER_WEEK];
+    private final int[] winners = new int[MINUTES_PER_WEEK];
+    //Every entry in the table by scheduleID, latest first, with the intervals of the week it covers
+    private final TreeMap<Integer, ScheduleEntry> entries = new TreeMap<>(Comparator.reverseOrder());
+    private final Map<Integer, int[]> intervals = new HashMap<>();
+    private long slotsChanged;
+
+    /**
+     * Bring the table up to date with the schedule, changing only the minutes
+     * of entries that have been added or removed since the last update.
+     * @param schedule every entry in the schedule
+     */
+    public synchronized void update(Collection<ScheduleEntry> schedule) {
+        Map<Integer, ScheduleEntry> current = new HashMap<>();
+        for (ScheduleEntry entry : schedule) {
+            current.put(entry.getScheduleID(), entry);
+        }
+
+        //Remove the entries no longer scheduled, handing their minutes on
+        List<Integer> removed = new ArrayList<>();
+        for (Integer scheduleID : entries.keySet()) {
+            if (!current.containsKey(scheduleID)) {
+                removed.add(scheduleID);
+            }
+        }
+        for (Integer scheduleID : removed) {
+            remove(scheduleID);
+        }
+
+        //Add the new entries, taking the minutes they win
+        for (ScheduleEntry entry : current.values()) {
+            if (!entries.containsKey(entry.getScheduleID())) {
+                add(entry);
+            }
+        }
+    }
+
+    /*
+     Adds an entry, taking every minute it covers from entries scheduled before it.
+     */
+    private void add(ScheduleEntry entry) {
+        int scheduleID = entry.getScheduleID();
+        int[] covered = entry.getWeekIntervals();
+        entries.put(scheduleID, entry);
+        intervals.put(scheduleID, covered);
+        for (int i = 0; i < covered.length; i += 2) {
+            for (int minute = covered[i]; minute < covered[i + 1]; minute++) {
+                if (scheduleID > winners[minute]) {
+                    winners[minute] = scheduleID;
+                    billboards[minute] = entry.getBillboardID();
+                    slotsChanged++;
+                }
+            }
+        }
+    }
+
+    /*
+     Removes an entry, giving each minute it was showing in to the latest
+     remaining entry that covers that minute.
+     */
+    private void remove(int scheduleID) {
+        entries.remove(scheduleID);
+        int[] covered = intervals.remove(scheduleID);
+        for (int i = 0; i < covered.length; i += 2) {
+            for (int minute = covered[i]; minute < covered[i + 1]; minute++) {
+                if (winners[minute] == scheduleID) {
+                    ScheduleEntry next = latestCovering(minute);
+                    winners[minute] = next == null ? 0 : next.getScheduleID();
+                    billboards[minute] = next == null ? NOTHING_SCHEDULED : next.getBillboardID();
+                    slotsChanged++;
+                }
+            }
+        }
+    }
+
+    /*
+     Returns the latest entry that covers a minute of the week, or null if none does.
+     */
+    private ScheduleEntry latestCovering(int minute) {
+        for (ScheduleEntry entry : entries.values()) {
+            if (covers(intervals.get(entry.getScheduleID()), minute)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /*
+     Returns true if a minute falls in one of an entry's intervals, which are in order.
+     */
+    private static boolean covers(int[] covered, int minute) {
+        int low = 0;
+        int high = covered.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (minute < covered[middle * 2]) {
+                high = middle - 1;
+            } else if (minute >= covered[middle * 2 + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int billboardAt(int minuteOfWeek) {
+        return billboards[Math.floorMod(minuteOfWeek, MINUTES_PER_WEEK)];
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d slotsChanged=%d", entries.size(), slotsChanged);
+    }
+}
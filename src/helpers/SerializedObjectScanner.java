@@ -0,0 +1,423 @@
+package helpers;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.io.ObjectStreamConstants.*;
+
+/**
+ * Finds where a serialised object ends in the bytes read so far, without
+ * deserialising it. A legacy request is a bare serialised object with no
+ * length, so this is how a non-blocking server tells that one has fully
+ * arrived before handing it to a worker.
+ *
+ * The bytes are walked following the grammar of the serialisation stream:
+ * strings and primitive arrays are skipped by their length, and the fields of
+ * an object are found from its class descriptor, which the stream carries
+ * before the object's data. Nothing is loaded or constructed.
+ *
+ * The same scanner is called again as more bytes arrive. A request is an
+ * array, so the scanner remembers where the last whole element of the
+ * outermost array ended and carries on from there, rather than walking the
+ * bytes already scanned again on every read.
+ */
+public class SerializedObjectScanner {
+    //deepest nesting of objects and class descriptors followed
+    private static final int MAX_DEPTH = 64;
+    private static final Incomplete INCOMPLETE = new Incomplete();
+
+    //class descriptor of each handle in the stream, null for other objects
+    private final List<ClassDesc> handles = new ArrayList<>();
+    private ByteBuffer in;
+    private int limit;
+    private int position;
+    private int depth;
+    //where scanning carries on: after the last whole element of the outermost array, or -1 to start again
+    private int resumeAt = -1;
+    private int handlesAt;
+    private int elementsLeft;
+
+    /*
+     Thrown when the bytes run out before the object does. Shared, as it only
+     signals that more bytes are needed.
+     */
+    private static final class Incomplete extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /*
+     What the stream says about a class: its name, flags, the type code of
+     each of its fields and its superclass.
+     */
+    private static final class ClassDesc {
+        final String name;
+        byte flags;
+        char[] types = new char[0];
+        ClassDesc superDesc;
+
+        ClassDesc(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Find the end of the serialised object at the start of a buffer. Call it
+     * again with the same buffer, or a copy holding the same bytes, as more
+     * bytes arrive.
+     * @param buffer the bytes read so far, from 0 up to its position
+     * @return the length of the object, or -1 if more bytes are needed
+     * @throws IOException if the bytes are not a serialised object
+     */
+    public int scan(ByteBuffer buffer) throws IOException {
+        in = buffer;
+        limit = buffer.position();
+        try {
+            if (resumeAt < 0) {
+                position = 0;
+                depth = 0;
+                handles.clear();
+                if (u2() != (STREAM_MAGIC & 0xFFFF) || u2() != STREAM_VERSION) {
+                    throw new StreamCorruptedException("Not a serialised object stream");
+                }
+                if (u1() != TC_ARRAY) {
+                    //not an array, so there is nowhere to carry on from
+                    position--;
+                    object();
+                    return position;
+                }
+                elementsLeft = arrayHeader();
+                checkpoint();
+            }
+
+            //Carry on after the last whole element of the outermost array
+            position = resumeAt;
+            depth = 1;
+            handles.subList(handlesAt, handles.size()).clear();
+            while (elementsLeft > 0) {
+                object();
+                elementsLeft--;
+                checkpoint();
+            }
+            resumeAt = -1;
+            return position;
+        } catch (Incomplete ex) {
+            return -1;
+        }
+    }
+
+    /*
+     Remember that everything up to here has been scanned.
+     */
+    private void checkpoint() {
+        resumeAt = position;
+        handlesAt = handles.size();
+    }
+
+    /*
+     Skip one object: a string, array, object, enum, class or a reference to
+     one seen before.
+     */
+    private void object() throws IOException {
+        enter();
+        byte code = u1();
+        switch (code) {
+            case TC_NULL:
+                break;
+            case TC_REFERENCE:
+                reference();
+                break;
+            case TC_STRING:
+                skip(u2());
+                handles.add(null);
+                break;
+            case TC_LONGSTRING:
+                skip(s8());
+                handles.add(null);
+                break;
+            case TC_ARRAY:
+                for (int left = arrayHeader(); left > 0; left--) {
+                    object();
+                }
+                break;
+            case TC_OBJECT:
+                ordinaryObject();
+                break;
+            case TC_CLASS:
+                classDesc();
+                handles.add(null);
+                break;
+            case TC_ENUM:
+                classDesc();
+                handles.add(null);
+                //the name of the constant
+                object();
+                break;
+            case TC_CLASSDESC:
+            case TC_PROXYCLASSDESC:
+                position--;
+                classDesc();
+                break;
+            default:
+                throw new StreamCorruptedException("Unexpected type code " + code);
+        }
+        depth--;
+    }
+
+    /*
+     Read an array's class and length, skipping its elements if they are
+     primitives. Returns the number of elements, each an object, left to skip.
+     */
+    private int arrayHeader() throws IOException {
+        ClassDesc desc = classDesc();
+        if (desc == null || desc.name == null || desc.name.length() < 2 || desc.name.charAt(0) != '[') {
+            throw new StreamCorruptedException("Array without an array class");
+        }
+        handles.add(null);
+        int length = s4();
+        if (length < 0) {
+            throw new StreamCorruptedException("Negative array length");
+        }
+        int width = primitiveWidth(desc.name.charAt(1));
+        if (width > 0) {
+            //primitive elements are all one size, so are skipped at once
+            skip((long) length * width);
+            return 0;
+        }
+        return length;
+    }
+
+    /*
+     Skip an object's data, which is the fields of each of its classes from
+     the top superclass down, along with anything written by the class itself.
+     */
+    private void ordinaryObject() throws IOException {
+        ClassDesc desc = classDesc();
+        if (desc == null) {
+            throw new StreamCorruptedException("Object without a class");
+        }
+        handles.add(null);
+        List<ClassDesc> hierarchy = new ArrayList<>();
+        for (ClassDesc current = desc; current != null; current = current.superDesc) {
+            hierarchy.add(0, current);
+        }
+        for (ClassDesc current : hierarchy) {
+            if ((current.flags & SC_SERIALIZABLE) != 0) {
+                for (char type : current.types) {
+                    value(type);
+                }
+                if ((current.flags & SC_WRITE_METHOD) != 0) {
+                    annotation();
+                }
+            } else if ((current.flags & SC_EXTERNALIZABLE) != 0) {
+                if ((current.flags & SC_BLOCK_DATA) == 0) {
+                    throw new StreamCorruptedException("Externalizable data without block mode");
+                }
+                annotation();
+            }
+        }
+    }
+
+    /*
+     Read a class descriptor, or a reference to one seen before. Returns null
+     for TC_NULL, which ends the chain of superclasses.
+     */
+    private ClassDesc classDesc() throws IOException {
+        enter();
+        byte code = u1();
+        ClassDesc desc;
+        switch (code) {
+            case TC_NULL:
+                desc = null;
+                break;
+            case TC_REFERENCE:
+                desc = reference();
+                if (desc == null) {
+                    throw new StreamCorruptedException("Reference to a class descriptor is not one");
+                }
+                break;
+            case TC_CLASSDESC:
+                desc = new ClassDesc(utf());
+                //serialVersionUID
+                skip(8);
+                handles.add(desc);
+                desc.flags = u1();
+                desc.types = new char[u2()];
+                for (int i = 0; i < desc.types.length; i++) {
+                    char type = (char) u1();
+                    //field name
+                    skip(u2());
+                    if (type == 'L' || type == '[') {
+                        //name of the field's class
+                        object();
+                    } else if (primitiveWidth(type) == 0) {
+                        throw new StreamCorruptedException("Unknown field type " + type);
+                    }
+                    desc.types[i] = type;
+                }
+                annotation();
+                desc.superDesc = classDesc();
+                break;
+            case TC_PROXYCLASSDESC:
+                desc = new ClassDesc(null);
+                desc.flags = SC_SERIALIZABLE;
+                handles.add(desc);
+                for (int interfaces = s4(); interfaces > 0; interfaces--) {
+                    skip(u2());
+                }
+                annotation();
+                desc.superDesc = classDesc();
+                break;
+            default:
+                throw new StreamCorruptedException("Unexpected class descriptor type code " + code);
+        }
+        depth--;
+        return desc;
+    }
+
+    /*
+     Skip the block data and objects written by a class, up to TC_ENDBLOCKDATA.
+     */
+    private void annotation() throws IOException {
+        while (true) {
+            byte code = u1();
+            if (code == TC_ENDBLOCKDATA) {
+                return;
+            } else if (code == TC_BLOCKDATA) {
+                skip(u1() & 0xFF);
+            } else if (code == TC_BLOCKDATALONG) {
+                int length = s4();
+                if (length < 0) {
+                    throw new StreamCorruptedException("Negative block data length");
+                }
+                skip(length);
+            } else {
+                position--;
+                object();
+            }
+        }
+    }
+
+    /*
+     Skip a field or array element of the given type code.
+     */
+    private void value(char type) throws IOException {
+        int width = primitiveWidth(type);
+        if (width > 0) {
+            skip(width);
+        } else {
+            object();
+        }
+    }
+
+    /*
+     Read a handle and return the class descriptor it refers to, or null if it
+     refers to some other object.
+     */
+    private ClassDesc reference() throws IOException {
+        int handle = s4() - baseWireHandle;
+        if (handle < 0 || handle >= handles.size()) {
+            throw new StreamCorruptedException("Invalid handle");
+        }
+        return handles.get(handle);
+    }
+
+    /*
+     Returns the size of a primitive type code, or 0 for objects and arrays.
+     */
+    private static int primitiveWidth(char type) {
+        switch (type) {
+            case 'B':
+            case 'Z':
+                return 1;
+            case 'C':
+            case 'S':
+                return 2;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'J':
+            case 'D':
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /*
+     Count one more level of nesting, refusing streams nested deep enough to
+     exhaust the stack.
+     */
+    private void enter() throws StreamCorruptedException {
+        if (++depth > MAX_DEPTH) {
+            throw new StreamCorruptedException("Serialised object nested too deeply");
+        }
+    }
+
+    private void skip(long count) throws IOException {
+        if (count < 0) {
+            throw new StreamCorruptedException("Negative length");
+        }
+        if (count > limit - position) {
+            throw INCOMPLETE;
+        }
+        position += (int) count;
+    }
+
+    private byte u1() throws IOException {
+        if (position >= limit) {
+            throw INCOMPLETE;
+        }
+        return in.get(position++);
+    }
+
+    private int u2() throws IOException {
+        if (limit - position < 2) {
+            throw INCOMPLETE;
+        }
+        int value = in.getShort(position) & 0xFFFF;
+        position += 2;
+        return value;
+    }
+
+    private int s4() throws IOException {
+        if (limit - position < 4) {
+            throw INCOMPLETE;
+        }
+        int value = in.getInt(position);
+        position += 4;
+        return value;
+    }
+
+    private long s8() throws IOException {
+        if (limit - position < 8) {
+            throw INCOMPLETE;
+        }
+        long value = in.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    /*
+     Read a short string such as a class name. Only its first characters are
+     looked at, so modified UTF-8 is read as UTF-8.
+     */
+    private String utf() throws IOException {
+        int length = u2();
+        int start = position;
+        skip(length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = in.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,492 @@
+package helpers;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Client side of the connection to the BillboardServer, shared by the
+ * control panel and the viewer.
+ *
+ * Two transports are supported, selected with the "transport" property in
+ * network.props:
+ *  - legacy: the request is written as a bare serialised object
+ *  - framed: the request is wrapped in a FrameCodec frame, which the
+ *            non-blocking server transport requires
+ *
+ * With the framed transport, "codec=binary" sends requests and responses
+ * with BinaryCodec instead of Java serialisation, and "keepAlive=true" keeps
+ * a single socket open and reuses it for every request. "compression=deflate"
+ * lets large requests and responses be compressed, with the Deflate level and
+ * the smallest payload worth compressing set by "compressionLevel" and
+ * "compressionMinBytes". Requests may be pipelined with send(): each
+ * is written as soon as it is made and a reader thread matches the responses
+ * to their requests by request ID. Otherwise each request opens a socket,
+ * sends the request array and waits for the server's response. A server
+ * that does not keep sockets open marks its first response with FLAG_CLOSE;
+ * any requests pipelined behind it are then sent again on a socket each, as
+ * is every later request on this connection.
+ *
+ * A subscription, made with subscribe(), holds a socket of its own open and
+ * receives every response the server pushes for it.
+ */
+public class ServerConnection {
+    public static final String LEGACY = "legacy";
+    public static final String FRAMED = "framed";
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+
+    private final String host;
+    private final int port;
+    private final boolean framed;
+    private final byte options;
+    private final boolean keepAlive;
+    private final FrameCompressor compressor;
+    private Link link;
+    //set once the server has closed a kept-alive socket after its first response
+    private volatile boolean serverCloses;
+
+    /**
+     * Creates a connection to the server that opens a socket per request.
+     * @param host server host name
+     * @param port server port
+     * @param transport "legacy" or "framed"; anything else is treated as legacy
+     */
+    public ServerConnection(String host, String port, String transport) {
+        this(host, port, transport, (byte) 0);
+    }
+
+    /**
+     * Creates a connection to the server. No socket is opened until the
+     * first request is sent.
+     * @param host server host name
+     * @param port server port
+     * @param transport "legacy" or "framed"; anything else is treated as legacy
+     * @param options FrameCodec preface options (framed transport only)
+     */
+    public ServerConnection(String host, String port, String transport, byte options) {
+        this(host, port, transport, options,
+                new FrameCompressor(DEFAULT_COMPRESSION_LEVEL, DEFAULT_COMPRESSION_MIN_BYTES));
+    }
+
+    /**
+     * Creates a connection to the server. No socket is opened until the
+     * first request is sent.
+     * @param host server host name
+     * @param port server port
+     * @param transport "legacy" or "framed"; anything else is treated as legacy
+     * @param options FrameCodec preface options (framed transport only)
+     * @param compressor compressor used for requests if OPTION_DEFLATE is set
+     */
+    public ServerConnection(String host, String port, String transport, byte options,
+                            FrameCompressor compressor) {
+        this.host = host;
+        this.port = Integer.parseInt(port);
+        this.framed = FRAMED.equals(transport);
+        this.options = framed ? options : 0;
+        this.keepAlive = (this.options & FrameCodec.OPTION_KEEP_ALIVE) != 0;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Creates a connection configured from the network.props properties
+     * "host", "port", "transport", "keepAlive", "codec", "compression",
+     * "compressionLevel" and "compressionMinBytes".
+     * @param props properties read from network.props
+     * @return the connection
+     */
+    public static ServerConnection fromProperties(Properties props) {
+        byte options = 0;
+        if (Boolean.parseBoolean(props.getProperty("keepAlive", "false"))) {
+            options |= FrameCodec.OPTION_KEEP_ALIVE;
+        }
+        if ("binary".equals(props.getProperty("codec"))) {
+            options |= FrameCodec.OPTION_BINARY;
+        }
+        if ("deflate".equals(props.getProperty("compression"))) {
+            options |= FrameCodec.OPTION_DEFLATE;
+        }
+        FrameCompressor compressor = new FrameCompressor(
+                Integer.parseInt(props.getProperty("compressionLevel", String.valueOf(DEFAULT_COMPRESSION_LEVEL))),
+                Integer.parseInt(props.getProperty("compressionMinBytes",
+                        String.valueOf(DEFAULT_COMPRESSION_MIN_BYTES))));
+        return new ServerConnection(props.getProperty("host"), props.getProperty("port"),
+                props.getProperty("transport", LEGACY), options, compressor);
+    }
+
+    /**
+     * Send a request to the server and wait for its response. A request on a
+     * kept-alive socket that the server has since closed is retried once on a
+     * new socket if it could not be written. Once it has been written the
+     * server may have actioned it, so it is only retried if it only reads.
+     * @param message request array, the first element being the request type
+     * @return the response sent by the server
+     * @throws IOException if the server cannot be reached
+     * @throws ClassNotFoundException if the response is of an unknown class
+     */
+    public Object sendReceive(Object[] message) throws IOException, ClassNotFoundException {
+        if (!keepAlive || serverCloses) {
+            return sendReceiveOnce(message);
+        }
+        Link current = currentLink();
+        boolean reused = current.sent.get() > 0;
+        Future<Object> response;
+        try {
+            response = current.send(message);
+        } catch (IOException ex) {
+            if (serverCloses) {
+                //the socket was closed by the server before the request was written
+                return sendReceiveOnce(message);
+            }
+            if (!reused) {
+                throw ex;
+            }
+            //the server closed the idle socket before the request reached it
+            return await(currentLink().send(message));
+        }
+        try {
+            //a request the server answered with FLAG_CLOSE before reading it
+            //has already been sent again by the reader thread
+            return await(response);
+        } catch (IOException ex) {
+            if (!reused || !readOnly(message)) {
+                //the server may have actioned the request before the socket was lost
+                throw ex;
+            }
+            return serverCloses ? sendReceiveOnce(message) : await(currentLink().send(message));
+        }
+    }
+
+    /**
+     * Send a request without waiting for its response. On a kept-alive
+     * connection several requests can be in flight at once; otherwise the
+     * request is sent and its response read before this method returns.
+     * @param message request array, the first element being the request type
+     * @return future completed with the response sent by the server
+     */
+    public Future<Object> send(Object[] message) {
+        if (keepAlive && !serverCloses) {
+            try {
+                return currentLink().send(message);
+            } catch (IOException ex) {
+                if (!serverCloses) {
+                    return failed(ex);
+                }
+                //the server does not keep sockets open, send it on a socket of its own
+            }
+        }
+        try {
+            return CompletableFuture.completedFuture(sendReceiveOnce(message));
+        } catch (IOException | ClassNotFoundException ex) {
+            return failed(ex);
+        }
+    }
+
+    /**
+     * Send a subscription request on a socket of its own and pass every
+     * response the server pushes for it to the listener, starting with the
+     * first, until the connection ends. Only the framed transport supports
+     * subscriptions: on the legacy transport the request is answered once and
+     * this method returns, as it does if the server does not hold the
+     * subscription open.
+     * @param message subscription request array, the first element being the request type
+     * @param listener called with each response, on the calling thread
+     * @throws IOException if the server cannot be reached or the connection is lost
+     * @throws ClassNotFoundException if a response is of an unknown class
+     */
+    public void subscribe(Object[] message, Consumer<Object> listener) throws IOException, ClassNotFoundException {
+        if (!framed) {
+            listener.accept(sendReceiveOnce(message));
+            return;
+        }
+        try (Socket socket = new Socket(host, port)) {
+            socket.setKeepAlive(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            FrameCodec.writePreface(out, (byte) (options | FrameCodec.OPTION_KEEP_ALIVE));
+            FrameCodec.writeFrame(out, requestFrame(1, message));
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            for (;;) {
+                FrameCodec.Frame frame = FrameCodec.readFrame(in);
+                listener.accept(decodeResponse(frame));
+                if ((frame.flags & FrameCodec.FLAG_CLOSE) != 0) {
+                    //the server answered once instead of holding the subscription
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the kept-alive socket, if any. Requests still waiting for a
+     * response fail with an IOException.
+     */
+    public synchronized void close() {
+        if (link != null) {
+            link.close(new IOException("Connection closed"));
+            link = null;
+        }
+    }
+
+    /*
+     Open a socket for a single request, closed once the response has been read.
+     */
+    private Object sendReceiveOnce(Object[] message) throws IOException, ClassNotFoundException {
+        //Create new socket instance with host and port
+        try (Socket socket = new Socket(host, port)) {
+            if (framed) {
+                return sendReceiveFramed(socket, message);
+            }
+            return sendReceiveLegacy(socket, message);
+        }
+    }
+
+    /*
+     Write the request as a bare serialised object and read the response the same way.
+     */
+    private Object sendReceiveLegacy(Socket socket, Object[] message) throws IOException, ClassNotFoundException {
+        //Create output stream and output object stream to
+        //send request information to the server.
+        ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
+        oos.writeObject(message);
+        oos.flush();
+
+        //Create input stream to receive the response from the server
+        ObjectInputStream ois = new ObjectInputStream(socket.getInputStream());
+        return ois.readObject();
+    }
+
+    /*
+     Write the preface and a single request frame, then read the response frame.
+     */
+    private Object sendReceiveFramed(Socket socket, Object[] message) throws IOException, ClassNotFoundException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        FrameCodec.writePreface(out, options);
+        FrameCodec.writeFrame(out, requestFrame(1, message));
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        return decodeResponse(FrameCodec.readFrame(in));
+    }
+
+    /*
+     Encode a request frame, compressing it if compression is enabled.
+     */
+    private FrameCodec.Frame requestFrame(int requestId, Object[] message) throws IOException {
+        byte[] payload = FrameCodec.encodeRequest(message, options);
+        if ((options & FrameCodec.OPTION_DEFLATE) != 0) {
+            return compressor.compress(requestId, (byte) 0, payload);
+        }
+        return new FrameCodec.Frame(requestId, (byte) 0, payload);
+    }
+
+    /*
+     Decode the response carried by a frame, inflating it if it is compressed.
+     */
+    private Object decodeResponse(FrameCodec.Frame frame) throws IOException, ClassNotFoundException {
+        return FrameCodec.decodeResponse(compressor.decompress(frame), options);
+    }
+
+    /*
+     Return the open kept-alive socket, opening a new one if there is none or
+     the last one was closed.
+     */
+    private synchronized Link currentLink() throws IOException {
+        if (link == null || link.closed) {
+            link = new Link(new Socket(host, port));
+        }
+        return link;
+    }
+
+    /*
+     Returns true if a request only reads from the server, so sending it again
+     after the socket was lost once it had been written cannot action it twice.
+     */
+    private static boolean readOnly(Object[] message) {
+        if (message.length == 0 || !(message[0] instanceof String)) {
+            return false;
+        }
+        switch ((String) message[0]) {
+            case Constants.RECEIVE_BB:
+            case Constants.RECEIVE_BB_NEXT:
+            case Constants.RECEIVE_SCHEDULE:
+            case Constants.SHOW_BB:
+            case Constants.SHOW_BB_PAGE:
+            case Constants.GET_BB:
+            case Constants.GET_USER_PERMISSIONS:
+            case Constants.VIEW_SCHEDULE:
+            case Constants.LIST_USERS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     Wait for a response, unwrapping the exception it failed with.
+     */
+    private static Object await(Future<Object> response) throws IOException, ClassNotFoundException {
+        try {
+            return response.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /*
+     Return a future that has already failed.
+     */
+    private static Future<Object> failed(Exception ex) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+    /*
+     A kept-alive socket. Requests are written under a lock so frames from
+     different threads do not interleave, and a daemon reader thread completes
+     the future of each request when its response arrives.
+     */
+    private class Link {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private final Map<Integer, Pending> waiting = new ConcurrentHashMap<>();
+        private final AtomicInteger nextRequestId = new AtomicInteger();
+        private final AtomicInteger sent = new AtomicInteger();
+        private volatile boolean closed;
+
+        Link(Socket socket) throws IOException {
+            this.socket = socket;
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            FrameCodec.writePreface(out, options);
+            out.flush();
+
+            Thread reader = new Thread(this::readResponses, "billboard-connection-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /*
+         Write a request frame and return the future its response completes.
+         */
+        CompletableFuture<Object> send(Object[] message) throws IOException {
+            int requestId = nextRequestId.incrementAndGet();
+            FrameCodec.Frame request = requestFrame(requestId, message);
+            CompletableFuture<Object> response = new CompletableFuture<>();
+            waiting.put(requestId, new Pending(message, response));
+            try {
+                synchronized (out) {
+                    if (closed) {
+                        throw new IOException("Connection closed");
+                    }
+                    FrameCodec.writeFrame(out, request);
+                }
+            } catch (IOException ex) {
+                waiting.remove(requestId);
+                close(ex);
+                throw ex;
+            }
+            sent.incrementAndGet();
+            return response;
+        }
+
+        /*
+         Read responses until the socket closes, completing the matching request.
+         */
+        private void readResponses() {
+            try {
+                for (;;) {
+                    FrameCodec.Frame frame = FrameCodec.readFrame(in);
+                    boolean last = (frame.flags & FrameCodec.FLAG_CLOSE) != 0;
+                    if (last) {
+                        //the server does not keep sockets open, so stop new requests
+                        //using this one, and send later requests on a socket each
+                        serverCloses = true;
+                        synchronized (out) {
+                            closed = true;
+                        }
+                    }
+                    Pending pending = waiting.remove(frame.requestId);
+                    if (pending != null) {
+                        try {
+                            pending.response.complete(decodeResponse(frame));
+                        } catch (IOException | ClassNotFoundException ex) {
+                            pending.response.completeExceptionally(ex);
+                        }
+                    }
+                    if (last) {
+                        resendWaiting();
+                        close(new IOException("Connection closed by server"));
+                        return;
+                    }
+                }
+            } catch (IOException ex) {
+                close(ex);
+            }
+        }
+
+        /*
+         Send every request still waiting again, on a socket each. The server
+         only reads the first request from a socket it does not keep open, so
+         the requests written after it were never actioned.
+         */
+        private void resendWaiting() {
+            for (Integer requestId : waiting.keySet()) {
+                Pending pending = waiting.remove(requestId);
+                if (pending == null) {
+                    continue;
+                }
+                try {
+                    pending.response.complete(sendReceiveOnce(pending.message));
+                } catch (IOException | ClassNotFoundException ex) {
+                    pending.response.completeExceptionally(ex);
+                }
+            }
+        }
+
+        /*
+         Close the socket and fail every request still waiting for a response.
+         */
+        void close(IOException cause) {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                //nothing more can be done with this socket
+            }
+            for (Integer requestId : waiting.keySet()) {
+                Pending pending = waiting.remove(requestId);
+                if (pending != null) {
+                    pending.response.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+
+    /*
+     A request written to a kept-alive socket and the future its response completes.
+     */
+    private static class Pending {
+        private final Object[] message;
+        private final CompletableFuture<Object> response;
+
+        private Pending(Object[] message, CompletableFuture<Object> response) {
+            this.message = message;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import billboardServer.BillboardPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the BillboardPublisher, which pushes the scheduled billboard
+ * to subscribed viewers. The scheduled billboard is supplied by the test, and
+ * checks are run directly rather than once a minute.
+ */
+class TestBillboardPublisher {
+    private String[] scheduled;
+    private BillboardPublisher publisher;
+
+    /*
+     Create a publisher whose scheduled billboard is set by each test.
+     */
+    @BeforeEach
+    void newPublisher() {
+        scheduled = new String[]{"TestBBName", "TestUser", "XMLContent"};
+        publisher = new BillboardPublisher(() -> scheduled.clone());
+    }
+
+    @Test
+    /*
+     Test subscribing while the scheduled billboard stays the same.
+     Expected: the subscriber is given the current billboard and nothing is pushed.
+     */
+    void test1_SubscribeReturnsCurrent() {
+        List<String[]> pushed = new ArrayList<>();
+        assertArrayEquals(scheduled, publisher.subscribe(pushed::add));
+        assertFalse(publisher.check());
+        assertTrue(pushed.isEmpty());
+        assertEquals(1, publisher.getSubscriberCount());
+    }
+
+    @Test
+    /*
+     Test a change of the scheduled billboard.
+     Expected: the new billboard is pushed to every subscriber, once.
+     */
+    void test2_ChangeIsPushed() {
+        List<String[]> first = new ArrayList<>();
+        List<String[]> second = new ArrayList<>();
+        publisher.subscribe(first::add);
+        publisher.subscribe(second::add);
+
+        scheduled = new String[]{"TestBBName2", "TestUser", "XMLContent2"};
+        assertTrue(publisher.check());
+        assertFalse(publisher.check());
+        assertEquals(1, first.size());
+        assertArrayEquals(scheduled, first.get(0));
+        assertEquals(1, second.size());
+    }
+
+    @Test
+    /*
+     Test a subscriber whose connection has closed, and one that unsubscribed.
+     Expected: neither is pushed the next billboard and both are removed.
+     */
+    void test3_ClosedAndUnsubscribedAreDropped() {
+        List<String[]> pushed = new ArrayList<>();
+        BillboardPublisher.Subscriber unsubscribed = pushed::add;
+        publisher.subscribe(billboard -> {
+            throw new IOException("Connection closed");
+        });
+        publisher.subscribe(unsubscribed);
+        publisher.unsubscribe(unsubscribed);
+
+        scheduled = new String[]{"TestBBName2", "TestUser", "XMLContent2"};
+        assertTrue(publisher.check());
+        assertTrue(pushed.isEmpty());
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+}
@@ -1,11 +1,14 @@
 import billboardServer.BillboardServer;
+import helpers.ContentTag;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 
+import static helpers.Constants.NOT_MODIFIED;
 import static org.junit.jupiter.api.Assertions.*;
 /*
  * Test class for BillboardServer. Tests are performed by
@@ -1185,6 +1188,143 @@ class TestBillboardServer {
         assertEquals(expected_response, response);
     }
 
+    /*********************** Test batched requests  ***************************/
+
+    @Test
+    /*
+     Test a batch carrying two requests.
+     Expected: the responses are returned in the order of the requests, each
+               equal to the response of the request sent on its own.
+     */
+    void test89_batch() {
+        server.setClassAsTest();
+        String password = String.valueOf("Password".hashCode());
+        Object[] batch = {"BATCH", new String[]{"LOGIN_REQUEST", "TestUser", password},
+                new String[]{"LOGIN_REQUEST", "UnregisteredUser", password}};
+        Object[] responses = (Object[]) server.dispatch(batch);
+        assertEquals(2, responses.length);
+        assertEquals("Login Successful", ((String[]) responses[0])[0]);
+        assertEquals("Login Error", ((String[]) responses[1])[0]);
+    }
+
+    @Test
+    /*
+     Test a batch containing malformed requests, a request that is not an array, a
+     null request and a nested batch.
+     Expected: each gets a null response and the remaining request is still actioned.
+     */
+    void test90_batchWithInvalidRequests() {
+        server.setClassAsTest();
+        Object[] batch = {"BATCH", new String[]{"LOGIN_REQUEST"}, new Object[]{"BATCH"}, "LOGOUT_REQUEST", null,
+                new Object[0], new String[]{"LOGOUT_REQUEST", "TestSessionToken"}};
+        Object[] responses = (Object[]) server.dispatch(batch);
+        for (int i = 0; i < 5; i++) {
+            assertNull(responses[i]);
+        }
+        assertNotNull(responses[5]);
+    }
+
+    /*********************** Test paged billboard requests  ***************************/
+
+    @Test
+    /*
+     Test reading the billboards one page at a time.
+     Expected: each page holds one billboard, following the billboard ID of the
+               previous page, and together the pages hold every billboard.
+     */
+    void test91_showBillboardsPage() {
+        server.setClassAsTest();
+        Map<String, String[]> all = server.showBillboards("TestSessionToken");
+        Map<String, String[]> paged = new HashMap<>();
+        Map<String, String[]> page = server.showBillboardsPage("TestSessionToken", 0, 1);
+        while (!page.isEmpty()) {
+            assertEquals(1, page.size());
+            String id = page.keySet().iterator().next();
+            assertArrayEquals(all.get(id), page.get(id));
+            paged.putAll(page);
+            page = server.showBillboardsPage("TestSessionToken", Integer.parseInt(id), 1);
+        }
+        assertEquals(all.keySet(), paged.keySet());
+    }
+
+    @Test
+    /*
+     Test a paged request sent through dispatch, as a legacy client would.
+     Expected: string arguments are accepted, and an invalid session token is
+               returned as part of the server acknowledgement.
+     */
+    void test92_showBillboardsPageDispatch() {
+        server.setClassAsTest();
+        Map<?, ?> page = (Map<?, ?>) server.dispatch(
+                new String[]{"SHOW_BB_PAGE", "TestSessionToken", "0", "20"});
+        assertTrue(page.containsKey("1"));
+        page = (Map<?, ?>) server.dispatch(
+                new String[]{"SHOW_BB_PAGE", "IncorrectSessionToken", "0", "20"});
+        assertEquals("Invalid Session Token", ((String[]) page.get("-1"))[0]);
+    }
+
+    @Test
+    /*
+     Test a viewer request carrying the tag of a billboard that is not scheduled.
+     Expected: the scheduled billboard (or error) is sent rather than NOT_MODIFIED,
+               along with when to poll again.
+     */
+    void test93_receiveBillboardWithStaleTag() {
+        String stale = ContentTag.of(new String[]{"TestBBName", "TestUser", "OldXMLContent"});
+        Object[] response = (Object[]) server.dispatch(new Object[]{"RECEIVE_BB", stale});
+        assertNotEquals(NOT_MODIFIED, response[0]);
+        assertTrue(response[0] instanceof String[]);
+        assertTrue((Long) response[1] >= 1000);
+    }
+
+    @Test
+    /*
+     Test a viewer request for the scheduled billboard and the one after it.
+     Expected: the scheduled billboard (or error) is sent in full, followed by
+               the next billboard, the time of the change, the server's time
+               and when to poll again.
+     */
+    void test94_receiveBillboardAhead() {
+        long before = System.currentTimeMillis();
+        Object[] response = (Object[]) server.dispatch(new Object[]{"RECEIVE_BB_NEXT", null, null});
+        assertEquals(5, response.length);
+        assertTrue(response[0] instanceof String[]);
+        if (response[1] == null) {
+            assertEquals(Long.MAX_VALUE, response[2]);
+        }
+        assertTrue((Long) response[3] >= before);
+    }
+
+    @Test
+    /*
+     Test the poll interval sent to a viewer, with and without a content tag.
+     Expected: a viewer sending no tag gets the billboard alone, as older
+               viewers expect; one sending a tag gets an interval between a
+               second and the default maximum staleness of two minutes.
+     */
+    void test95_receiveBillboardCheckAfter() {
+        assertTrue(server.dispatch(new Object[]{"RECEIVE_BB"}) instanceof String[]);
+        Object[] response = (Object[]) server.dispatch(new Object[]{"RECEIVE_BB", null});
+        long checkAfter = (Long) response[1];
+        assertTrue(checkAfter >= 1000 && checkAfter <= 120_000);
+    }
+
+    @Test
+    /*
+     Test a viewer request for the whole schedule.
+     Expected: either the schedule, starting with its version, or an error
+               message if MariaDB is not active.
+     */
+    void test96_receiveSchedule() {
+        Object response = server.dispatch(new Object[]{"RECEIVE_SCHEDULE", null});
+        if (response instanceof String[]) {
+            assertEquals("Database is not running, cannot read the schedule.", ((String[]) response)[0]);
+        } else {
+            assertEquals(7, ((Object[]) response).length);
+            assertTrue((Boolean) ((Object[]) response)[1]);
+        }
+    }
+
 
 //    @Test
 //    /*
@@ -0,0 +1,117 @@
+import helpers.BinaryCodec;
+import helpers.Opcodes;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static helpers.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the BinaryCodec used by framed connections that set the
+ * binary option. Requests and responses are encoded and decoded in memory.
+ */
+class TestBinaryCodec {
+
+    @Test
+    /*
+     Test a request built from strings, as the control panel sends it.
+     Expected: the request string is restored from its opcode and the boolean
+               and integer arguments arrive typed.
+     */
+    void test1_RequestArgumentsTyped() throws IOException {
+        String[] message = {SCHEDULE_BB, "token", "admin", "4", "09", "30", "Monday", "true", "false", "0", "15"};
+        Object[] decoded = BinaryCodec.decodeRequest(BinaryCodec.encodeRequest(message));
+
+        assertEquals(SCHEDULE_BB, decoded[0]);
+        assertEquals("token", decoded[1]);
+        assertEquals(9, decoded[4]);
+        assertEquals("Monday", decoded[6]);
+        assertEquals(Boolean.TRUE, decoded[7]);
+        assertEquals(Boolean.FALSE, decoded[8]);
+        assertEquals(15, decoded[10]);
+    }
+
+    @Test
+    /*
+     Test an integer argument that is not a number.
+     Expected: the argument is sent unchanged as a string.
+     */
+    void test2_UnparsableIntegerKeptAsString() throws IOException {
+        String[] message = {SCHEDULE_BB, "token", "admin", "4", "09", "30", "Monday", "true", "false", "0", "abc"};
+        Object[] decoded = BinaryCodec.decodeRequest(BinaryCodec.encodeRequest(message));
+        assertEquals("abc", decoded[10]);
+    }
+
+    @Test
+    /*
+     Test the response types returned by the server.
+     Expected: strings, string arrays (including null elements) and maps of
+               string arrays decode to equal values.
+     */
+    void test3_ResponseRoundTrip() throws IOException {
+        assertEquals("Success", BinaryCodec.decode(BinaryCodec.encode("Success")));
+        assertNull(BinaryCodec.decode(BinaryCodec.encode(null)));
+
+        String[] billboard = {"name", "creator", "<billboard>\u00e9</billboard>", null};
+        assertArrayEquals(billboard, (String[]) BinaryCodec.decode(BinaryCodec.encode(billboard)));
+
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put("1", new String[]{"first", "admin"});
+        billboards.put("2", new String[]{"second", "bob"});
+        Map<?, ?> decoded = (Map<?, ?>) BinaryCodec.decode(BinaryCodec.encode(billboards));
+        assertEquals(2, decoded.size());
+        assertArrayEquals(billboards.get("2"), (String[]) decoded.get("2"));
+    }
+
+    @Test
+    /*
+     Test a request with an unknown opcode and a truncated request.
+     Expected: both are rejected with an IOException.
+     */
+    void test4_RejectsMalformedRequest() throws IOException {
+        assertThrows(IOException.class, () -> BinaryCodec.decodeRequest(new byte[]{0, 99, 0}));
+
+        byte[] request = BinaryCodec.encodeRequest(new String[]{LOGIN_REQUEST, "admin", "hash"});
+        byte[] truncated = new byte[request.length - 2];
+        System.arraycopy(request, 0, truncated, 0, truncated.length);
+        assertThrows(IOException.class, () -> BinaryCodec.decodeRequest(truncated));
+    }
+
+    @Test
+    /*
+     Test that every request string has an opcode.
+     Expected: each opcode maps back to the request string it was found for.
+     */
+    void test5_OpcodesCoverCommands() {
+        String[] commands = {LOGIN_REQUEST, SHOW_BB, CREATE_EDIT, GET_BB, DELETE_BB, VIEW_SCHEDULE, SCHEDULE_BB,
+                REMOVE_BB, LIST_USERS, CREATE_USER, GET_USER_PERMISSIONS, SET_USER_PERMISSIONS,
+                SET_USER_PASSWORD, DELETE_USER, LOGOUT_REQUEST, RECEIVE_BB};
+        for (String command : commands) {
+            assertEquals(command, Opcodes.command(Opcodes.forCommand(command)));
+        }
+        assertEquals(-1, Opcodes.forCommand("UNKNOWN"));
+    }
+
+    @Test
+    /*
+     Test requests with the most arguments the count byte holds, and one more.
+     Expected: 255 arguments round trip, 256 are rejected with an IOException
+               instead of the count wrapping.
+     */
+    void test6_ArgumentCountLimited() throws IOException {
+        Object[] largest = new Object[256];
+        largest[0] = BATCH;
+        for (int i = 1; i < largest.length; i++) {
+            largest[i] = "argument" + i;
+        }
+        assertArrayEquals(largest, BinaryCodec.decodeRequest(BinaryCodec.encodeRequest(largest)));
+
+        Object[] tooMany = new Object[257];
+        System.arraycopy(largest, 0, tooMany, 0, largest.length);
+        tooMany[256] = "argument256";
+        assertThrows(IOException.class, () -> BinaryCodec.encodeRequest(tooMany));
+    }
+}
@@ -0,0 +1,62 @@
+import billboardServer.CommandRegistry;
+import helpers.Opcodes;
+import org.junit.jupiter.api.Test;
+
+import static helpers.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the CommandRegistry the BillboardServer dispatches
+ * requests through.
+ */
+class TestCommandRegistry {
+
+    @Test
+    /*
+     Test dispatching a request to its registered handler.
+     Expected: the handler's response is returned and the request is counted.
+     */
+    void test1_DispatchesToHandler() {
+        CommandRegistry commands = new CommandRegistry();
+        commands.register(Opcodes.LOGOUT_REQUEST, client_data -> "Logged out " + client_data[1]);
+
+        assertEquals("Logged out token", commands.dispatch(new Object[]{LOGOUT_REQUEST, "token"}));
+        assertTrue(commands.getStats(Opcodes.LOGOUT_REQUEST).startsWith("count=1 errors=0"));
+    }
+
+    @Test
+    /*
+     Test dispatching a request type with no handler.
+     Expected: null is returned.
+     */
+    void test2_UnknownCommand() {
+        CommandRegistry commands = new CommandRegistry();
+        assertNull(commands.dispatch(new Object[]{"UNKNOWN"}));
+        assertNull(commands.dispatch(new Object[]{RECEIVE_BB}));
+        assertNull(commands.getStats(Opcodes.RECEIVE_BB));
+    }
+
+    @Test
+    /*
+     Test a handler that throws an exception.
+     Expected: the exception is passed on and counted as an error.
+     */
+    void test3_CountsErrors() {
+        CommandRegistry commands = new CommandRegistry();
+        commands.register(Opcodes.SHOW_BB, client_data -> client_data[5]);
+
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> commands.dispatch(new Object[]{SHOW_BB, "token"}));
+        assertTrue(commands.getStats(Opcodes.SHOW_BB).startsWith("count=1 errors=1"));
+    }
+
+    @Test
+    /*
+     Test registering a handler under an opcode that is not defined.
+     Expected: an IllegalArgumentException is thrown.
+     */
+    void test4_InvalidOpcode() {
+        CommandRegistry commands = new CommandRegistry();
+        assertThrows(IllegalArgumentException.class, () -> commands.register((short) 0, client_data -> null));
+    }
+}
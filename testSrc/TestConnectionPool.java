@@ -0,0 +1,155 @@
+import billboardServer.ConnectionPool;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the ConnectionPool. The pool is given fake connections that
+ * record how they are used, so no database is required.
+ */
+class TestConnectionPool {
+    private final List<FakeConnection> opened = new ArrayList<>();
+
+    /*
+     State of a fake physical connection.
+     */
+    private static class FakeConnection {
+        boolean closed;
+        boolean autoCommit = true;
+        int rollbacks;
+        int prepared;
+    }
+
+    /*
+     Open a fake connection and remember it.
+     */
+    private Connection openFake() {
+        FakeConnection fake = new FakeConnection();
+        opened.add(fake);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            fake.closed = true;
+                            return null;
+                        case "isClosed":
+                            return fake.closed;
+                        case "isValid":
+                            return !fake.closed;
+                        case "getAutoCommit":
+                            return fake.autoCommit;
+                        case "setAutoCommit":
+                            fake.autoCommit = (Boolean) args[0];
+                            return null;
+                        case "rollback":
+                            fake.rollbacks++;
+                            return null;
+                        case "prepareStatement":
+                            fake.prepared++;
+                            return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, (statement, call, values) -> null);
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    /*
+     Test taking and closing a connection twice.
+     Expected: the same physical connection is reused and left open, and
+               closing a connection twice returns it to the pool once.
+     */
+    void test1_ConnectionIsReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::openFake, 0, 2, 100, 300, 1, 8);
+        Connection first = pool.acquire();
+        first.close();
+        first.close();
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::createStatement);
+
+        Connection second = pool.acquire();
+        assertEquals(1, opened.size());
+        assertEquals(1, pool.getActiveCount());
+        second.close();
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        assertFalse(opened.get(0).closed);
+    }
+
+    @Test
+    /*
+     Test taking more connections than the pool allows.
+     Expected: the extra request times out, and is counted.
+     */
+    void test2_AcquireTimesOut() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::openFake, 0, 1, 50, 300, 1, 8);
+        Connection held = pool.acquire();
+        assertThrows(SQLTimeoutException.class, pool::acquire);
+        assertTrue(pool.toString().contains("timeouts=1"));
+        held.close();
+        pool.acquire().close();
+    }
+
+    @Test
+    /*
+     Test a connection returned with a transaction still open.
+     Expected: the transaction is rolled back and auto-commit restored.
+     */
+    void test3_OpenTransactionRolledBack() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::openFake, 0, 1, 100, 300, 1, 8);
+        Connection connection = pool.acquire();
+        connection.setAutoCommit(false);
+        connection.close();
+        assertEquals(1, opened.get(0).rollbacks);
+        assertTrue(opened.get(0).autoCommit);
+    }
+
+    @Test
+    /*
+     Test a pool whose database cannot be reached.
+     Expected: acquire throws, and the failed attempt does not use up the pool.
+     */
+    void test4_FailedOpenReleasesSlot() {
+        ConnectionPool pool = new ConnectionPool(() -> {
+            throw new SQLException("Database is not running");
+        }, 0, 1, 50, 300, 1, 8);
+        assertThrows(SQLException.class, pool::acquire);
+        assertThrows(SQLException.class, pool::acquire);
+        assertEquals(0, pool.getActiveCount());
+        assertTrue(pool.toString().contains("timeouts=0"));
+    }
+
+    @Test
+    /*
+     Test preparing the same SQL again after closing the statement, and while
+     it is still open.
+     Expected: a closed statement is reused, even by the next user of the
+               connection, but an open one is never shared.
+     */
+    void test5_StatementsAreCached() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::openFake, 0, 1, 100, 300, 1, 8);
+        Connection connection = pool.acquire();
+        PreparedStatement first = connection.prepareStatement("SELECT * FROM users WHERE userName = ?");
+        first.close();
+        assertThrows(SQLException.class, first::executeQuery);
+        connection.close();
+
+        connection = pool.acquire();
+        PreparedStatement reused = connection.prepareStatement("SELECT * FROM users WHERE userName = ?");
+        PreparedStatement second = connection.prepareStatement("SELECT * FROM users WHERE userName = ?");
+        assertEquals(2, opened.get(0).prepared);
+        reused.close();
+        second.close();
+        connection.close();
+        assertTrue(pool.toString().contains("prepared=2 reused=1"));
+    }
+}
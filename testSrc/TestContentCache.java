@@ -0,0 +1,135 @@
+import billboardViewer.ContentCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the viewer's on-disk ContentCache. Each test uses a new
+ * cache file in a temporary directory.
+ */
+class TestContentCache {
+    private static final String[] BILLBOARD = {"TestBBName", "TestUser",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<billboard>\n<message>Cached</message>\n</billboard>"};
+
+    private Path directory;
+    private Path file;
+
+    /*
+     Create a temporary directory for the cache file.
+     */
+    @BeforeEach
+    void newDirectory() throws IOException {
+        directory = Files.createTempDirectory("content-cache");
+        file = directory.resolve("viewer-cache.dat");
+    }
+
+    /*
+     Remove the cache file and its directory.
+     */
+    @AfterEach
+    void removeDirectory() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    /*
+     Test storing entries and reading them after the cache is opened again.
+     Expected: the latest value of each key is read back, and missing keys are null.
+     */
+    void test1_ReopenKeepsEntries() throws IOException {
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            cache.put("bb:tag1", BILLBOARD);
+            cache.put("showing", new String[]{"old"});
+            cache.put("showing", new String[]{"tag1"});
+            assertArrayEquals(BILLBOARD, cache.get("bb:tag1"));
+        }
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(BILLBOARD, cache.get("bb:tag1"));
+            assertArrayEquals(new String[]{"tag1"}, cache.get("showing"));
+            assertNull(cache.get("bb:missing"));
+        }
+    }
+
+    @Test
+    /*
+     Test storing more than the size budget allows.
+     Expected: the file stays within the budget, the least recently used
+               entries are evicted and a recently read entry is kept.
+     */
+    void test2_EvictsLeastRecentlyUsed() throws IOException {
+        long budget = 16 * 1024;
+        try (ContentCache cache = new ContentCache(file, budget)) {
+            String[] value = {new String(new char[1000]).replace('\0', 'x')};
+            cache.put("first", value);
+            for (int i = 0; i < 40; i++) {
+                cache.put("bb:" + i, value);
+                //keep the first entry in use
+                assertNotNull(cache.get("first"));
+            }
+            assertTrue(Files.size(file) <= budget);
+            assertNotNull(cache.get("first"));
+            assertNotNull(cache.get("bb:39"));
+            assertNull(cache.get("bb:0"));
+        }
+        try (ContentCache cache = new ContentCache(file, budget)) {
+            assertNotNull(cache.get("first"));
+            assertNotNull(cache.get("bb:39"));
+        }
+    }
+
+    @Test
+    /*
+     Test opening a cache whose last record was damaged, as by a crash while writing.
+     Expected: the records before it are read, the damaged one is dropped,
+               and new entries can still be stored.
+     */
+    void test3_DamagedRecordIgnored() throws IOException {
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            cache.put("bb:tag1", BILLBOARD);
+            cache.put("bb:tag2", BILLBOARD);
+        }
+        //Change the last byte of the second record's value
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            long last = raw.length() - 5;
+            raw.seek(last);
+            int value = raw.read();
+            raw.seek(last);
+            raw.write(value ^ 0xFF);
+        }
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(BILLBOARD, cache.get("bb:tag1"));
+            assertNull(cache.get("bb:tag2"));
+            cache.put("bb:tag3", BILLBOARD);
+        }
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(BILLBOARD, cache.get("bb:tag3"));
+        }
+    }
+
+    @Test
+    /*
+     Test opening a file that is not a cache.
+     Expected: the file is started again as an empty cache.
+     */
+    void test4_UnrecognisedFileStartedAgain() throws IOException {
+        Files.write(file, "not a cache file".getBytes());
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            assertEquals(0, cache.size());
+            cache.put("showing", new String[]{"tag1"});
+        }
+        try (ContentCache cache = new ContentCache(file, 1 << 20)) {
+            assertArrayEquals(new String[]{"tag1"}, cache.get("showing"));
+        }
+    }
+}
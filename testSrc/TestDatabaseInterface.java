@@ -1,7 +1,17 @@
 import billboardServer.DatabaseInterface;
 import billboardServer.MockDatabase;
 import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static helpers.Constants.DUPLICATE_USER_RESPONSE;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -66,5 +76,75 @@ class TestDatabaseInterface {
         assertFalse(sessionIsValidated);
     }
 
+    @Test
+    /*
+     Test requests whose update fails, on a fake connection whose statements
+     record whether they are closed.
+     Expected: the failure is reported, and every statement and result set
+               opened is closed, as on success.
+     */
+    void test4_StatementsClosedWhenUpdateFails() {
+        AtomicInteger open = new AtomicInteger();
+        AtomicInteger opened = new AtomicInteger();
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("prepareStatement")) {
+                        return null;
+                    }
+                    opened.incrementAndGet();
+                    open.incrementAndGet();
+                    String sql = (String) args[0];
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                            new Class<?>[]{PreparedStatement.class}, (statement, call, values) -> {
+                                switch (call.getName()) {
+                                    case "close":
+                                        open.decrementAndGet();
+                                        return null;
+                                    case "executeUpdate":
+                                        if (sql.startsWith("INSERT INTO USERS")) {
+                                            throw new SQLIntegrityConstraintViolationException("Duplicate entry");
+                                        }
+                                        throw new SQLException("Connection reset");
+                                    case "executeQuery":
+                                        open.incrementAndGet();
+                                        return fakeRow(open);
+                                    default:
+                                        return null;
+                                }
+                            });
+                });
+        DatabaseInterface dbInterface = new DatabaseInterface();
+        dbInterface.getListOfToken().put("ClosedStatementsToken", new Date());
 
-}
\ No newline at end of file
+        assertEquals(DUPLICATE_USER_RESPONSE, dbInterface.createUser("ClosedStatementsToken", "TestAdmin",
+                "TestUser", "Password", false, true, true, true, true, false, connection));
+        assertEquals("Create schedule failed due to SQL Error, please contact system administration.",
+                dbInterface.scheduleBillboard("ClosedStatementsToken", "TestAdmin", "2", 9, 0, 1, false, false,
+                        "0", "60", connection));
+        assertEquals("SQL error updating permissions", dbInterface.setUserPermissions("ClosedStatementsToken",
+                "TestAdmin", "TestUser", true, true, true, true, connection));
+        assertEquals(7, opened.get());
+        assertEquals(0, open.get());
+        dbInterface.getListOfToken().remove("ClosedStatementsToken");
+    }
+
+    /*
+     A result set of one row in which every permission is granted, which
+     records when it is closed.
+     */
+    private static ResultSet fakeRow(AtomicInteger open) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (result, call, values) -> {
+                    switch (call.getName()) {
+                        case "close":
+                            open.decrementAndGet();
+                            return null;
+                        case "next":
+                        case "getBoolean":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,70 @@
+import helpers.FontFit;
+import helpers.MaxInfoFontSize;
+import helpers.stuffFromTheInternet.GraphicsUtilities;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for FontFit, checked against the searches it replaces.
+ */
+class TestFontFit {
+    private static final String MESSAGE = "Welcome to the billboard";
+    private static final String INFORMATION = "Please wait for the billboard to refresh or press ESC to exit.";
+
+    private FontFit fontFit;
+    private Graphics2D g;
+    private Font font;
+
+    /*
+     Create a new FontFit, and a full-screen image to measure with as the viewer did.
+     */
+    @BeforeEach
+    void newFontFit() {
+        fontFit = new FontFit();
+        g = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB).createGraphics();
+        font = new Font("Arial", Font.PLAIN, 12);
+    }
+
+    @Test
+    /*
+     Test sizing a single line of text in several spaces.
+     Expected: the same sizes as GraphicsUtilities.getMaxFittingFontSize.
+     */
+    void test1_SameAsSingleLineSearch() {
+        int[][] spaces = {{1920, 1080}, {1920, 360}, {1440, 540}, {200, 50}};
+        for (int[] space : spaces) {
+            assertEquals(GraphicsUtilities.getMaxFittingFontSize(g, font, MESSAGE, space[0], space[1]),
+                    fontFit.maxFittingSize(font, MESSAGE, space[0], space[1]));
+        }
+    }
+
+    @Test
+    /*
+     Test sizing text wrapped across lines, with and without a limit below the largest size.
+     Expected: the same sizes as MaxInfoFontSize.getMaxFittingFontSize.
+     */
+    void test2_SameAsWrappedSearch() {
+        assertEquals(MaxInfoFontSize.getMaxFittingFontSize(g, font, INFORMATION, 1440, 540, 277),
+                fontFit.maxWrappingSize(font, INFORMATION, 1440, 540, 277));
+        assertEquals(MaxInfoFontSize.getMaxFittingFontSize(g, font, INFORMATION, 1440, 360, 40),
+                fontFit.maxWrappingSize(font, INFORMATION, 1440, 360, 40));
+    }
+
+    @Test
+    /*
+     Test sizing the same text in the same space twice, then in a different space.
+     Expected: the second search is answered from the sizes kept, the third is searched.
+     */
+    void test3_SizesKept() {
+        int first = fontFit.maxFittingSize(font, MESSAGE, 1920, 360);
+        assertEquals(first, fontFit.maxFittingSize(font, MESSAGE, 1920, 360));
+        assertTrue(fontFit.toString().contains("hits=1 misses=1"));
+        fontFit.maxFittingSize(font, MESSAGE, 960, 360);
+        assertTrue(fontFit.toString().contains("hits=1 misses=2"));
+    }
+}
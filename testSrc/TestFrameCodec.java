@@ -0,0 +1,146 @@
+import helpers.FrameCodec;
+import helpers.FrameCompressor;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the FrameCodec used by the framed client/server protocol.
+ * Frames are written to and read from byte arrays so no server is required.
+ */
+class TestFrameCodec {
+
+    @Test
+    /*
+     Test writing and reading back a request frame.
+     Expected: the request ID, flags and request array are unchanged.
+     */
+    void test1_FrameRoundTrip() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        String[] request = {"Login", "admin", "hash"};
+        FrameCodec.writeFrame(out, 7, (byte) 0, FrameCodec.serialize(request));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        FrameCodec.Frame frame = FrameCodec.readFrame(in);
+        assertEquals(7, frame.requestId);
+        assertEquals(0, frame.flags);
+        assertArrayEquals(request, (String[]) FrameCodec.deserialize(frame.payload));
+    }
+
+    @Test
+    /*
+     Test that a frame encoded into a buffer matches one written to a stream.
+     Expected: both encodings contain the same bytes.
+     */
+    void test2_EncodeMatchesStream() throws IOException {
+        byte[] payload = FrameCodec.serialize("Viewer");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeFrame(new DataOutputStream(bytes), 3, (byte) 0, payload);
+
+        ByteBuffer encoded = FrameCodec.encodeFrame(3, (byte) 0, payload);
+        byte[] buffered = new byte[encoded.remaining()];
+        encoded.get(buffered);
+        assertArrayEquals(bytes.toByteArray(), buffered);
+    }
+
+    @Test
+    /*
+     Test reading a preface written by a client.
+     Expected: the magic number is read first and the options are returned.
+     */
+    void test3_Preface() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writePreface(new DataOutputStream(bytes), (byte) 5);
+        assertEquals(FrameCodec.PREFACE_LENGTH, bytes.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(FrameCodec.MAGIC, in.readInt());
+        assertEquals(5, FrameCodec.readPrefaceOptions(in));
+    }
+
+    @Test
+    /*
+     Test a frame header with a length larger than the maximum payload.
+     Expected: an IOException is thrown before any payload is allocated.
+     */
+    void test4_RejectsOversizedFrame() {
+        byte[] header = ByteBuffer.allocate(FrameCodec.HEADER_LENGTH)
+                .putInt(FrameCodec.MAX_PAYLOAD + 1).putInt(1).put((byte) 0).array();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        assertThrows(IOException.class, () -> FrameCodec.readFrame(in));
+    }
+
+    @Test
+    /*
+     Test that a legacy request can be told apart from a framed one.
+     Expected: a serialised stream starts with STREAM_MAGIC, not MAGIC.
+     */
+    void test5_LegacyStreamDetected() throws IOException {
+        ByteBuffer legacy = ByteBuffer.wrap(FrameCodec.serialize(new String[]{"Viewer"}));
+        assertEquals(FrameCodec.STREAM_MAGIC, legacy.getShort(0));
+        assertNotEquals(FrameCodec.MAGIC, legacy.getInt(0));
+    }
+
+    @Test
+    /*
+     Test compressing a large, repetitive payload such as billboard XML.
+     Expected: the frame is flagged as deflated, is smaller, and inflates back
+               to the original payload. The bytes saved are counted.
+     */
+    void test6_CompressRoundTrip() throws IOException {
+        FrameCompressor compressor = new FrameCompressor(6, 1024);
+        StringBuilder xml = new StringBuilder("<billboard>");
+        for (int i = 0; i < 200; i++) {
+            xml.append("<message>Billboard message ").append(i).append("</message>");
+        }
+        byte[] payload = xml.append("</billboard>").toString().getBytes();
+
+        FrameCodec.Frame frame = compressor.compress(4, FrameCodec.FLAG_CLOSE, payload);
+        assertEquals(FrameCodec.FLAG_CLOSE | FrameCodec.FLAG_DEFLATED, frame.flags);
+        assertTrue(frame.payload.length < payload.length);
+        assertArrayEquals(payload, compressor.decompress(frame));
+        assertEquals(payload.length - frame.payload.length, compressor.getBytesSaved());
+    }
+
+    @Test
+    /*
+     Test payloads that are not worth compressing.
+     Expected: a payload under the minimum size, and one that does not shrink,
+               are sent unchanged and unflagged.
+     */
+    void test7_SkipsSmallAndIncompressible() throws IOException {
+        FrameCompressor compressor = new FrameCompressor(9, 64);
+        byte[] small = new byte[32];
+        FrameCodec.Frame frame = compressor.compress(1, (byte) 0, small);
+        assertEquals(0, frame.flags);
+        assertSame(small, compressor.decompress(frame));
+
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        frame = compressor.compress(1, (byte) 0, random);
+        assertEquals(0, frame.flags);
+        assertSame(random, frame.payload);
+        assertEquals(0, compressor.getBytesSaved());
+    }
+
+    @Test
+    /*
+     Test inflating a corrupt compressed payload.
+     Expected: an IOException is thrown.
+     */
+    void test8_RejectsCorruptCompressedPayload() {
+        FrameCompressor compressor = new FrameCompressor(6, 0);
+        byte[] payload = new byte[2048];
+        FrameCodec.Frame frame = compressor.compress(1, (byte) 0, payload);
+        byte[] corrupt = Arrays.copyOf(frame.payload, frame.payload.length);
+        corrupt[corrupt.length / 2] ^= 0x55;
+        assertThrows(IOException.class,
+                () -> compressor.decompress(new FrameCodec.Frame(1, frame.flags, corrupt)));
+    }
+}
@@ -0,0 +1,126 @@
+import billboardViewer.LocalSchedule;
+import helpers.ContentTag;
+import helpers.ScheduleEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the viewer's LocalSchedule. Responses are built by the test
+ * as the server would send them, with the schedule kept in UTC.
+ */
+class TestLocalSchedule {
+    //Sunday 4 January 1970, the first Sunday after the epoch, at midnight UTC
+    private static final long SUNDAY = 3 * 24 * 60 * 60 * 1000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final String[] DEFAULT_BB = {"Default", "admin",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<billboard>\n<message>Default</message>\n</billboard>"};
+    private static final String[] SCHEDULED_BB = {"TestBBName", "TestUser",
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<billboard>\n<message>Scheduled</message>\n</billboard>"};
+
+    private LocalSchedule schedule;
+
+    /*
+     Create a local schedule holding one billboard shown at 9am every day.
+     */
+    @BeforeEach
+    void newSchedule() throws IOException {
+        schedule = new LocalSchedule();
+        ScheduleEntry entry = new ScheduleEntry(1, 2, "TestBBName", "TestAdmin", 9, 0, 1, 60, true, false, 0);
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put("1", DEFAULT_BB);
+        billboards.put("2", SCHEDULED_BB);
+        schedule.apply(new Object[]{"v1", true, new Object[]{entry.toFields()}, new String[0], billboards,
+                "UTC", 120_000L});
+    }
+
+    @Test
+    /*
+     Test finding the billboard showing from a whole schedule.
+     Expected: the scheduled billboard is shown during its hour, the default
+               billboard otherwise, and the next change is at the end of the hour.
+     */
+    void test1_ShowingFromFullSchedule() {
+        assertEquals("v1", schedule.getVersion());
+        assertEquals("TestBBName", schedule.showingAt(SUNDAY + 9 * HOUR + HOUR / 2).getName());
+        assertEquals("Default", schedule.showingAt(SUNDAY + 11 * HOUR).getName());
+        assertEquals(SUNDAY + 10 * HOUR, schedule.nextChange(SUNDAY + 9 * HOUR + HOUR / 2));
+        assertEquals(2, schedule.getHeldTags().size());
+    }
+
+    @Test
+    /*
+     Test applying the changes since the version held, with billboards sent as tags.
+     Expected: the removed entry is no longer shown and the held billboard is reused.
+     */
+    void test2_ApplyChanges() throws IOException {
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put("1", new String[]{ContentTag.of(DEFAULT_BB)});
+        Object defaultBillboard = schedule.showingAt(SUNDAY);
+
+        schedule.apply(new Object[]{"v2", false, new Object[0], new String[]{"1"}, billboards, "UTC", 120_000L});
+        assertEquals("v2", schedule.getVersion());
+        assertEquals(0, schedule.size());
+        assertSame(defaultBillboard, schedule.showingAt(SUNDAY + 9 * HOUR + HOUR / 2));
+        assertEquals(Long.MAX_VALUE, schedule.nextChange(SUNDAY));
+    }
+
+    @Test
+    /*
+     Test a response sending the tag of a billboard that is not held.
+     Expected: an IOException is thrown and the schedule held is unchanged.
+     */
+    void test3_UnknownTagRejected() {
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put("3", new String[]{"unknowntag"});
+        assertThrows(IOException.class, () -> schedule.apply(new Object[]{"v2", true, new Object[0],
+                new String[0], billboards, "UTC", 120_000L}));
+        assertEquals("v1", schedule.getVersion());
+        assertEquals(1, schedule.size());
+    }
+
+    @Test
+    /*
+     Test keeping the schedule and restoring it into a new local schedule, as
+     a viewer does from its cache when it starts.
+     Expected: the restored schedule has the same version, entries and billboards.
+     */
+    void test4_RestoreFromState() throws IOException {
+        Map<String, String[]> cached = new LinkedHashMap<>();
+        cached.put(ContentTag.of(DEFAULT_BB), DEFAULT_BB);
+        cached.put(ContentTag.of(SCHEDULED_BB), SCHEDULED_BB);
+
+        LocalSchedule restored = new LocalSchedule();
+        restored.restore(schedule.toState(), cached::get);
+        assertEquals("v1", restored.getVersion());
+        assertEquals(1, restored.size());
+        assertEquals("TestBBName", restored.showingAt(SUNDAY + 9 * HOUR + HOUR / 2).getName());
+        assertEquals("Default", restored.showingAt(SUNDAY + 11 * HOUR).getName());
+        assertEquals(2, restored.getHeldTags().size());
+    }
+
+    @Test
+    /*
+     Test a billboard deleted and made again with the same name, creator and XML under a new billboardID,
+     which the server sends as the tag the viewer holds under the old billboardID.
+     Expected: the held billboard is shown under its new billboardID.
+     */
+    void test5_TagHeldUnderOtherID() throws IOException {
+        ScheduleEntry entry = new ScheduleEntry(2, 9, "TestBBName", "TestAdmin", 9, 0, 1, 60, true, false, 0);
+        Map<String, String[]> billboards = new LinkedHashMap<>();
+        billboards.put("1", new String[]{ContentTag.of(DEFAULT_BB)});
+        billboards.put("9", new String[]{ContentTag.of(SCHEDULED_BB)});
+        Object scheduledBillboard = schedule.showingAt(SUNDAY + 9 * HOUR + HOUR / 2);
+
+        schedule.apply(new Object[]{"v2", true, new Object[]{entry.toFields()}, new String[0], billboards,
+                "UTC", 120_000L});
+        assertEquals("v2", schedule.getVersion());
+        assertSame(scheduledBillboard, schedule.showingAt(SUNDAY + 9 * HOUR + HOUR / 2));
+        assertTrue(schedule.getHeldTags().contains(ContentTag.of(SCHEDULED_BB)));
+    }
+}
@@ -0,0 +1,255 @@
+import billboardServer.BillboardPublisher;
+import billboardServer.NowShowingCache;
+import helpers.ContentTag;
+import helpers.FrameCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the NowShowingCache, which caches the billboard showing now.
+ * The billboard and the time of the next schedule change are supplied by the
+ * test, and the cache is not started, so it is only refreshed on request.
+ */
+class TestNowShowingCache {
+    private String[] scheduled;
+    private long nextChange;
+    private int reads;
+    private NowShowingCache cache;
+
+    /*
+     Create a cache whose billboard and next change are set by each test.
+     */
+    @BeforeEach
+    void newCache() {
+        scheduled = new String[]{"TestBBName", "TestUser", "XMLContent"};
+        nextChange = Long.MAX_VALUE;
+        reads = 0;
+        cache = new NowShowingCache(() -> {
+            reads++;
+            return scheduled.clone();
+        }, () -> nextChange);
+    }
+
+    @Test
+    /*
+     Test requesting the billboard repeatedly.
+     Expected: it is read once and then served from the cache, along with
+               its serialized response.
+     */
+    void test1_ServedFromCache() throws IOException {
+        NowShowingCache.Snapshot first = cache.get();
+        NowShowingCache.Snapshot second = cache.get();
+        assertSame(first, second);
+        assertEquals(1, reads);
+        assertArrayEquals(scheduled, first.getBillboard());
+        assertNotNull(first.getSerialized());
+        assertTrue(cache.toString().contains("hits=1"));
+    }
+
+    @Test
+    /*
+     Test invalidating the cache with and without a change to the billboard.
+     Expected: the billboard is read again each time, but its version only
+               changes when the billboard does.
+     */
+    void test2_InvalidateAndVersion() {
+        long version = cache.get().getVersion();
+        cache.invalidate();
+        assertEquals(version, cache.get().getVersion());
+        assertEquals(2, reads);
+
+        scheduled = new String[]{"TestBBName2", "TestUser", "XMLContent2"};
+        cache.invalidate();
+        NowShowingCache.Snapshot changed = cache.get();
+        assertEquals(version + 1, changed.getVersion());
+        assertArrayEquals(scheduled, changed.getBillboard());
+    }
+
+    @Test
+    /*
+     Test a schedule change that is due, and a database error.
+     Expected: the billboard is read again once the change is due, and an
+               error is only cached briefly.
+     */
+    void test3_ExpiresAtScheduleChange() {
+        nextChange = System.currentTimeMillis() - 1;
+        cache.get();
+        cache.get();
+        assertEquals(2, reads);
+
+        nextChange = Long.MAX_VALUE;
+        scheduled = new String[]{"Database is not running, cannot update the schedule."};
+        cache.invalidate();
+        long expiresAt = cache.get().getExpiresAt();
+        assertTrue(expiresAt <= System.currentTimeMillis() + 5_000);
+    }
+
+    @Test
+    /*
+     Test the encoded responses of the cached billboard.
+     Expected: each encoding is made once per version and shared, the
+               serialised response matches ObjectOutputStream, and a new
+               version is encoded again.
+     */
+    void test4_EncodedOncePerVersion() throws IOException {
+        int[] encodes = new int[1];
+        NowShowingCache.Encoder encoder = billboard -> {
+            encodes[0]++;
+            return new NowShowingCache.Encoded((byte) 0, FrameCodec.encodeResponse(billboard, FrameCodec.OPTION_BINARY));
+        };
+        NowShowingCache.Encoded first = cache.get().getEncoded(1, encoder);
+        assertSame(first, cache.get().getEncoded(1, encoder));
+        cache.invalidate();
+        assertSame(first, cache.get().getEncoded(1, encoder));
+        assertEquals(1, encodes[0]);
+
+        //The shared buffer is read-only and each caller gets its own position
+        ByteBuffer buffer = first.getBuffer();
+        assertTrue(buffer.isReadOnly());
+        buffer.get(new byte[buffer.remaining()]);
+        assertEquals(first.length(), first.getBuffer().remaining());
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        cache.get().getSerialized().writeTo(written);
+        assertArrayEquals(FrameCodec.serialize(scheduled), written.toByteArray());
+
+        scheduled = new String[]{"TestBBName2", "TestUser", "XMLContent2"};
+        cache.invalidate();
+        assertNotSame(first, cache.get().getEncoded(1, encoder));
+        assertEquals(2, encodes[0]);
+    }
+
+    @Test
+    /*
+     Test the content tag of the cached billboard.
+     Expected: the tag is the ContentTag of the billboard, stays the same when
+               the billboard is read again unchanged, and changes with it.
+     */
+    void test5_ContentTag() {
+        String tag = cache.get().getTag();
+        assertEquals(ContentTag.of(scheduled), tag);
+        cache.invalidate();
+        assertEquals(tag, cache.get().getTag());
+
+        scheduled = new String[]{"TestBBName", "TestUser", "XMLContent2"};
+        cache.invalidate();
+        assertNotEquals(tag, cache.get().getTag());
+
+        scheduled = new String[]{"Database is not running, cannot update the schedule."};
+        cache.invalidate();
+        assertNull(cache.get().getTag());
+    }
+
+    @Test
+    /*
+     Test reading the billboard scheduled after the one showing now.
+     Expected: the next billboard is read at the time of the next change and
+               kept with its tag; there is none if the billboard never changes.
+     */
+    void test6_UpcomingBillboard() {
+        String[] following = {"TestBBName2", "TestUser", "XMLContent2"};
+        long[] askedFor = {0};
+        nextChange = System.currentTimeMillis() + 120_000;
+        cache = new NowShowingCache(() -> scheduled.clone(), () -> nextChange, time -> {
+            askedFor[0] = time;
+            return following;
+        });
+        NowShowingCache.Snapshot current = cache.get();
+        assertEquals(nextChange, current.getChangeAt());
+        assertEquals(nextChange, askedFor[0]);
+        assertArrayEquals(following, current.getUpcoming());
+        assertEquals(ContentTag.of(following), current.getUpcomingTag());
+
+        nextChange = Long.MAX_VALUE;
+        cache.invalidate();
+        assertNull(cache.get().getUpcoming());
+        assertNull(cache.get().getUpcomingTag());
+    }
+
+    @Test
+    /*
+     Test encoding envelopes that hold the billboard along with the time to poll again.
+     Expected: each shape and encoding of envelope is encoded once and shared
+               until it is ENVELOPE_MAX_AGE_MILLIS old, then encoded again.
+     */
+    void test7_EnvelopeEncodedOncePerInterval() throws IOException, InterruptedException {
+        int[] encodes = new int[1];
+        NowShowingCache.Encoder encoder = billboard -> {
+            encodes[0]++;
+            return new NowShowingCache.Encoded((byte) 0,
+                    FrameCodec.encodeResponse(new Object[]{billboard, 120_000L}, FrameCodec.OPTION_BINARY));
+        };
+        NowShowingCache.Snapshot current = cache.get();
+        NowShowingCache.Encoded first = current.getEnvelope(0, 1, encoder);
+        assertSame(first, current.getEnvelope(0, 1, encoder));
+        assertNotSame(first, current.getEnvelope(1, 1, encoder));
+        assertNotSame(first, current.getEnvelope(0, 0, encoder));
+        assertEquals(3, encodes[0]);
+
+        Thread.sleep(NowShowingCache.ENVELOPE_MAX_AGE_MILLIS + 10);
+        assertNotSame(first, current.getEnvelope(0, 1, encoder));
+        assertEquals(4, encodes[0]);
+    }
+
+    @Test
+    /*
+     Test an edit invalidating the cache while the publisher's check is waiting for the refresh it causes.
+     Expected: the refresh tells the publisher of the change without the two waiting on each other,
+               and the check pushes the edited billboard.
+     */
+    void test8_InvalidateDuringPublisherCheck() throws InterruptedException {
+        AtomicReference<String[]> billboard = new AtomicReference<>(scheduled);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NowShowingCache started = new NowShowingCache(() -> {
+            String[] read = billboard.get();
+            if (read != scheduled) {
+                //hold the cache's lock in the middle of reading the edited billboard
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return read.clone();
+        }, () -> Long.MAX_VALUE);
+        BillboardPublisher publisher = new BillboardPublisher(() -> started.get().getBillboard());
+        publisher.start(Runnable::run);
+        started.start(publisher::billboardsChanged);
+        List<String[]> pushed = new CopyOnWriteArrayList<>();
+        publisher.subscribe(pushed::add);
+
+        String[] edited = {"TestBBName2", "TestUser", "XMLContent2"};
+        billboard.set(edited);
+        started.invalidate();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        Thread check = new Thread(publisher::check, "publisher-check");
+        //a deadlocked check must not keep the tests from exiting
+        check.setDaemon(true);
+        check.start();
+        //wait for the check to hold the publisher's lock and wait for the cache's
+        while (check.getState() != Thread.State.BLOCKED && check.isAlive()) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        check.join(5_000);
+        assertFalse(check.isAlive());
+        assertNull(ManagementFactory.getThreadMXBean().findDeadlockedThreads());
+        assertEquals(1, pushed.size());
+        assertArrayEquals(edited, pushed.get(0));
+    }
+}
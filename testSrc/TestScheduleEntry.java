@@ -0,0 +1,47 @@
+import helpers.ScheduleEntry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ScheduleEntry, a typed row of the billboard schedule.
+ */
+class TestScheduleEntry {
+
+    @Test
+    /*
+     Test converting an entry to a row of the schedule table.
+     Expected: the time has leading zeros and the duration is given in minutes.
+     */
+    void test1_ToRow() {
+        ScheduleEntry entry = new ScheduleEntry(1, 3, "TestBBName", "TestAdmin", 9, 5, 2,
+                30, false, false, 0);
+        String[] expected = {"3", "TestBBName", "TestAdmin", "09:05", "2", "30 min", "N/A"};
+        assertArrayEquals(expected, entry.toRow());
+    }
+
+    @Test
+    /*
+     Test describing each kind of recurrence.
+     Expected: daily takes precedence over hourly, which takes precedence over minutes.
+     */
+    void test2_Recurrence() {
+        assertEquals("Daily", new ScheduleEntry(1, 1, "A", "B", 0, 0, 2, 1,
+                true, true, 5).getRecurrence());
+        assertEquals("Hourly", new ScheduleEntry(1, 1, "A", "B", 0, 0, 2, 1,
+                false, true, 5).getRecurrence());
+        assertEquals("Every 5 mins", new ScheduleEntry(1, 1, "A", "B", 0, 0, 2, 1,
+                false, false, 5).getRecurrence());
+    }
+
+    @Test
+    /*
+     Test parsing the minute recurrence as stored in the schedule table.
+     Expected: an empty or missing value means no recurrence.
+     */
+    void test3_ParseEveryMinutes() {
+        assertEquals(0, ScheduleEntry.parseEveryMinutes(""));
+        assertEquals(0, ScheduleEntry.parseEveryMinutes(null));
+        assertEquals(15, ScheduleEntry.parseEveryMinutes("15"));
+    }
+}
@@ -0,0 +1,126 @@
+import helpers.ScheduleEntry;
+import helpers.ScheduleIndex;
+import helpers.ScheduleLookup;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the ScheduleIndex, which finds the billboard showing at a
+ * given time from an in-memory copy of the schedule.
+ */
+class TestScheduleIndex {
+    private static final int MONDAY = 2;
+
+    /*
+     Create a schedule entry. The billboardID is the same as the scheduleID.
+     */
+    private static ScheduleEntry entry(int scheduleID, int hour, int minute, int day, int duration,
+                                       boolean daily, boolean hourly, int everyMinutes) {
+        return new ScheduleEntry(scheduleID, scheduleID, "TestBBName" + scheduleID, "TestAdmin", hour, minute,
+                day, duration, daily, hourly, everyMinutes);
+    }
+
+    /*
+     Returns the minute of the week for a time on a day (1 for Sunday).
+     */
+    private static int at(int day, int hour, int minute) {
+        return (day - 1) * ScheduleIndex.MINUTES_PER_DAY + hour * 60 + minute;
+    }
+
+    /*
+     Returns the billboardID showing at a minute of the week, or 0 if none.
+     */
+    private static int showing(ScheduleIndex index, int minuteOfWeek) {
+        ScheduleEntry entry = index.showingAt(minuteOfWeek);
+        return entry == null ? 0 : entry.getBillboardID();
+    }
+
+    @Test
+    /*
+     Test an empty schedule.
+     Expected: nothing is showing at any time.
+     */
+    void test1_EmptySchedule() {
+        ScheduleIndex index = new ScheduleIndex(new ArrayList<>());
+        assertEquals(0, showing(index, 0));
+        assertEquals(0, showing(index, ScheduleIndex.MINUTES_PER_WEEK - 1));
+        assertEquals(1, index.getSegmentCount());
+    }
+
+    @Test
+    /*
+     Test a billboard scheduled once a week, on Monday at 10:30 for 30 minutes.
+     Expected: it is showing from 10:30 until 10:59 on Monday only.
+     */
+    void test2_OneOff() {
+        ScheduleIndex index = new ScheduleIndex(Arrays.asList(entry(2, 10, 30, MONDAY, 30,
+                false, false, 0)));
+        assertEquals(0, showing(index, at(MONDAY, 10, 29)));
+        assertEquals(2, showing(index, at(MONDAY, 10, 30)));
+        assertEquals(2, showing(index, at(MONDAY, 10, 59)));
+        assertEquals(0, showing(index, at(MONDAY, 11, 0)));
+        assertEquals(0, showing(index, at(MONDAY + 1, 10, 30)));
+    }
+
+    @Test
+    /*
+     Test daily, hourly and every 20 minute recurrences.
+     Expected: each is showing at the recurring times and not in between.
+     */
+    void test3_Recurrences() {
+        ScheduleIndex daily = new ScheduleIndex(Arrays.asList(entry(2, 23, 50, MONDAY, 30,
+                true, false, 0)));
+        assertEquals(2, showing(daily, at(1, 23, 55)));
+        assertEquals(2, showing(daily, at(7, 23, 59)));
+        //cut short at midnight
+        assertEquals(0, showing(daily, at(3, 0, 5)));
+
+        ScheduleIndex hourly = new ScheduleIndex(Arrays.asList(entry(2, 9, 15, MONDAY, 10,
+                false, true, 0)));
+        assertEquals(2, showing(hourly, at(5, 3, 20)));
+        assertEquals(0, showing(hourly, at(5, 3, 25)));
+
+        ScheduleIndex everyTwenty = new ScheduleIndex(Arrays.asList(entry(2, 9, 5, MONDAY, 5,
+                false, false, 20)));
+        assertEquals(2, showing(everyTwenty, at(4, 14, 45)));
+        assertEquals(2, showing(everyTwenty, at(4, 14, 49)));
+        assertEquals(0, showing(everyTwenty, at(4, 14, 50)));
+    }
+
+    @Test
+    /*
+     Test overlapping entries, given out of order.
+     Expected: the entry scheduled last is showing while they overlap, and the
+               earlier one is showing again once it ends.
+     */
+    void test4_LatestScheduledWins() {
+        List<ScheduleEntry> entries = Arrays.asList(
+                entry(5, 10, 15, MONDAY, 15, false, false, 0),
+                entry(3, 10, 0, MONDAY, 60, false, false, 0));
+        ScheduleIndex index = new ScheduleIndex(entries);
+        assertEquals(3, showing(index, at(MONDAY, 10, 0)));
+        assertEquals(5, showing(index, at(MONDAY, 10, 20)));
+        assertEquals(3, showing(index, at(MONDAY, 10, 30)));
+        assertEquals(0, showing(index, at(MONDAY, 11, 0)));
+        assertEquals(5, index.getSegmentCount());
+    }
+
+    @Test
+    /*
+     Test converting a time to a minute of the week.
+     Expected: Sunday midnight is minute 0 and the week ends on Saturday.
+     */
+    void test5_MinuteOfWeek() {
+        Calendar time = Calendar.getInstance();
+        time.set(Calendar.DAY_OF_WEEK, Calendar.SATURDAY);
+        time.set(Calendar.HOUR_OF_DAY, 23);
+        time.set(Calendar.MINUTE, 59);
+        assertEquals(ScheduleIndex.MINUTES_PER_WEEK - 1, ScheduleLookup.minuteOfWeek(time));
+    }
+}
@@ -0,0 +1,96 @@
+import helpers.ScheduleEntry;
+import helpers.ScheduleIndex;
+import helpers.ScheduleLookup;
+import helpers.ScheduleSlotTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the ScheduleSlotTable, which holds the billboard scheduled
+ * in every minute of the week.
+ */
+class TestScheduleSlotTable {
+    private static final int MONDAY = 2;
+
+    /*
+     Create a schedule entry for a billboard.
+     */
+    private static ScheduleEntry entry(int scheduleID, int billboardID, int hour, int minute, int day,
+                                       int duration, boolean daily, boolean hourly, int everyMinutes) {
+        return new ScheduleEntry(scheduleID, billboardID, "TestBBName" + billboardID, "TestAdmin", hour, minute,
+                day, duration, daily, hourly, everyMinutes);
+    }
+
+    /*
+     Assert that the slot table agrees with an index of the same schedule in every minute of the week.
+     */
+    private static void assertMatchesIndex(List<ScheduleEntry> schedule, ScheduleSlotTable table) {
+        ScheduleIndex index = new ScheduleIndex(schedule);
+        for (int minute = 0; minute < ScheduleLookup.MINUTES_PER_WEEK; minute++) {
+            assertEquals(index.billboardAt(minute), table.billboardAt(minute), "minute " + minute);
+        }
+    }
+
+    @Test
+    /*
+     Test adding overlapping entries of every kind of recurrence.
+     Expected: the table shows the same billboard as the index in every minute.
+     */
+    void test1_MatchesIndex() {
+        List<ScheduleEntry> schedule = new ArrayList<>(Arrays.asList(
+                entry(1, 2, 10, 0, MONDAY, 120, false, false, 0),
+                entry(2, 3, 8, 30, MONDAY, 90, true, false, 0),
+                entry(3, 4, 0, 10, MONDAY, 15, false, true, 0),
+                entry(4, 5, 9, 5, MONDAY, 5, false, false, 20)));
+        ScheduleSlotTable table = new ScheduleSlotTable();
+        table.update(schedule);
+        assertEquals(4, table.size());
+        assertMatchesIndex(schedule, table);
+    }
+
+    @Test
+    /*
+     Test removing the latest of two overlapping entries, and then adding one.
+     Expected: the earlier entry shows again where they overlapped, and only
+               the latest schedule is shown after each update.
+     */
+    void test2_IncrementalUpdates() {
+        List<ScheduleEntry> schedule = new ArrayList<>(Arrays.asList(
+                entry(1, 2, 10, 0, MONDAY, 60, false, false, 0),
+                entry(2, 3, 10, 15, MONDAY, 15, true, false, 0)));
+        ScheduleSlotTable table = new ScheduleSlotTable();
+        table.update(schedule);
+        int overlap = (MONDAY - 1) * ScheduleLookup.MINUTES_PER_DAY + 10 * 60 + 20;
+        assertEquals(3, table.billboardAt(overlap));
+
+        schedule.remove(1);
+        table.update(schedule);
+        assertEquals(2, table.billboardAt(overlap));
+        assertMatchesIndex(schedule, table);
+
+        schedule.remove(0);
+        schedule.add(entry(7, 6, 0, 0, MONDAY, 5, false, false, 7));
+        table.update(schedule);
+        assertEquals(1, table.size());
+        assertMatchesIndex(schedule, table);
+    }
+
+    @Test
+    /*
+     Test finding the minute of the week from the current time without a Calendar.
+     Expected: the same minute as the Calendar for the same time and time zone.
+     */
+    void test3_MinuteOfWeekFromMillis() {
+        TimeZone zone = TimeZone.getTimeZone("Australia/Brisbane");
+        Calendar time = Calendar.getInstance(zone);
+        long millis = time.getTimeInMillis();
+        assertEquals(ScheduleLookup.minuteOfWeek(time), ScheduleLookup.minuteOfWeek(millis, zone));
+    }
+}
@@ -0,0 +1,119 @@
+import billboardServer.ScheduleSnapshots;
+import helpers.ScheduleEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ScheduleSnapshots, which keeps versions of the schedule for
+ * viewers that work out the billboard showing themselves. The schedule and
+ * billboards are supplied by the test.
+ */
+class TestScheduleSnapshots {
+    private List<ScheduleEntry> schedule;
+    private int reads;
+    //run after each read of the schedule, as an edit made while it is read
+    private Runnable afterRead;
+    private ScheduleSnapshots snapshots;
+
+    /*
+     Create a store whose schedule is set by each test.
+     */
+    @BeforeEach
+    void newSnapshots() {
+        schedule = new ArrayList<>(List.of(new ScheduleEntry(1, 2, "TestBBName", "TestAdmin", 9, 0, 1,
+                60, true, false, 0)));
+        reads = 0;
+        afterRead = null;
+        snapshots = new ScheduleSnapshots(() -> {
+            reads++;
+            List<ScheduleEntry> read = schedule == null ? null : new ArrayList<>(schedule);
+            if (afterRead != null) {
+                Runnable edit = afterRead;
+                afterRead = null;
+                edit.run();
+            }
+            return read;
+        }, entries -> {
+            Map<String, String[]> billboards = new LinkedHashMap<>();
+            billboards.put("1", new String[]{"Default", "admin", "<billboard/>"});
+            for (ScheduleEntry entry : entries) {
+                billboards.put(String.valueOf(entry.getBillboardID()),
+                        new String[]{entry.getBillboardName(), "TestUser", "XMLContent"});
+            }
+            return billboards;
+        });
+    }
+
+    @Test
+    /*
+     Test reading the schedule, and reading it again after an edit.
+     Expected: the schedule is read once until invalidated, its version only
+               changes when the schedule does, and earlier versions are kept.
+     */
+    void test1_VersionsAndHistory() {
+        ScheduleSnapshots.Snapshot first = snapshots.get();
+        assertSame(first, snapshots.get());
+        assertEquals(1, reads);
+        assertEquals(Set.of("1", "2"), first.getBillboards().keySet());
+        assertNotNull(first.getTag("2"));
+
+        snapshots.invalidate();
+        assertEquals(first.getVersion(), snapshots.get().getVersion());
+        assertEquals(2, reads);
+
+        schedule.add(new ScheduleEntry(2, 3, "TestBBName2", "TestAdmin", 10, 0, 1, 30, false, false, 0));
+        snapshots.invalidate();
+        ScheduleSnapshots.Snapshot second = snapshots.get();
+        assertNotEquals(first.getVersion(), second.getVersion());
+        assertEquals(2, second.getEntries().size());
+        assertEquals(Set.of(1), snapshots.entriesAt(first.getVersion()).keySet());
+        assertNull(snapshots.entriesAt("unknown"));
+    }
+
+    @Test
+    /*
+     Test a schedule that cannot be read.
+     Expected: there is no schedule until one has been read, after which the
+               last schedule read is kept.
+     */
+    void test2_DatabaseDown() {
+        List<ScheduleEntry> entries = schedule;
+        schedule = null;
+        assertNull(snapshots.get());
+
+        schedule = entries;
+        snapshots.invalidate();
+        ScheduleSnapshots.Snapshot read = snapshots.get();
+        assertNotNull(read);
+
+        schedule = null;
+        snapshots.invalidate();
+        assertSame(read, snapshots.get());
+    }
+
+    @Test
+    /*
+     Test the schedule being edited and invalidated while it is being read.
+     Expected: the schedule read before the edit is not kept for a minute,
+               the next request reads it again and sees the edit.
+     */
+    void test3_InvalidatedDuringRead() {
+        ScheduleSnapshots.Snapshot first = snapshots.get();
+        snapshots.invalidate();
+        afterRead = () -> {
+            schedule.add(new ScheduleEntry(2, 3, "TestBBName2", "TestAdmin", 10, 0, 1, 30, false, false, 0));
+            snapshots.invalidate();
+        };
+        assertEquals(first.getVersion(), snapshots.get().getVersion());
+
+        ScheduleSnapshots.Snapshot edited = snapshots.get();
+        assertEquals(3, reads);
+        assertEquals(2, edited.getEntries().size());
+        assertSame(edited, snapshots.get());
+        assertEquals(3, reads);
+    }
+}
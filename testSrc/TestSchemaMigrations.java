@@ -0,0 +1,131 @@
+import billboardServer.SchemaMigrations;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for SchemaMigrations. Migrations are run against a fake
+ * connection that records the SQL executed, so no database is required.
+ */
+class TestSchemaMigrations {
+    private final List<String> executed = new ArrayList<>();
+    private final List<Integer> recorded = new ArrayList<>();
+    private int version;
+    private boolean lockAvailable = true;
+
+    /*
+     Create a fake result set holding a single integer.
+     */
+    private static ResultSet singleInt(int value) {
+        boolean[] read = {false};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            boolean hasRow = !read[0];
+                            read[0] = true;
+                            return hasRow;
+                        case "getInt":
+                            return value;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /*
+     Create a fake connection to a database at the current version.
+     */
+    private Connection fakeConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("createStatement")) {
+                        return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                                new Class<?>[]{Statement.class}, (statement, call, values) -> {
+                                    if (call.getName().equals("execute")) {
+                                        executed.add((String) values[0]);
+                                        return false;
+                                    } else if (call.getName().equals("executeQuery")) {
+                                        return singleInt(version);
+                                    }
+                                    return null;
+                                });
+                    } else if (method.getName().equals("prepareStatement")) {
+                        String sql = (String) args[0];
+                        int[] parameter = new int[1];
+                        return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                new Class<?>[]{PreparedStatement.class}, (statement, call, values) -> {
+                                    switch (call.getName()) {
+                                        case "setInt":
+                                            parameter[0] = (Integer) values[1];
+                                            return null;
+                                        case "executeUpdate":
+                                            recorded.add(parameter[0]);
+                                            return 1;
+                                        case "executeQuery":
+                                            return singleInt(sql.contains("GET_LOCK") && !lockAvailable ? 0 : 1);
+                                        default:
+                                            return null;
+                                    }
+                                });
+                    }
+                    return null;
+                });
+    }
+
+    @Test
+    /*
+     Test migrating a new database.
+     Expected: every migration is applied and recorded, in order.
+     */
+    void test1_NewDatabaseMigrated() throws SQLException {
+        version = 0;
+        int applied = SchemaMigrations.migrate(fakeConnection());
+        assertEquals(SchemaMigrations.latestVersion(), applied);
+        for (int i = 0; i < recorded.size(); i++) {
+            assertEquals(i + 1, recorded.get(i));
+        }
+        assertTrue(executed.get(0).contains("schema_version"));
+        assertTrue(executed.stream().anyMatch(sql -> sql.contains("`schedule_day_start`")));
+    }
+
+    @Test
+    /*
+     Test migrating a database created before the schedule was migrated.
+     Expected: only the schedule migration is applied.
+     */
+    void test2_OldDatabaseUpgraded() throws SQLException {
+        version = 1;
+        int applied = SchemaMigrations.migrate(fakeConnection());
+        assertEquals(SchemaMigrations.latestVersion() - 1, applied);
+        assertEquals(2, recorded.get(0));
+        assertFalse(executed.stream().anyMatch(sql -> sql.contains("`USERS`")));
+        assertTrue(executed.stream().anyMatch(sql -> sql.startsWith("RENAME TABLE")));
+        //tables left by a failed attempt are dropped before the copy, so it can be run again
+        int dropOld = executed.indexOf("DROP TABLE IF EXISTS `billboardserver`.`SCHEDULE_OLD`");
+        assertTrue(dropOld >= 0);
+        assertTrue(dropOld < executed.indexOf(executed.stream()
+                .filter(sql -> sql.startsWith("RENAME TABLE")).findFirst().get()));
+    }
+
+    @Test
+    /*
+     Test migrating a database that is up to date, and one another server is migrating.
+     Expected: nothing is applied, and waiting too long for the other server fails.
+     */
+    void test3_UpToDateAndLocked() throws SQLException {
+        version = SchemaMigrations.latestVersion();
+        assertEquals(0, SchemaMigrations.migrate(fakeConnection()));
+        assertEquals(1, executed.size());
+
+        version = 0;
+        lockAvailable = false;
+        assertThrows(SQLTimeoutException.class, () -> SchemaMigrations.migrate(fakeConnection()));
+        assertTrue(recorded.isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+import helpers.FrameCodec;
+import helpers.SerializedObjectScanner;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the SerializedObjectScanner, which finds the end of a
+ * legacy request from the bytes read so far. Requests are serialised by the
+ * test and given to the scanner a few bytes at a time, as a server reads them.
+ */
+class TestSerializedObjectScanner {
+
+    /*
+     Give the scanner the bytes of a request a chunk at a time, checking that
+     it only finds the end once every byte has arrived. Returns the length found.
+     */
+    private static int scanInChunks(byte[] bytes, int chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 16);
+        SerializedObjectScanner scanner = new SerializedObjectScanner();
+        int length = -1;
+        for (int at = 0; at < bytes.length; ) {
+            int count = Math.min(chunk, bytes.length - at);
+            buffer.put(bytes, at, count);
+            at += count;
+            length = scanner.scan(buffer);
+            if (at < bytes.length) {
+                assertEquals(-1, length);
+            }
+        }
+        return length;
+    }
+
+    @Test
+    /*
+     Test scanning requests as the clients send them, a byte at a time and in larger chunks.
+     Expected: the end is found exactly when the last byte arrives.
+     */
+    void test1_RequestsFoundWhenComplete() throws IOException {
+        Map<String, String[]> billboards = new HashMap<>();
+        billboards.put("1", new String[]{"TestBBName", "TestUser", "XMLContent"});
+        Object[][] requests = {
+                {"RECEIVE_BB"},
+                new String[]{"LOGIN", "TestUser", "-1837247312"},
+                {"RECEIVE_BB", null, "tag", 12, 120_000L, true, new byte[]{1, 2, 3}},
+                {"BATCH", new Object[]{new String[]{"VIEW_SCHEDULE", "token"}, new Object[]{"GET_BB", 2}}},
+                {"CREATE_EDIT", billboards, TimeUnit.SECONDS, String.class},
+        };
+        for (Object[] request : requests) {
+            byte[] bytes = FrameCodec.serialize(request);
+            assertEquals(bytes.length, scanInChunks(bytes, 1));
+            assertEquals(bytes.length, scanInChunks(bytes, 7));
+            assertEquals(bytes.length, scanInChunks(bytes, bytes.length));
+        }
+    }
+
+    @Test
+    /*
+     Test a large billboard sent in 64 KB pieces, followed by bytes after the request.
+     Expected: the end of the request is found, not the end of the bytes read.
+     */
+    void test2_LargeRequestAndTrailingBytes() throws IOException {
+        String xml = new String(new char[3 * 1024 * 1024]).replace('\0', 'x');
+        byte[] bytes = FrameCodec.serialize(new String[]{"CREATE_EDIT", "token", xml, "true", "2", "TestBBName"});
+        assertEquals(bytes.length, scanInChunks(bytes, 64 * 1024));
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+        buffer.put(bytes).putInt(42);
+        assertEquals(bytes.length, new SerializedObjectScanner().scan(buffer));
+    }
+
+    @Test
+    /*
+     Test bytes that are not a serialised request.
+     Expected: an IOException, rather than waiting for more bytes.
+     */
+    void test3_MalformedRejected() {
+        ByteBuffer notSerialised = ByteBuffer.allocate(16);
+        notSerialised.putInt(FrameCodec.MAGIC).putInt(0);
+        assertThrows(IOException.class, () -> new SerializedObjectScanner().scan(notSerialised));
+
+        ByteBuffer badTypeCode = ByteBuffer.allocate(16);
+        badTypeCode.putShort(FrameCodec.STREAM_MAGIC).putShort((short) 5).put((byte) 0x01);
+        assertThrows(IOException.class, () -> new SerializedObjectScanner().scan(badTypeCode));
+
+        ByteBuffer badHandle = ByteBuffer.allocate(16);
+        badHandle.putShort(FrameCodec.STREAM_MAGIC).putShort((short) 5).put((byte) 0x71).putInt(0x7E0010);
+        assertThrows(IOException.class, () -> new SerializedObjectScanner().scan(badHandle));
+    }
+}
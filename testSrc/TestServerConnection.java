@@ -0,0 +1,137 @@
+import helpers.Constants;
+import helpers.FrameCodec;
+import helpers.ServerConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for ServerConnection against a fake framed server that, like
+ * the pooled BillboardServer, answers the first request on each socket with
+ * FLAG_CLOSE and closes it.
+ */
+class TestServerConnection {
+    private ServerSocket serverSocket;
+    private Thread server;
+    private final AtomicInteger sockets = new AtomicInteger();
+
+    /*
+     Start the fake server, which echoes the request type back as the response.
+     */
+    @BeforeEach
+    void startServer() throws IOException {
+        serverSocket = new ServerSocket(0);
+        server = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    sockets.incrementAndGet();
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    in.readInt();
+                    byte options = FrameCodec.readPrefaceOptions(in);
+                    FrameCodec.Frame request = FrameCodec.readFrame(in);
+                    Object[] message = FrameCodec.decodeRequest(request.payload, options);
+                    FrameCodec.writeFrame(out, request.requestId, FrameCodec.FLAG_CLOSE,
+                            FrameCodec.encodeResponse(message[0], options));
+                    out.flush();
+                } catch (IOException | ClassNotFoundException ex) {
+                    //socket closed by the test
+                }
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+    }
+
+    /*
+     Stop the fake server.
+     */
+    @AfterEach
+    void stopServer() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    /*
+     Test pipelining requests on a kept-alive connection to a server that does not keep sockets open.
+     Expected: every request is answered, and requests after the first socket is
+               closed are each sent on a socket of their own.
+     */
+    void test1_PipelinedRequestsResentWhenServerCloses() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("host", "localhost");
+        props.setProperty("port", String.valueOf(serverSocket.getLocalPort()));
+        props.setProperty("transport", ServerConnection.FRAMED);
+        props.setProperty("keepAlive", "true");
+        ServerConnection connection = ServerConnection.fromProperties(props);
+
+        List<Future<Object>> responses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            responses.add(connection.send(new Object[]{"REQUEST_" + i}));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("REQUEST_" + i, responses.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals("REQUEST_5", connection.sendReceive(new Object[]{"REQUEST_5"}));
+        assertEquals(6, sockets.get());
+        connection.close();
+    }
+
+    @Test
+    /*
+     Test a kept-alive socket lost after the server has read a request, but before it answered.
+     Expected: a request that changes the server fails rather than being sent twice,
+               while a request that only reads is sent again on a new socket.
+     */
+    void test2_OnlyReadOnlyRequestsRetriedAfterWrite() throws Exception {
+        List<Object> received = Collections.synchronizedList(new ArrayList<>());
+        try (ServerSocket keepAliveSocket = new ServerSocket(0)) {
+            //answer the first request on each socket, then read the next and drop the socket
+            Thread keepAliveServer = new Thread(() -> {
+                while (!keepAliveSocket.isClosed()) {
+                    try (Socket socket = keepAliveSocket.accept()) {
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                        in.readInt();
+                        byte options = FrameCodec.readPrefaceOptions(in);
+                        FrameCodec.Frame request = FrameCodec.readFrame(in);
+                        Object[] message = FrameCodec.decodeRequest(request.payload, options);
+                        received.add(message[0]);
+                        FrameCodec.writeFrame(out, request.requestId, (byte) 0,
+                                FrameCodec.encodeResponse(message[0], options));
+                        out.flush();
+                        received.add(FrameCodec.decodeRequest(FrameCodec.readFrame(in).payload, options)[0]);
+                    } catch (IOException | ClassNotFoundException ex) {
+                        //socket closed by the test
+                    }
+                }
+            });
+            keepAliveServer.setDaemon(true);
+            keepAliveServer.start();
+
+            ServerConnection connection = new ServerConnection("localhost",
+                    String.valueOf(keepAliveSocket.getLocalPort()), ServerConnection.FRAMED,
+                    FrameCodec.OPTION_KEEP_ALIVE);
+            assertEquals(Constants.SHOW_BB, connection.sendReceive(new Object[]{Constants.SHOW_BB}));
+            assertThrows(IOException.class, () -> connection.sendReceive(new Object[]{Constants.CREATE_EDIT}));
+            assertEquals(Constants.SHOW_BB, connection.sendReceive(new Object[]{Constants.SHOW_BB}));
+            assertEquals(Constants.VIEW_SCHEDULE, connection.sendReceive(new Object[]{Constants.VIEW_SCHEDULE}));
+            connection.close();
+        }
+        assertEquals(List.of(Constants.SHOW_BB, Constants.CREATE_EDIT, Constants.SHOW_BB,
+                Constants.VIEW_SCHEDULE, Constants.VIEW_SCHEDULE), received);
+    }
+}
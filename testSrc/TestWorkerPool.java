@@ -0,0 +1,67 @@
+import billboardServer.WorkerPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the WorkerPool used by the BillboardServer to action
+ * connections concurrently. Workers are held on a latch so the queue and
+ * rejection behaviour can be observed deterministically.
+ */
+class TestWorkerPool {
+
+    @Test
+    /*
+     Test that tasks submitted to an idle pool are run.
+     Expected: the task runs and is counted as completed.
+     */
+    void test1_RunsSubmittedTask() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(2, 2);
+        CountDownLatch ran = new CountDownLatch(1);
+        assertTrue(pool.submit(ran::countDown));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    /*
+     Test a saturated pool.
+     Expected: once every worker is busy and the queue is full, further
+               tasks are rejected and counted.
+     */
+    void test2_RejectsWhenSaturated() throws InterruptedException {
+        WorkerPool pool = new WorkerPool(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        };
+
+        assertTrue(pool.submit(blocking));   // taken by the only worker
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(pool.submit(blocking));   // waits in the queue
+        assertFalse(pool.submit(blocking));  // no room left
+        assertEquals(1, pool.getQueueDepth());
+        assertEquals(1, pool.getActiveWorkers());
+        assertEquals(1, pool.getRejectedCount());
+
+        release.countDown();
+        pool.shutdown();
+    }
+
+    @Test
+    /*
+     Test creating a pool without any workers.
+     Expected: an IllegalArgumentException is thrown.
+     */
+    void test3_InvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkerPool(0, 1));
+    }
+}